@@ -0,0 +1,13 @@
+package com.healthmonitor.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables @Scheduled background jobs (e.g. write-behind flushes)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
+
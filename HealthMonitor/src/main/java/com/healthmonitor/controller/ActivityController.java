@@ -1,17 +1,30 @@
 package com.healthmonitor.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.healthmonitor.dto.ActivityDTO;
+import com.healthmonitor.dto.ActivityImportReportDTO;
+import com.healthmonitor.dto.CursorPageDTO;
 import com.healthmonitor.model.Activity;
 import com.healthmonitor.model.User;
+import com.healthmonitor.service.ActivityImportService;
 import com.healthmonitor.service.ActivityService;
+import com.healthmonitor.service.IdempotencyService;
+import com.healthmonitor.service.KeysetCursor;
+import com.healthmonitor.service.UserChangeTracker;
 import com.healthmonitor.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Window;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -24,20 +37,33 @@ import java.util.stream.Collectors;
 public class ActivityController {
     
     private final ActivityService activityService;
+    private final ActivityImportService activityImportService;
     private final UserService userService;
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
     
     @Autowired
-    public ActivityController(ActivityService activityService, UserService userService) {
+    public ActivityController(ActivityService activityService,
+                              ActivityImportService activityImportService,
+                              UserService userService,
+                              IdempotencyService idempotencyService,
+                              ObjectMapper objectMapper) {
         this.activityService = activityService;
+        this.activityImportService = activityImportService;
         this.userService = userService;
+        this.idempotencyService = idempotencyService;
+        this.objectMapper = objectMapper;
     }
     
     /**
      * Create a new activity
+     * A retry with the same Idempotency-Key header returns the first response instead of a duplicate
      */
     @PostMapping
     public ResponseEntity<ActivityDTO> createActivity(@PathVariable Long userId,
-                                                       @Valid @RequestBody ActivityDTO activityDTO) {
+                                                       @Valid @RequestBody ActivityDTO activityDTO,
+                                                       @RequestHeader(value = IdempotencyService.HEADER, required = false)
+                                                       String idempotencyKey) {
         User user = userService.getUserById(userId)
             .orElse(null);
         
@@ -45,15 +71,49 @@ public class ActivityController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         
-        Activity activity = activityService.createActivity(
-            user,
-            activityDTO.getActivityType(),
-            activityDTO.getStartTime(),
-            activityDTO.getEndTime(),
-            activityDTO.getDistanceKm()
-        );
+        return idempotencyService.execute("activities:" + userId, idempotencyKey, activityDTO, ActivityDTO.class, () -> {
+            Activity activity = activityService.createActivity(
+                user,
+                activityDTO.getActivityType(),
+                activityDTO.getStartTime(),
+                activityDTO.getEndTime(),
+                activityDTO.getDistanceKm()
+            );
+            
+            return new ResponseEntity<>(new ActivityDTO(activity), HttpStatus.CREATED);
+        });
+    }
+    
+    /**
+     * Bulk import activities from CSV (header row required)
+     */
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<ActivityImportReportDTO> importActivitiesCsv(@PathVariable Long userId,
+                                                                       InputStream body) throws IOException {
+        return importActivities(userId, body, ActivityImportService.Format.CSV);
+    }
+    
+    /**
+     * Bulk import activities from newline-delimited JSON (one activity per line)
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ActivityImportReportDTO> importActivitiesNdjson(@PathVariable Long userId,
+                                                                          InputStream body) throws IOException {
+        return importActivities(userId, body, ActivityImportService.Format.NDJSON);
+    }
+    
+    private ResponseEntity<ActivityImportReportDTO> importActivities(Long userId, InputStream body,
+                                                                     ActivityImportService.Format format) 
+            throws IOException {
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
         
-        return new ResponseEntity<>(new ActivityDTO(activity), HttpStatus.CREATED);
+        ActivityImportReportDTO report = activityImportService.importActivities(user, body, format);
+        return new ResponseEntity<>(report, HttpStatus.OK);
     }
     
     /**
@@ -69,10 +129,46 @@ public class ActivityController {
     }
     
     /**
-     * Get all activities for a user
+     * Get a user's latest activities, at most KeysetCursor.MAX_PAGE_SIZE, newest first
+     * When there are more, the X-Next-Cursor header holds the cursor of /page that continues the list.
+     * Answers If-None-Match and If-Modified-Since with 304 when none of the user's activities or metrics changed.
      */
     @GetMapping
-    public ResponseEntity<List<ActivityDTO>> getAllActivities(@PathVariable Long userId) {
+    public ResponseEntity<List<ActivityDTO>> getAllActivities(@PathVariable Long userId, WebRequest request) {
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        UserChangeTracker.Version version = userService.getChangeVersion(userId);
+        if (request.checkNotModified(version.toETag(), version.lastModifiedMillis())) {
+            return ConditionalResponses.notModified();
+        }
+        
+        Window<ActivityDTO> activities = activityService.getActivitiesByUser(user);
+        ResponseEntity<List<ActivityDTO>> response = ConditionalResponses.ok(activities.getContent());
+        String nextCursor = KeysetCursor.nextCursor(activities, "startTime", "id");
+        if (nextCursor == null) {
+            return response;
+        }
+        return ResponseEntity.ok()
+            .headers(response.getHeaders())
+            .header(KeysetCursor.NEXT_CURSOR_HEADER, nextCursor)
+            .body(response.getBody());
+    }
+    
+    /**
+     * Get a page of a user's activities, newest first
+     * Pass the returned nextCursor as cursor to get the following page.
+     */
+    @GetMapping("/page")
+    public ResponseEntity<CursorPageDTO<ActivityDTO>> getActivitiesPage(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + KeysetCursor.DEFAULT_PAGE_SIZE) int size) {
+        
         User user = userService.getUserById(userId)
             .orElse(null);
         
@@ -80,12 +176,13 @@ public class ActivityController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         
-        List<ActivityDTO> activities = activityService.getActivitiesByUser(user)
-            .stream()
+        Window<Activity> page = activityService.getActivitiesPage(user, cursor, size);
+        List<ActivityDTO> activities = page.stream()
             .map(ActivityDTO::new)
             .collect(Collectors.toList());
         
-        return new ResponseEntity<>(activities, HttpStatus.OK);
+        return new ResponseEntity<>(new CursorPageDTO<>(activities, activityService.nextCursor(page)), 
+                                    HttpStatus.OK);
     }
     
     /**
@@ -104,13 +201,29 @@ public class ActivityController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         
-        List<ActivityDTO> activities = activityService
-            .getActivitiesByUserAndDateRange(user, startDate, endDate)
-            .stream()
-            .map(ActivityDTO::new)
-            .collect(Collectors.toList());
+        return new ResponseEntity<>(activityService.getActivitiesByUserAndDateRange(user, startDate, endDate), 
+                                    HttpStatus.OK);
+    }
+    
+    /**
+     * Stream activities for a user within a date range
+     * Same JSON as /range, but each activity is written as soon as it is read, for long exports.
+     */
+    @GetMapping("/range/stream")
+    public ResponseEntity<StreamingResponseBody> streamActivitiesByDateRange(
+            @PathVariable Long userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
         
-        return new ResponseEntity<>(activities, HttpStatus.OK);
+        return StreamingResponses.jsonArray(objectMapper, action ->
+            activityService.forEachActivityInDateRange(user, startDate, endDate, action));
     }
     
     /**
@@ -0,0 +1,37 @@
+package com.healthmonitor.controller;
+
+import com.healthmonitor.dto.CohortSummaryDTO;
+import com.healthmonitor.service.CohortAnalysisService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Controller for population-wide analytics across all users
+ */
+@RestController
+@RequestMapping("/api/analytics")
+public class AnalyticsController {
+    
+    private final CohortAnalysisService cohortAnalysisService;
+    
+    @Autowired
+    public AnalyticsController(CohortAnalysisService cohortAnalysisService) {
+        this.cohortAnalysisService = cohortAnalysisService;
+    }
+    
+    /**
+     * Get BMR and TDEE statistics per cohort of age band, gender and activity level
+     * Repeat the formula parameter to compare formulas; without it every formula is included.
+     */
+    @GetMapping("/cohorts")
+    public ResponseEntity<List<CohortSummaryDTO>> getCohorts(
+            @RequestParam(name = "formula", required = false) List<String> formulas) {
+        List<CohortSummaryDTO> cohorts = cohortAnalysisService.summarizeCohorts(formulas);
+        return new ResponseEntity<>(cohorts, HttpStatus.OK);
+    }
+}
+
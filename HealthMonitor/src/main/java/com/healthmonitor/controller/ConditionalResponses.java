@@ -0,0 +1,36 @@
+package com.healthmonitor.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Responses for GET endpoints that answer conditional requests
+ * 
+ * The caller first checks its validators with WebRequest.checkNotModified, which also
+ * sets the ETag and Last-Modified headers. Metrics and activity reads use the user's change
+ * marker (UserService.getChangeVersion), which every write advances once it commits.
+ * Responses are marked no-cache, so clients keep them but revalidate on every poll
+ * instead of reusing them heuristically.
+ */
+final class ConditionalResponses {
+    
+    private ConditionalResponses() {
+    }
+    
+    static <T> ResponseEntity<T> notModified() {
+        return new ResponseEntity<>(noCache(), HttpStatus.NOT_MODIFIED);
+    }
+    
+    static <T> ResponseEntity<T> ok(T body) {
+        return new ResponseEntity<>(body, noCache(), HttpStatus.OK);
+    }
+    
+    private static HttpHeaders noCache() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(CacheControl.noCache());
+        return headers;
+    }
+}
+
@@ -1,9 +1,18 @@
 package com.healthmonitor.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.healthmonitor.dto.HealthMetricsDTO;
+import com.healthmonitor.dto.PercentileRankDTO;
+import com.healthmonitor.dto.StepBatchDTO;
+import com.healthmonitor.model.AgeBand;
 import com.healthmonitor.model.HealthMetrics;
 import com.healthmonitor.model.User;
+import com.healthmonitor.repository.UserBodyProfile;
 import com.healthmonitor.service.HealthMetricsService;
+import com.healthmonitor.service.IdempotencyService;
+import com.healthmonitor.service.MetricsPercentileService;
+import com.healthmonitor.service.MetricsPercentileService.Metric;
+import com.healthmonitor.service.UserChangeTracker;
 import com.healthmonitor.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,9 +20,16 @@ import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 /**
@@ -25,12 +41,21 @@ public class HealthMetricsController {
     
     private final HealthMetricsService healthMetricsService;
     private final UserService userService;
+    private final IdempotencyService idempotencyService;
+    private final MetricsPercentileService metricsPercentileService;
+    private final ObjectMapper objectMapper;
     
     @Autowired
     public HealthMetricsController(HealthMetricsService healthMetricsService,
-                                   UserService userService) {
+                                   UserService userService,
+                                   IdempotencyService idempotencyService,
+                                   MetricsPercentileService metricsPercentileService,
+                                   ObjectMapper objectMapper) {
         this.healthMetricsService = healthMetricsService;
         this.userService = userService;
+        this.idempotencyService = idempotencyService;
+        this.metricsPercentileService = metricsPercentileService;
+        this.objectMapper = objectMapper;
     }
     
     /**
@@ -77,12 +102,14 @@ public class HealthMetricsController {
     
     /**
      * Get health metrics for a user within a date range
+     * Answers If-None-Match and If-Modified-Since with 304 when none of the user's metrics or activities changed.
      */
     @GetMapping("/range")
     public ResponseEntity<List<HealthMetricsDTO>> getMetricsByDateRange(
             @PathVariable Long userId,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+            WebRequest request) {
         
         User user = userService.getUserById(userId)
             .orElse(null);
@@ -91,24 +118,46 @@ public class HealthMetricsController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         
-        List<HealthMetricsDTO> metrics = healthMetricsService
-            .getMetricsByUserAndDateRange(user, startDate, endDate)
-            .stream()
-            .map(HealthMetricsDTO::new)
-            .collect(Collectors.toList());
+        UserChangeTracker.Version version = userService.getChangeVersion(userId);
+        if (request.checkNotModified(version.toETag(startDate, endDate), version.lastModifiedMillis())) {
+            return ConditionalResponses.notModified();
+        }
         
-        return new ResponseEntity<>(metrics, HttpStatus.OK);
+        return ConditionalResponses.ok(healthMetricsService.getMetricsByUserAndDateRange(user, startDate, endDate));
+    }
+    
+    /**
+     * Stream health metrics for a user within a date range
+     * Same JSON as /range, but each day is written as soon as it is read, for long exports.
+     */
+    @GetMapping("/range/stream")
+    public ResponseEntity<StreamingResponseBody> streamMetricsByDateRange(
+            @PathVariable Long userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        return StreamingResponses.jsonArray(objectMapper, action ->
+            healthMetricsService.forEachMetricsInDateRange(user, startDate, endDate, action));
     }
     
     /**
      * Add steps to user's daily metrics
+     * A retry with the same Idempotency-Key header returns the first response without adding the steps again
      */
     @PostMapping("/steps")
     public ResponseEntity<HealthMetricsDTO> addSteps(
             @PathVariable Long userId,
             @RequestParam int steps,
             @RequestParam(required = false) 
-            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         
         User user = userService.getUserById(userId)
             .orElse(null);
@@ -117,17 +166,66 @@ public class HealthMetricsController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         
+        // Daily totals are not clamped, so a negative count would push them below zero
+        if (steps < 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        
         LocalDate targetDate = date != null ? date : LocalDate.now();
-        HealthMetrics metrics = healthMetricsService.addSteps(user, targetDate, steps);
+        return idempotencyService.execute("steps:" + userId, idempotencyKey, Arrays.asList(steps, date),
+                                          HealthMetricsDTO.class, () -> {
+            HealthMetrics metrics = healthMetricsService.addSteps(user, targetDate, steps);
+            return new ResponseEntity<>(new HealthMetricsDTO(metrics), HttpStatus.OK);
+        });
+    }
+    
+    /**
+     * Add a batch of step samples, e.g. from a wearable sync
+     * Samples are summed per day and each day is written once; a day whose samples add up to more
+     * than Integer.MAX_VALUE steps is rejected with 400
+     */
+    @PostMapping("/steps/batch")
+    public ResponseEntity<List<HealthMetricsDTO>> addStepsBatch(
+            @PathVariable Long userId,
+            @Valid @RequestBody StepBatchDTO batchDTO) {
         
-        return new ResponseEntity<>(new HealthMetricsDTO(metrics), HttpStatus.OK);
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        LocalDate today = LocalDate.now();
+        Map<LocalDate, Long> totalsByDate = batchDTO.getEntries()
+            .stream()
+            .collect(Collectors.groupingBy(
+                entry -> entry.getDate() != null ? entry.getDate() : today,
+                TreeMap::new,
+                Collectors.summingLong(StepBatchDTO.StepEntry::getSteps)));
+        Map<LocalDate, Integer> stepsByDate = new TreeMap<>();
+        totalsByDate.forEach((date, steps) -> {
+            if (steps > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Steps on " + date + " exceed " + Integer.MAX_VALUE);
+            }
+            stepsByDate.put(date, steps.intValue());
+        });
+        
+        List<HealthMetricsDTO> metrics = healthMetricsService.addSteps(user, stepsByDate)
+            .stream()
+            .map(HealthMetricsDTO::new)
+            .collect(Collectors.toList());
+        
+        return new ResponseEntity<>(metrics, HttpStatus.OK);
     }
     
     /**
      * Get today's metrics for a user
+     * Answers If-None-Match and If-Modified-Since with 304 when none of the user's metrics or activities
+     * changed on the same day.
      */
     @GetMapping("/today")
-    public ResponseEntity<HealthMetricsDTO> getTodayMetrics(@PathVariable Long userId) {
+    public ResponseEntity<HealthMetricsDTO> getTodayMetrics(@PathVariable Long userId, WebRequest request) {
         User user = userService.getUserById(userId)
             .orElse(null);
         
@@ -135,9 +233,58 @@ public class HealthMetricsController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         
-        return healthMetricsService.getMetricsByUserAndDate(user, LocalDate.now())
-            .map(metrics -> new ResponseEntity<>(new HealthMetricsDTO(metrics), HttpStatus.OK))
+        LocalDate today = LocalDate.now();
+        UserChangeTracker.Version version = userService.getChangeVersion(userId);
+        // Pending write-behind steps do not touch the row, so the ETag includes them
+        long pendingSteps = healthMetricsService.getPendingSteps(user, today);
+        long startOfToday = today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (request.checkNotModified(version.toETag(today, pendingSteps),
+                                     Math.max(version.lastModifiedMillis(), startOfToday))) {
+            return ConditionalResponses.notModified();
+        }
+        
+        return healthMetricsService.getMetricsByUserAndDate(user, today)
+            .map(metrics -> ConditionalResponses.ok(new HealthMetricsDTO(metrics)))
             .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
+    
+    /**
+     * Get the percentile ranks of a user's steps, sleep and heart rate on a day (default today),
+     * within the user's age band and gender and among all users
+     * Ranks are read from in-memory histograms; a metric without a value that day is null.
+     */
+    @GetMapping("/percentiles")
+    public ResponseEntity<Map<String, Object>> getPercentiles(
+            @PathVariable Long userId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        LocalDate day = date != null ? date : LocalDate.now();
+        HealthMetrics metrics = healthMetricsService.getMetricsByUserAndDate(user, day)
+            .orElse(null);
+        if (metrics == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        UserBodyProfile profile = UserBodyProfile.of(user);
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        percentiles.put("date", day);
+        percentiles.put("ageBand", AgeBand.of(profile.getAge(day.getYear())).getLabel());
+        percentiles.put("gender", user.getGender());
+        percentiles.put(Metric.STEPS.getKey(), rank(profile, day, Metric.STEPS, metrics.getSteps()));
+        percentiles.put(Metric.SLEEP_HOURS.getKey(), rank(profile, day, Metric.SLEEP_HOURS, metrics.getSleepHours()));
+        percentiles.put(Metric.HEART_RATE_AVG.getKey(),
+                        rank(profile, day, Metric.HEART_RATE_AVG, metrics.getHeartRateAvg()));
+        return new ResponseEntity<>(percentiles, HttpStatus.OK);
+    }
+    
+    private PercentileRankDTO rank(UserBodyProfile profile, LocalDate date, Metric metric, Number value) {
+        return value != null ? metricsPercentileService.rank(profile, date, metric, value.doubleValue()) : null;
+    }
 }
 
@@ -1,17 +1,31 @@
 package com.healthmonitor.controller;
 
+import com.healthmonitor.dto.PeriodStatsDTO;
+import com.healthmonitor.model.DataVersion;
+import com.healthmonitor.model.HealthMetricsRollup;
+import com.healthmonitor.model.HealthSummary;
+import com.healthmonitor.model.MetricsTotals;
+import com.healthmonitor.model.StatsGranularity;
 import com.healthmonitor.model.User;
+import com.healthmonitor.repository.MetricsAggregate;
 import com.healthmonitor.service.HealthMetricsService;
+import com.healthmonitor.service.HealthSummaryService;
+import com.healthmonitor.service.MetricsTrendService;
 import com.healthmonitor.service.UserService;
-import com.healthmonitor.service.calculator.BMRAnalyzer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -22,24 +36,30 @@ import java.util.Map;
 @RequestMapping("/api/users/{userId}/dashboard")
 public class HealthMonitorController {
     
+    private static final long MAX_STATS_DAYS = 5 * 366;
+    
     private final UserService userService;
     private final HealthMetricsService healthMetricsService;
-    private final BMRAnalyzer bmrAnalyzer;
+    private final HealthSummaryService healthSummaryService;
+    private final MetricsTrendService metricsTrendService;
     
     @Autowired
     public HealthMonitorController(UserService userService,
                                    HealthMetricsService healthMetricsService,
-                                   BMRAnalyzer bmrAnalyzer) {
+                                   HealthSummaryService healthSummaryService,
+                                   MetricsTrendService metricsTrendService) {
         this.userService = userService;
         this.healthMetricsService = healthMetricsService;
-        this.bmrAnalyzer = bmrAnalyzer;
+        this.healthSummaryService = healthSummaryService;
+        this.metricsTrendService = metricsTrendService;
     }
     
     /**
      * Get health summary for a user
+     * Answers If-None-Match and If-Modified-Since with 304 while the profile is unchanged on the same day.
      */
     @GetMapping("/summary")
-    public ResponseEntity<Map<String, Object>> getHealthSummary(@PathVariable Long userId) {
+    public ResponseEntity<Map<String, Object>> getHealthSummary(@PathVariable Long userId, WebRequest request) {
         User user = userService.getUserById(userId)
             .orElse(null);
         
@@ -47,25 +67,40 @@ public class HealthMonitorController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         
+        // The summary depends on the profile and, through the age, on the date
+        LocalDate today = LocalDate.now();
+        DataVersion version = new DataVersion(1L, user.getUpdatedAt());
+        long startOfToday = today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (request.checkNotModified(version.toETag(today), Math.max(version.lastModifiedMillis(), startOfToday))) {
+            return ConditionalResponses.notModified();
+        }
+        
+        HealthSummary health = healthSummaryService.getSummary(user);
+        
         Map<String, Object> summary = new HashMap<>();
         summary.put("userId", user.getId());
         summary.put("name", user.getName());
-        summary.put("age", user.calculateAge());
-        summary.put("bmi", user.calculateBMI());
-        summary.put("bmr", bmrAnalyzer.calculateBMR(user));
-        summary.put("tdee", bmrAnalyzer.calculateTDEE(user));
+        summary.put("age", health.getAge());
+        summary.put("bmi", health.getBmi());
+        summary.put("bmr", health.getBmr());
+        summary.put("tdee", health.getTdee());
         
-        return new ResponseEntity<>(summary, HttpStatus.OK);
+        return ConditionalResponses.ok(summary);
     }
     
     /**
      * Get weekly statistics
+     * Covers weekStartDate and the 7 days after it (default: starting 7 days ago, up to today);
+     * averages are per 7 days. Summed in the database.
+     * With calendarWeek=true, covers the Monday-to-Sunday week containing weekStartDate
+     * (default: the current week) instead, read from its week rollup.
      */
     @GetMapping("/weekly")
     public ResponseEntity<Map<String, Object>> getWeeklyStats(
             @PathVariable Long userId,
             @RequestParam(required = false) 
-            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate weekStartDate) {
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate weekStartDate,
+            @RequestParam(defaultValue = "false") boolean calendarWeek) {
         
         User user = userService.getUserById(userId)
             .orElse(null);
@@ -74,46 +109,142 @@ public class HealthMonitorController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
         
+        if (calendarWeek) {
+            LocalDate date = weekStartDate != null ? weekStartDate : LocalDate.now();
+            return new ResponseEntity<>(periodStats(user, HealthMetricsRollup.Period.WEEK, date), HttpStatus.OK);
+        }
+        
         LocalDate startDate = weekStartDate != null ? 
             weekStartDate : LocalDate.now().minusDays(7);
         LocalDate endDate = startDate.plusDays(7);
         
-        var metrics = healthMetricsService.getMetricsByUserAndDateRange(user, startDate, endDate);
+        MetricsAggregate aggregate = healthMetricsService.getAggregate(user, startDate, endDate);
+        long totalSteps = aggregate.getSteps() != null ? aggregate.getSteps() : 0;
+        double totalCaloriesBurned = aggregate.getCaloriesBurned() != null ? aggregate.getCaloriesBurned() : 0.0;
+        double totalCaloriesConsumed = 
+            aggregate.getCaloriesConsumed() != null ? aggregate.getCaloriesConsumed() : 0.0;
+        long totalActiveMinutes = aggregate.getActiveMinutes() != null ? aggregate.getActiveMinutes() : 0;
         
         Map<String, Object> stats = new HashMap<>();
         stats.put("startDate", startDate);
         stats.put("endDate", endDate);
-        
-        int totalSteps = metrics.stream()
-            .mapToInt(m -> m.getSteps() != null ? m.getSteps() : 0)
-            .sum();
-        
-        double totalCaloriesBurned = metrics.stream()
-            .mapToDouble(m -> m.getCaloriesBurned() != null ? m.getCaloriesBurned() : 0.0)
-            .sum();
-        
-        double totalCaloriesConsumed = metrics.stream()
-            .mapToDouble(m -> m.getCaloriesConsumed() != null ? m.getCaloriesConsumed() : 0.0)
-            .sum();
-        
-        double totalDistance = metrics.stream()
-            .mapToDouble(m -> m.getDistanceKm() != null ? m.getDistanceKm() : 0.0)
-            .sum();
-        
-        int totalActiveMinutes = metrics.stream()
-            .mapToInt(m -> m.getActiveMinutes() != null ? m.getActiveMinutes() : 0)
-            .sum();
-        
         stats.put("totalSteps", totalSteps);
         stats.put("totalCaloriesBurned", totalCaloriesBurned);
         stats.put("totalCaloriesConsumed", totalCaloriesConsumed);
         stats.put("netCalories", totalCaloriesConsumed - totalCaloriesBurned);
-        stats.put("totalDistanceKm", totalDistance);
+        stats.put("totalDistanceKm", aggregate.getDistanceKm() != null ? aggregate.getDistanceKm() : 0.0);
         stats.put("totalActiveMinutes", totalActiveMinutes);
         stats.put("averageStepsPerDay", totalSteps / 7.0);
         stats.put("averageActiveMinutesPerDay", totalActiveMinutes / 7.0);
         
         return new ResponseEntity<>(stats, HttpStatus.OK);
     }
+    
+    /**
+     * Get monthly statistics
+     * Covers the calendar month given as yyyy-MM (default: the current month)
+     */
+    @GetMapping("/monthly")
+    public ResponseEntity<Map<String, Object>> getMonthlyStats(
+            @PathVariable Long userId,
+            @RequestParam(required = false) 
+            @DateTimeFormat(pattern = "yyyy-MM") YearMonth month) {
+        
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        LocalDate date = month != null ? month.atDay(1) : LocalDate.now();
+        return new ResponseEntity<>(periodStats(user, HealthMetricsRollup.Period.MONTH, date), HttpStatus.OK);
+    }
+    
+    /**
+     * Get statistics for any date range, in total and per day, week or month
+     * Aggregated in the database; only periods with metrics are listed.
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats(
+            @PathVariable Long userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "day") String granularity) {
+        
+        StatsGranularity periodSize = StatsGranularity.parse(granularity);
+        if (to.isBefore(from) || ChronoUnit.DAYS.between(from, to) >= MAX_STATS_DAYS) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        List<PeriodStatsDTO> periods = new ArrayList<>();
+        for (MetricsAggregate aggregate : healthMetricsService.getAggregates(user, from, to, periodSize)) {
+            LocalDate periodStart = periodSize.startOf(aggregate.getFirstDate());
+            LocalDate startDate = periodStart.isBefore(from) ? from : periodStart;
+            LocalDate periodEnd = periodSize.endOf(periodStart);
+            LocalDate endDate = periodEnd.isAfter(to) ? to : periodEnd;
+            periods.add(new PeriodStatsDTO(startDate, endDate, aggregate));
+        }
+        
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("from", from);
+        stats.put("to", to);
+        stats.put("granularity", periodSize.name().toLowerCase());
+        stats.put("total", new PeriodStatsDTO(from, to, healthMetricsService.getAggregate(user, from, to)));
+        stats.put("periods", periods);
+        
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+    
+    /**
+     * Get rolling 7- and 28-day sums, averages and exponentially weighted averages
+     * of steps, calories burned, active minutes and sleep, for the windows ending today
+     * Served from state kept up to date by every metrics write; no range is read.
+     */
+    @GetMapping("/trends")
+    public ResponseEntity<Map<String, Object>> getTrends(@PathVariable Long userId) {
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        LocalDate today = LocalDate.now();
+        Map<String, Object> trends = new HashMap<>();
+        trends.put("userId", user.getId());
+        trends.put("endDate", today);
+        trends.put("metrics", metricsTrendService.getTrends(user.getId(), today));
+        
+        return new ResponseEntity<>(trends, HttpStatus.OK);
+    }
+    
+    private Map<String, Object> periodStats(User user, HealthMetricsRollup.Period period, LocalDate date) {
+        LocalDate startDate = period.startOf(date);
+        LocalDate endDate = period.endOf(startDate);
+        double days = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        
+        MetricsTotals totals = healthMetricsService.getRollupTotals(user, period, startDate);
+        
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("startDate", startDate);
+        stats.put("endDate", endDate);
+        stats.put("totalSteps", totals.getSteps());
+        stats.put("totalCaloriesBurned", totals.getCaloriesBurned());
+        stats.put("totalCaloriesConsumed", totals.getCaloriesConsumed());
+        stats.put("netCalories", totals.getCaloriesConsumed() - totals.getCaloriesBurned());
+        stats.put("totalDistanceKm", totals.getDistanceKm());
+        stats.put("totalActiveMinutes", totals.getActiveMinutes());
+        stats.put("averageStepsPerDay", totals.getSteps() / days);
+        stats.put("averageActiveMinutesPerDay", totals.getActiveMinutes() / days);
+        return stats;
+    }
 }
 
@@ -0,0 +1,117 @@
+package com.healthmonitor.controller;
+
+import com.healthmonitor.dto.HeartRateBatchDTO;
+import com.healthmonitor.dto.HeartRateIngestDTO;
+import com.healthmonitor.dto.HeartRateSampleDTO;
+import com.healthmonitor.model.User;
+import com.healthmonitor.repository.HeartRateSampleStore;
+import com.healthmonitor.service.HeartRateService;
+import com.healthmonitor.service.UserService;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * REST Controller for raw heart-rate samples
+ */
+@RestController
+@RequestMapping("/api/users/{userId}/heart-rate")
+public class HeartRateController {
+    
+    private static final Duration MAX_RANGE = Duration.ofDays(7);
+    
+    private final HeartRateService heartRateService;
+    private final UserService userService;
+    
+    @Autowired
+    public HeartRateController(HeartRateService heartRateService,
+                               UserService userService) {
+        this.heartRateService = heartRateService;
+        this.userService = userService;
+    }
+    
+    /**
+     * Upload heart-rate samples, e.g. one per second from a wearable
+     */
+    @PostMapping
+    public ResponseEntity<HeartRateIngestDTO> addSamples(@PathVariable Long userId,
+                                                         @Valid @RequestBody HeartRateBatchDTO batchDTO) {
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        return new ResponseEntity<>(heartRateService.addSamples(user, batchDTO.getSamples()), HttpStatus.OK);
+    }
+    
+    /**
+     * Get samples in a time range (at most 7 days)
+     */
+    @GetMapping
+    public ResponseEntity<List<HeartRateSampleDTO>> getSamples(
+            @PathVariable Long userId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        
+        if (to.isBefore(from) || Duration.between(from, to).compareTo(MAX_RANGE) > 0) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        return new ResponseEntity<>(heartRateService.getSamples(user, from, to), HttpStatus.OK);
+    }
+    
+    /**
+     * Get a day's samples in their stored binary encoding
+     * The body is written straight from the mapped segment file.
+     */
+    @GetMapping(value = "/{date}/raw", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<StreamingResponseBody> getRawSamples(
+            @PathVariable Long userId,
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        
+        User user = userService.getUserById(userId)
+            .orElse(null);
+        
+        if (user == null) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
+        
+        HeartRateSampleStore.DaySamples samples = heartRateService.getDaySamples(user, date);
+        ByteBuffer records = samples.getRecords();
+        StreamingResponseBody body = outputStream -> {
+            WritableByteChannel channel = Channels.newChannel(outputStream);
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+        };
+        
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .contentLength(records.remaining())
+            .header("X-Sample-Count", String.valueOf(samples.getSampleCount()))
+            .body(body);
+    }
+}
+
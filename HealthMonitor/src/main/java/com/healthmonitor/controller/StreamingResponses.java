@@ -0,0 +1,56 @@
+package com.healthmonitor.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * JSON array responses written element by element while the rows are read
+ * 
+ * The body runs after the handler returns, on an MVC async thread, so the row source must
+ * open its own transaction. Only the generator's buffer is held in memory, never the list.
+ */
+final class StreamingResponses {
+    
+    private StreamingResponses() {
+    }
+    
+    /**
+     * Supplies the elements of the array to an action, typically from a repository Stream
+     */
+    @FunctionalInterface
+    interface RowSource<T> {
+        void forEach(Consumer<? super T> action);
+    }
+    
+    static <T> ResponseEntity<StreamingResponseBody> jsonArray(ObjectMapper objectMapper, RowSource<T> source) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.writer().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                source.forEach(row -> {
+                    try {
+                        generator.writeObject(row);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+}
+
@@ -1,10 +1,14 @@
 package com.healthmonitor.controller;
 
+import com.healthmonitor.dto.CursorPageDTO;
 import com.healthmonitor.dto.UserDTO;
 import com.healthmonitor.model.User;
+import com.healthmonitor.service.KeysetCursor;
 import com.healthmonitor.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Window;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -51,14 +55,33 @@ public class UserController {
     }
     
     /**
-     * Get all users
+     * Get the first users ordered by id, at most KeysetCursor.MAX_PAGE_SIZE
+     * When there are more, the X-Next-Cursor header holds the cursor of /page that continues the list.
      */
     @GetMapping
     public ResponseEntity<List<UserDTO>> getAllUsers() {
-        List<UserDTO> users = userService.getAllUsers().stream()
+        Window<UserDTO> users = userService.getAllUsers();
+        HttpHeaders headers = new HttpHeaders();
+        String nextCursor = KeysetCursor.nextCursor(users, "id");
+        if (nextCursor != null) {
+            headers.set(KeysetCursor.NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return new ResponseEntity<>(users.getContent(), headers, HttpStatus.OK);
+    }
+    
+    /**
+     * Get a page of users ordered by id
+     * Pass the returned nextCursor as cursor to get the following page.
+     */
+    @GetMapping("/page")
+    public ResponseEntity<CursorPageDTO<UserDTO>> getUsersPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + KeysetCursor.DEFAULT_PAGE_SIZE) int size) {
+        Window<User> page = userService.getUsersPage(cursor, size);
+        List<UserDTO> users = page.stream()
             .map(UserDTO::new)
             .collect(Collectors.toList());
-        return new ResponseEntity<>(users, HttpStatus.OK);
+        return new ResponseEntity<>(new CursorPageDTO<>(users, userService.nextCursor(page)), HttpStatus.OK);
     }
     
     /**
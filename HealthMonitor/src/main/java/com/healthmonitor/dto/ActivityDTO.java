@@ -49,6 +49,23 @@ public class ActivityDTO {
         this.averagePace = activity.getAveragePace();
     }
     
+    /**
+     * Projection constructor, used by JPQL constructor expressions in ActivityRepository
+     */
+    public ActivityDTO(Long id, String activityType, LocalDateTime startTime, LocalDateTime endTime,
+                       Double durationMinutes, Double caloriesBurned, Double distanceKm, String notes) {
+        this.id = id;
+        this.activityType = activityType;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.durationMinutes = durationMinutes;
+        this.caloriesBurned = caloriesBurned;
+        this.distanceKm = distanceKm;
+        this.notes = notes;
+        this.averagePace = durationMinutes == null || durationMinutes == 0 || distanceKm == null || distanceKm == 0
+            ? 0.0 : distanceKm / (durationMinutes / 60.0);
+    }
+    
     // Convert to Entity (without user - will be set in service)
     public Activity toEntity() {
         Activity activity = new Activity();
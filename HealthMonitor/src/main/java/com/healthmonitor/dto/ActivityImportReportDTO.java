@@ -0,0 +1,197 @@
+package com.healthmonitor.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object for the result of a bulk activity import
+ * Contains overall totals and one entry per processed chunk
+ */
+public class ActivityImportReportDTO {
+    
+    private String format;
+    
+    private int totalRecords;
+    
+    private int importedRecords;
+    
+    private int failedRecords;
+    
+    private int daysUpdated;
+    
+    private List<ChunkReport> chunks = new ArrayList<>();
+    
+    // Constructors
+    public ActivityImportReportDTO() {
+    }
+    
+    public ActivityImportReportDTO(String format) {
+        this.format = format;
+    }
+    
+    // Business methods
+    public void addChunk(ChunkReport chunk) {
+        chunks.add(chunk);
+        totalRecords += chunk.getImported() + chunk.getFailed();
+        importedRecords += chunk.getImported();
+        failedRecords += chunk.getFailed();
+    }
+    
+    // Getters and Setters
+    public String getFormat() {
+        return format;
+    }
+    
+    public void setFormat(String format) {
+        this.format = format;
+    }
+    
+    public int getTotalRecords() {
+        return totalRecords;
+    }
+    
+    public void setTotalRecords(int totalRecords) {
+        this.totalRecords = totalRecords;
+    }
+    
+    public int getImportedRecords() {
+        return importedRecords;
+    }
+    
+    public void setImportedRecords(int importedRecords) {
+        this.importedRecords = importedRecords;
+    }
+    
+    public int getFailedRecords() {
+        return failedRecords;
+    }
+    
+    public void setFailedRecords(int failedRecords) {
+        this.failedRecords = failedRecords;
+    }
+    
+    public int getDaysUpdated() {
+        return daysUpdated;
+    }
+    
+    public void setDaysUpdated(int daysUpdated) {
+        this.daysUpdated = daysUpdated;
+    }
+    
+    public List<ChunkReport> getChunks() {
+        return chunks;
+    }
+    
+    public void setChunks(List<ChunkReport> chunks) {
+        this.chunks = chunks;
+    }
+    
+    /**
+     * Progress and errors for one chunk of input lines
+     */
+    public static class ChunkReport {
+        
+        private int chunk;
+        
+        private long firstLine;
+        
+        private long lastLine;
+        
+        private int imported;
+        
+        private int failed;
+        
+        private List<RecordError> errors = new ArrayList<>();
+        
+        public ChunkReport() {
+        }
+        
+        public ChunkReport(int chunk, long firstLine) {
+            this.chunk = chunk;
+            this.firstLine = firstLine;
+        }
+        
+        public int getChunk() {
+            return chunk;
+        }
+        
+        public void setChunk(int chunk) {
+            this.chunk = chunk;
+        }
+        
+        public long getFirstLine() {
+            return firstLine;
+        }
+        
+        public void setFirstLine(long firstLine) {
+            this.firstLine = firstLine;
+        }
+        
+        public long getLastLine() {
+            return lastLine;
+        }
+        
+        public void setLastLine(long lastLine) {
+            this.lastLine = lastLine;
+        }
+        
+        public int getImported() {
+            return imported;
+        }
+        
+        public void setImported(int imported) {
+            this.imported = imported;
+        }
+        
+        public int getFailed() {
+            return failed;
+        }
+        
+        public void setFailed(int failed) {
+            this.failed = failed;
+        }
+        
+        public List<RecordError> getErrors() {
+            return errors;
+        }
+        
+        public void setErrors(List<RecordError> errors) {
+            this.errors = errors;
+        }
+    }
+    
+    /**
+     * A record that could not be imported
+     */
+    public static class RecordError {
+        
+        private long line;
+        
+        private String message;
+        
+        public RecordError() {
+        }
+        
+        public RecordError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+        
+        public long getLine() {
+            return line;
+        }
+        
+        public void setLine(long line) {
+            this.line = line;
+        }
+        
+        public String getMessage() {
+            return message;
+        }
+        
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+}
+
@@ -0,0 +1,57 @@
+package com.healthmonitor.dto;
+
+/**
+ * Data Transfer Object for BMR and TDEE statistics of a group of users under one formula
+ */
+public class BMRStatsDTO {
+    
+    private double averageBmr;
+    private double minBmr;
+    private double maxBmr;
+    private double averageTdee;
+    
+    // Constructors
+    public BMRStatsDTO() {
+    }
+    
+    public BMRStatsDTO(double averageBmr, double minBmr, double maxBmr, double averageTdee) {
+        this.averageBmr = averageBmr;
+        this.minBmr = minBmr;
+        this.maxBmr = maxBmr;
+        this.averageTdee = averageTdee;
+    }
+    
+    // Getters and Setters
+    public double getAverageBmr() {
+        return averageBmr;
+    }
+    
+    public void setAverageBmr(double averageBmr) {
+        this.averageBmr = averageBmr;
+    }
+    
+    public double getMinBmr() {
+        return minBmr;
+    }
+    
+    public void setMinBmr(double minBmr) {
+        this.minBmr = minBmr;
+    }
+    
+    public double getMaxBmr() {
+        return maxBmr;
+    }
+    
+    public void setMaxBmr(double maxBmr) {
+        this.maxBmr = maxBmr;
+    }
+    
+    public double getAverageTdee() {
+        return averageTdee;
+    }
+    
+    public void setAverageTdee(double averageTdee) {
+        this.averageTdee = averageTdee;
+    }
+}
+
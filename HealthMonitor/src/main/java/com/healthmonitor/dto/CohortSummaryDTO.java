@@ -0,0 +1,75 @@
+package com.healthmonitor.dto;
+
+import com.healthmonitor.model.User;
+import java.util.Map;
+
+/**
+ * Data Transfer Object for the BMR and TDEE of one cohort of users
+ * A cohort is an age band, a gender and an activity level (null when not set).
+ */
+public class CohortSummaryDTO {
+    
+    private String ageBand;
+    private User.Gender gender;
+    private User.ActivityLevel activityLevel;
+    private long users;
+    private Map<String, BMRStatsDTO> formulas;
+    
+    // Constructors
+    public CohortSummaryDTO() {
+    }
+    
+    public CohortSummaryDTO(String ageBand, User.Gender gender, User.ActivityLevel activityLevel,
+                            long users, Map<String, BMRStatsDTO> formulas) {
+        this.ageBand = ageBand;
+        this.gender = gender;
+        this.activityLevel = activityLevel;
+        this.users = users;
+        this.formulas = formulas;
+    }
+    
+    // Getters and Setters
+    public String getAgeBand() {
+        return ageBand;
+    }
+    
+    public void setAgeBand(String ageBand) {
+        this.ageBand = ageBand;
+    }
+    
+    public User.Gender getGender() {
+        return gender;
+    }
+    
+    public void setGender(User.Gender gender) {
+        this.gender = gender;
+    }
+    
+    public User.ActivityLevel getActivityLevel() {
+        return activityLevel;
+    }
+    
+    public void setActivityLevel(User.ActivityLevel activityLevel) {
+        this.activityLevel = activityLevel;
+    }
+    
+    public long getUsers() {
+        return users;
+    }
+    
+    public void setUsers(long users) {
+        this.users = users;
+    }
+    
+    /**
+     * Statistics per BMR formula, keyed by formula name
+     */
+    public Map<String, BMRStatsDTO> getFormulas() {
+        return formulas;
+    }
+    
+    public void setFormulas(Map<String, BMRStatsDTO> formulas) {
+        this.formulas = formulas;
+    }
+}
+
@@ -58,6 +58,26 @@ public class HealthMetricsDTO {
         this.netCalories = metrics.calculateNetCalories();
     }
     
+    /**
+     * Projection constructor, used by JPQL constructor expressions in HealthMetricsRepository
+     */
+    public HealthMetricsDTO(Long id, LocalDate date, Integer steps, Double caloriesConsumed, Double caloriesBurned,
+                            Double distanceKm, Integer activeMinutes, Double waterIntakeLiters,
+                            Double sleepHours, Integer heartRateAvg) {
+        this.id = id;
+        this.date = date;
+        this.steps = steps;
+        this.caloriesConsumed = caloriesConsumed;
+        this.caloriesBurned = caloriesBurned;
+        this.distanceKm = distanceKm;
+        this.activeMinutes = activeMinutes;
+        this.waterIntakeLiters = waterIntakeLiters;
+        this.sleepHours = sleepHours;
+        this.heartRateAvg = heartRateAvg;
+        this.netCalories = (caloriesConsumed != null ? caloriesConsumed : 0.0) - 
+                           (caloriesBurned != null ? caloriesBurned : 0.0);
+    }
+    
     // Convert to Entity
     public HealthMetrics toEntity() {
         HealthMetrics metrics = new HealthMetrics();
@@ -0,0 +1,34 @@
+package com.healthmonitor.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object for a batch of heart-rate samples uploaded by a device
+ */
+public class HeartRateBatchDTO {
+    
+    @NotEmpty(message = "At least one sample is required")
+    @Valid
+    private List<HeartRateSampleDTO> samples = new ArrayList<>();
+    
+    // Constructors
+    public HeartRateBatchDTO() {
+    }
+    
+    public HeartRateBatchDTO(List<HeartRateSampleDTO> samples) {
+        this.samples = samples;
+    }
+    
+    // Getters and Setters
+    public List<HeartRateSampleDTO> getSamples() {
+        return samples;
+    }
+    
+    public void setSamples(List<HeartRateSampleDTO> samples) {
+        this.samples = samples;
+    }
+}
+
@@ -0,0 +1,48 @@
+package com.healthmonitor.dto;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Data Transfer Object for the result of a heart-rate upload
+ * Samples that are not newer than the last stored sample of their day are skipped
+ */
+public class HeartRateIngestDTO {
+    
+    private int accepted;
+    
+    private int skipped;
+    
+    private Map<LocalDate, Integer> dailyAverages = new TreeMap<>();
+    
+    // Constructors
+    public HeartRateIngestDTO() {
+    }
+    
+    // Getters and Setters
+    public int getAccepted() {
+        return accepted;
+    }
+    
+    public void setAccepted(int accepted) {
+        this.accepted = accepted;
+    }
+    
+    public int getSkipped() {
+        return skipped;
+    }
+    
+    public void setSkipped(int skipped) {
+        this.skipped = skipped;
+    }
+    
+    public Map<LocalDate, Integer> getDailyAverages() {
+        return dailyAverages;
+    }
+    
+    public void setDailyAverages(Map<LocalDate, Integer> dailyAverages) {
+        this.dailyAverages = dailyAverages;
+    }
+}
+
@@ -0,0 +1,45 @@
+package com.healthmonitor.dto;
+
+import jakarta.validation.constraints.*;
+import java.time.LocalDateTime;
+
+/**
+ * Data Transfer Object for a single heart-rate sample
+ */
+public class HeartRateSampleDTO {
+    
+    @NotNull(message = "Timestamp is required")
+    private LocalDateTime timestamp;
+    
+    @NotNull(message = "Heart rate is required")
+    @Min(value = 1, message = "Heart rate must be at least 1 bpm")
+    @Max(value = 255, message = "Heart rate cannot exceed 255 bpm")
+    private Integer bpm;
+    
+    // Constructors
+    public HeartRateSampleDTO() {
+    }
+    
+    public HeartRateSampleDTO(LocalDateTime timestamp, Integer bpm) {
+        this.timestamp = timestamp;
+        this.bpm = bpm;
+    }
+    
+    // Getters and Setters
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+    
+    public void setTimestamp(LocalDateTime timestamp) {
+        this.timestamp = timestamp;
+    }
+    
+    public Integer getBpm() {
+        return bpm;
+    }
+    
+    public void setBpm(Integer bpm) {
+        this.bpm = bpm;
+    }
+}
+
@@ -0,0 +1,117 @@
+package com.healthmonitor.dto;
+
+/**
+ * Data Transfer Object for the rolling 7- and 28-day figures of one daily metric
+ * Days without a value for the metric are not counted in averages; they are null
+ * when there is no such day.
+ */
+public class MetricTrendDTO {
+    
+    private double sum7;
+    private int days7;
+    private Double average7;
+    private Double ewma7;
+    private double sum28;
+    private int days28;
+    private Double average28;
+    private Double ewma28;
+    
+    // Constructors
+    public MetricTrendDTO() {
+    }
+    
+    public MetricTrendDTO(double sum7, int days7, Double ewma7, double sum28, int days28, Double ewma28) {
+        this.sum7 = sum7;
+        this.days7 = days7;
+        this.average7 = days7 > 0 ? sum7 / days7 : null;
+        this.ewma7 = ewma7;
+        this.sum28 = sum28;
+        this.days28 = days28;
+        this.average28 = days28 > 0 ? sum28 / days28 : null;
+        this.ewma28 = ewma28;
+    }
+    
+    // Getters and Setters
+    /**
+     * Sum over the 7 days ending today
+     */
+    public double getSum7() {
+        return sum7;
+    }
+    
+    public void setSum7(double sum7) {
+        this.sum7 = sum7;
+    }
+    
+    /**
+     * Number of the 7 days that have a value
+     */
+    public int getDays7() {
+        return days7;
+    }
+    
+    public void setDays7(int days7) {
+        this.days7 = days7;
+    }
+    
+    public Double getAverage7() {
+        return average7;
+    }
+    
+    public void setAverage7(Double average7) {
+        this.average7 = average7;
+    }
+    
+    /**
+     * Exponentially weighted average with a span of 7 days (each day weighs 0.75 times the next)
+     */
+    public Double getEwma7() {
+        return ewma7;
+    }
+    
+    public void setEwma7(Double ewma7) {
+        this.ewma7 = ewma7;
+    }
+    
+    /**
+     * Sum over the 28 days ending today
+     */
+    public double getSum28() {
+        return sum28;
+    }
+    
+    public void setSum28(double sum28) {
+        this.sum28 = sum28;
+    }
+    
+    /**
+     * Number of the 28 days that have a value
+     */
+    public int getDays28() {
+        return days28;
+    }
+    
+    public void setDays28(int days28) {
+        this.days28 = days28;
+    }
+    
+    public Double getAverage28() {
+        return average28;
+    }
+    
+    public void setAverage28(Double average28) {
+        this.average28 = average28;
+    }
+    
+    /**
+     * Exponentially weighted average with a span of 28 days (each day weighs 27/29 times the next)
+     */
+    public Double getEwma28() {
+        return ewma28;
+    }
+    
+    public void setEwma28(Double ewma28) {
+        this.ewma28 = ewma28;
+    }
+}
+
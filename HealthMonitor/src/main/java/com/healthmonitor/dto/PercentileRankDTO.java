@@ -0,0 +1,75 @@
+package com.healthmonitor.dto;
+
+/**
+ * Data Transfer Object for the percentile rank of a daily value
+ * Percentiles are null when there are no values to rank against.
+ */
+public class PercentileRankDTO {
+    
+    private double value;
+    private Double percentile;
+    private long cohortSize;
+    private Double populationPercentile;
+    private long populationSize;
+    
+    // Constructors
+    public PercentileRankDTO() {
+    }
+    
+    public PercentileRankDTO(double value, Double percentile, long cohortSize,
+                             Double populationPercentile, long populationSize) {
+        this.value = value;
+        this.percentile = percentile;
+        this.cohortSize = cohortSize;
+        this.populationPercentile = populationPercentile;
+        this.populationSize = populationSize;
+    }
+    
+    // Getters and Setters
+    public double getValue() {
+        return value;
+    }
+    
+    public void setValue(double value) {
+        this.value = value;
+    }
+    
+    /**
+     * Percentile rank within the cohort (age band and gender) on the day
+     */
+    public Double getPercentile() {
+        return percentile;
+    }
+    
+    public void setPercentile(Double percentile) {
+        this.percentile = percentile;
+    }
+    
+    public long getCohortSize() {
+        return cohortSize;
+    }
+    
+    public void setCohortSize(long cohortSize) {
+        this.cohortSize = cohortSize;
+    }
+    
+    /**
+     * Percentile rank among all users on the day
+     */
+    public Double getPopulationPercentile() {
+        return populationPercentile;
+    }
+    
+    public void setPopulationPercentile(Double populationPercentile) {
+        this.populationPercentile = populationPercentile;
+    }
+    
+    public long getPopulationSize() {
+        return populationSize;
+    }
+    
+    public void setPopulationSize(long populationSize) {
+        this.populationSize = populationSize;
+    }
+}
+
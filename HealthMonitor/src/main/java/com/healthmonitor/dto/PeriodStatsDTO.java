@@ -0,0 +1,166 @@
+package com.healthmonitor.dto;
+
+import com.healthmonitor.repository.MetricsAggregate;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Data Transfer Object for health statistics over a period of days
+ */
+public class PeriodStatsDTO {
+    
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private long daysWithData;
+    private long totalSteps;
+    private double totalCaloriesBurned;
+    private double totalCaloriesConsumed;
+    private double netCalories;
+    private double totalDistanceKm;
+    private long totalActiveMinutes;
+    private double totalWaterIntakeLiters;
+    private Double averageSleepHours;
+    private Double averageHeartRate;
+    private double averageStepsPerDay;
+    private double averageActiveMinutesPerDay;
+    
+    // Constructors
+    public PeriodStatsDTO() {
+    }
+    
+    /**
+     * Statistics for the days from startDate to endDate; averages per day are taken
+     * over all days of the period, including days without metrics
+     */
+    public PeriodStatsDTO(LocalDate startDate, LocalDate endDate, MetricsAggregate aggregate) {
+        double days = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.daysWithData = aggregate.getDays();
+        this.totalSteps = aggregate.getSteps() != null ? aggregate.getSteps() : 0;
+        this.totalCaloriesBurned = aggregate.getCaloriesBurned() != null ? aggregate.getCaloriesBurned() : 0.0;
+        this.totalCaloriesConsumed = aggregate.getCaloriesConsumed() != null ? aggregate.getCaloriesConsumed() : 0.0;
+        this.netCalories = totalCaloriesConsumed - totalCaloriesBurned;
+        this.totalDistanceKm = aggregate.getDistanceKm() != null ? aggregate.getDistanceKm() : 0.0;
+        this.totalActiveMinutes = aggregate.getActiveMinutes() != null ? aggregate.getActiveMinutes() : 0;
+        this.totalWaterIntakeLiters = aggregate.getWaterIntakeLiters() != null ? aggregate.getWaterIntakeLiters() : 0.0;
+        this.averageSleepHours = aggregate.getAverageSleepHours();
+        this.averageHeartRate = aggregate.getAverageHeartRate();
+        this.averageStepsPerDay = totalSteps / days;
+        this.averageActiveMinutesPerDay = totalActiveMinutes / days;
+    }
+    
+    // Getters and Setters
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+    
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+    
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+    
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+    
+    public long getDaysWithData() {
+        return daysWithData;
+    }
+    
+    public void setDaysWithData(long daysWithData) {
+        this.daysWithData = daysWithData;
+    }
+    
+    public long getTotalSteps() {
+        return totalSteps;
+    }
+    
+    public void setTotalSteps(long totalSteps) {
+        this.totalSteps = totalSteps;
+    }
+    
+    public double getTotalCaloriesBurned() {
+        return totalCaloriesBurned;
+    }
+    
+    public void setTotalCaloriesBurned(double totalCaloriesBurned) {
+        this.totalCaloriesBurned = totalCaloriesBurned;
+    }
+    
+    public double getTotalCaloriesConsumed() {
+        return totalCaloriesConsumed;
+    }
+    
+    public void setTotalCaloriesConsumed(double totalCaloriesConsumed) {
+        this.totalCaloriesConsumed = totalCaloriesConsumed;
+    }
+    
+    public double getNetCalories() {
+        return netCalories;
+    }
+    
+    public void setNetCalories(double netCalories) {
+        this.netCalories = netCalories;
+    }
+    
+    public double getTotalDistanceKm() {
+        return totalDistanceKm;
+    }
+    
+    public void setTotalDistanceKm(double totalDistanceKm) {
+        this.totalDistanceKm = totalDistanceKm;
+    }
+    
+    public long getTotalActiveMinutes() {
+        return totalActiveMinutes;
+    }
+    
+    public void setTotalActiveMinutes(long totalActiveMinutes) {
+        this.totalActiveMinutes = totalActiveMinutes;
+    }
+    
+    public double getTotalWaterIntakeLiters() {
+        return totalWaterIntakeLiters;
+    }
+    
+    public void setTotalWaterIntakeLiters(double totalWaterIntakeLiters) {
+        this.totalWaterIntakeLiters = totalWaterIntakeLiters;
+    }
+    
+    public Double getAverageSleepHours() {
+        return averageSleepHours;
+    }
+    
+    public void setAverageSleepHours(Double averageSleepHours) {
+        this.averageSleepHours = averageSleepHours;
+    }
+    
+    public Double getAverageHeartRate() {
+        return averageHeartRate;
+    }
+    
+    public void setAverageHeartRate(Double averageHeartRate) {
+        this.averageHeartRate = averageHeartRate;
+    }
+    
+    public double getAverageStepsPerDay() {
+        return averageStepsPerDay;
+    }
+    
+    public void setAverageStepsPerDay(double averageStepsPerDay) {
+        this.averageStepsPerDay = averageStepsPerDay;
+    }
+    
+    public double getAverageActiveMinutesPerDay() {
+        return averageActiveMinutesPerDay;
+    }
+    
+    public void setAverageActiveMinutesPerDay(double averageActiveMinutesPerDay) {
+        this.averageActiveMinutesPerDay = averageActiveMinutesPerDay;
+    }
+}
+
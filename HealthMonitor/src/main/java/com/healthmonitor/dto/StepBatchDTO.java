@@ -0,0 +1,72 @@
+package com.healthmonitor.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data Transfer Object for a batch of step samples
+ * Used by wearable syncs that upload many (date, steps) pairs at once
+ */
+public class StepBatchDTO {
+    
+    @NotEmpty(message = "At least one step entry is required")
+    @Valid
+    private List<StepEntry> entries = new ArrayList<>();
+    
+    // Constructors
+    public StepBatchDTO() {
+    }
+    
+    public StepBatchDTO(List<StepEntry> entries) {
+        this.entries = entries;
+    }
+    
+    // Getters and Setters
+    public List<StepEntry> getEntries() {
+        return entries;
+    }
+    
+    public void setEntries(List<StepEntry> entries) {
+        this.entries = entries;
+    }
+    
+    /**
+     * A single step sample; a missing date means today
+     */
+    public static class StepEntry {
+        
+        private LocalDate date;
+        
+        @NotNull(message = "Steps are required")
+        @Min(value = 0, message = "Steps cannot be negative")
+        private Integer steps;
+        
+        public StepEntry() {
+        }
+        
+        public StepEntry(LocalDate date, Integer steps) {
+            this.date = date;
+            this.steps = steps;
+        }
+        
+        public LocalDate getDate() {
+            return date;
+        }
+        
+        public void setDate(LocalDate date) {
+            this.date = date;
+        }
+        
+        public Integer getSteps() {
+            return steps;
+        }
+        
+        public void setSteps(Integer steps) {
+            this.steps = steps;
+        }
+    }
+}
+
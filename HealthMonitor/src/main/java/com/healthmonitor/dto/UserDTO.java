@@ -54,6 +54,21 @@ public class UserDTO {
         this.activityLevel = user.getActivityLevel();
     }
     
+    /**
+     * Projection constructor, used by JPQL constructor expressions in UserRepository
+     */
+    public UserDTO(Long id, String name, String email, LocalDate dateOfBirth, User.Gender gender,
+                   Double heightCm, Double weightKg, User.ActivityLevel activityLevel) {
+        this.id = id;
+        this.name = name;
+        this.email = email;
+        this.dateOfBirth = dateOfBirth;
+        this.gender = gender;
+        this.heightCm = heightCm;
+        this.weightKg = weightKg;
+        this.activityLevel = activityLevel;
+    }
+    
     // Convert to Entity
     public User toEntity() {
         User user = new User();
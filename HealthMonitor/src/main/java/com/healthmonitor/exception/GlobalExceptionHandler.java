@@ -44,6 +44,17 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
     }
     
+    /**
+     * Handle reused or still running idempotency keys
+     */
+    @ExceptionHandler(IdempotencyException.class)
+    public ResponseEntity<Map<String, String>> handleIdempotencyException(IdempotencyException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        error.put("message", ex.getMessage());
+        return new ResponseEntity<>(error, ex.getStatus());
+    }
+    
     /**
      * Handle generic exceptions
      */
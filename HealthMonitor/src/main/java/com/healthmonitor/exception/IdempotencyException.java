@@ -0,0 +1,22 @@
+package com.healthmonitor.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when a request with an Idempotency-Key header cannot be answered,
+ * e.g. because the key was already used for a different request
+ */
+public class IdempotencyException extends RuntimeException {
+    
+    private final HttpStatus status;
+    
+    public IdempotencyException(HttpStatus status, String message) {
+        super(message);
+        this.status = status;
+    }
+    
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
+
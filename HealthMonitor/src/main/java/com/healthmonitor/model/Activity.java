@@ -9,7 +9,11 @@ import java.time.LocalDateTime;
  * Represents individual activities/exercises performed by users
  */
 @Entity
-@Table(name = "activities")
+@Table(name = "activities",
+       indexes = {
+           @Index(name = "idx_activities_user_start_time", columnList = "user_id, start_time, id"),
+           @Index(name = "idx_activities_user_type_start_time", columnList = "user_id, activity_type, start_time")
+       })
 public class Activity extends BaseEntity {
     
     @ManyToOne(fetch = FetchType.LAZY)
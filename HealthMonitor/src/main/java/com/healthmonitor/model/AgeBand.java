@@ -0,0 +1,40 @@
+package com.healthmonitor.model;
+
+/**
+ * Age bands used to group users into cohorts
+ */
+public enum AgeBand {
+    UNDER_18("under 18", 0),
+    AGE_18_29("18-29", 18),
+    AGE_30_39("30-39", 30),
+    AGE_40_49("40-49", 40),
+    AGE_50_59("50-59", 50),
+    AGE_60_69("60-69", 60),
+    AGE_70_PLUS("70+", 70);
+    
+    private static final AgeBand[] BANDS = values();
+    
+    private final String label;
+    private final int minAge;
+    
+    AgeBand(String label, int minAge) {
+        this.label = label;
+        this.minAge = minAge;
+    }
+    
+    /**
+     * The band an age in years falls into
+     */
+    public static AgeBand of(int age) {
+        AgeBand band = UNDER_18;
+        for (int i = 1; i < BANDS.length && age >= BANDS[i].minAge; i++) {
+            band = BANDS[i];
+        }
+        return band;
+    }
+    
+    public String getLabel() {
+        return label;
+    }
+}
+
@@ -0,0 +1,82 @@
+package com.healthmonitor.model;
+
+import jakarta.persistence.*;
+
+/**
+ * CalorieBackfillCheckpoint entity
+ * Progress of an unfinished calorie recompute for one user: every activity with an id
+ * up to lastActivityId already has its calories computed for weightKg
+ */
+@Entity
+@Table(name = "calorie_backfill_checkpoints",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"user_id"}))
+public class CalorieBackfillCheckpoint extends BaseEntity {
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+    
+    @Column(name = "weight_kg", nullable = false)
+    private Double weightKg;
+    
+    @Column(name = "last_activity_id", nullable = false)
+    private Long lastActivityId;
+    
+    @Column(name = "processed_activities", nullable = false)
+    private Long processedActivities;
+    
+    // Constructors
+    public CalorieBackfillCheckpoint() {
+    }
+    
+    public CalorieBackfillCheckpoint(User user, Double weightKg) {
+        this.user = user;
+        this.weightKg = weightKg;
+        this.lastActivityId = 0L;
+        this.processedActivities = 0L;
+    }
+    
+    // Business methods
+    /**
+     * Start over for a new weight
+     */
+    public void restart(Double weightKg) {
+        this.weightKg = weightKg;
+        this.lastActivityId = 0L;
+        this.processedActivities = 0L;
+    }
+    
+    // Getters and Setters
+    public User getUser() {
+        return user;
+    }
+    
+    public void setUser(User user) {
+        this.user = user;
+    }
+    
+    public Double getWeightKg() {
+        return weightKg;
+    }
+    
+    public void setWeightKg(Double weightKg) {
+        this.weightKg = weightKg;
+    }
+    
+    public Long getLastActivityId() {
+        return lastActivityId;
+    }
+    
+    public void setLastActivityId(Long lastActivityId) {
+        this.lastActivityId = lastActivityId;
+    }
+    
+    public Long getProcessedActivities() {
+        return processedActivities;
+    }
+    
+    public void setProcessedActivities(Long processedActivities) {
+        this.processedActivities = processedActivities;
+    }
+}
+
@@ -0,0 +1,40 @@
+package com.healthmonitor.model;
+
+import java.time.LocalDate;
+
+/**
+ * The values of a user's daily metrics row before and after one write
+ * Rows that did not exist before the write have empty values before it.
+ */
+public final class DailyMetricsChange {
+    
+    private final Long userId;
+    private final LocalDate date;
+    private final DailyMetricsValues before;
+    private final DailyMetricsValues after;
+    
+    public DailyMetricsChange(Long userId, LocalDate date, DailyMetricsValues before, DailyMetricsValues after) {
+        this.userId = userId;
+        this.date = date;
+        this.before = before;
+        this.after = after;
+    }
+    
+    // Getters
+    public Long getUserId() {
+        return userId;
+    }
+    
+    public LocalDate getDate() {
+        return date;
+    }
+    
+    public DailyMetricsValues getBefore() {
+        return before;
+    }
+    
+    public DailyMetricsValues getAfter() {
+        return after;
+    }
+}
+
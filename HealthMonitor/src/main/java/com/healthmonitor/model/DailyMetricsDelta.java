@@ -0,0 +1,100 @@
+package com.healthmonitor.model;
+
+/**
+ * Immutable amounts to add to a user's daily HealthMetrics totals
+ * Used for in-place increments that do not load the HealthMetrics entity;
+ * negative amounts take a previously added contribution back out
+ */
+public final class DailyMetricsDelta {
+    
+    public static final DailyMetricsDelta ZERO = new DailyMetricsDelta(0, 0.0, 0, 0.0);
+    
+    private final int steps;
+    private final double caloriesBurned;
+    private final int activeMinutes;
+    private final double distanceKm;
+    
+    public DailyMetricsDelta(int steps, double caloriesBurned, int activeMinutes, double distanceKm) {
+        this.steps = steps;
+        this.caloriesBurned = caloriesBurned;
+        this.activeMinutes = activeMinutes;
+        this.distanceKm = distanceKm;
+    }
+    
+    /**
+     * Delta for steps, including the distance they cover (average: 1 km = 1300 steps)
+     */
+    public static DailyMetricsDelta ofSteps(int steps) {
+        return new DailyMetricsDelta(steps, 0.0, 0, steps / 1300.0);
+    }
+    
+    /**
+     * Delta for the totals contributed by an activity
+     */
+    public static DailyMetricsDelta ofActivity(double caloriesBurned, int activeMinutes, double distanceKm) {
+        return new DailyMetricsDelta(0, caloriesBurned, activeMinutes, distanceKm);
+    }
+    
+    /**
+     * Delta for the totals contributed by an activity to the day it starts on
+     */
+    public static DailyMetricsDelta ofActivity(Activity activity) {
+        return ofActivity(
+            activity.getCaloriesBurned() != null ? activity.getCaloriesBurned() : 0.0,
+            activity.getDurationMinutes() != null ? activity.getDurationMinutes().intValue() : 0,
+            activity.getDistanceKm() != null ? activity.getDistanceKm() : 0.0);
+    }
+    
+    // Business methods
+    public DailyMetricsDelta plus(DailyMetricsDelta other) {
+        return new DailyMetricsDelta(steps + other.steps,
+                                     caloriesBurned + other.caloriesBurned,
+                                     activeMinutes + other.activeMinutes,
+                                     distanceKm + other.distanceKm);
+    }
+    
+    public DailyMetricsDelta minus(DailyMetricsDelta other) {
+        return plus(other.negate());
+    }
+    
+    public DailyMetricsDelta negate() {
+        return new DailyMetricsDelta(-steps, -caloriesBurned, -activeMinutes, -distanceKm);
+    }
+    
+    /**
+     * The same amounts as totals, for adding them to week and month rollups
+     */
+    public MetricsTotals toTotals() {
+        return new MetricsTotals(steps, 0.0, caloriesBurned, distanceKm, activeMinutes);
+    }
+    
+    /**
+     * Whether any amount is positive, i.e. the delta adds something to the totals
+     * A delta that also has negative amounts, such as an edited activity, still counts.
+     */
+    public boolean hasIncrease() {
+        return steps > 0 || caloriesBurned > 0.0 || activeMinutes > 0 || distanceKm > 0.0;
+    }
+    
+    public boolean isZero() {
+        return steps == 0 && caloriesBurned == 0.0 && activeMinutes == 0 && distanceKm == 0.0;
+    }
+    
+    // Getters
+    public int getSteps() {
+        return steps;
+    }
+    
+    public double getCaloriesBurned() {
+        return caloriesBurned;
+    }
+    
+    public int getActiveMinutes() {
+        return activeMinutes;
+    }
+    
+    public double getDistanceKm() {
+        return distanceKm;
+    }
+}
+
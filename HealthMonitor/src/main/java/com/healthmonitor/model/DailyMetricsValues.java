@@ -0,0 +1,36 @@
+package com.healthmonitor.model;
+
+/**
+ * Immutable values of one daily HealthMetrics row: the additive totals plus sleep and heart rate
+ */
+public final class DailyMetricsValues {
+    
+    public static final DailyMetricsValues EMPTY = new DailyMetricsValues(MetricsTotals.ZERO, 0.0, 0);
+    
+    private final MetricsTotals totals;
+    private final double sleepHours;
+    private final int heartRateAvg;
+    
+    public DailyMetricsValues(MetricsTotals totals, double sleepHours, int heartRateAvg) {
+        this.totals = totals;
+        this.sleepHours = sleepHours;
+        this.heartRateAvg = heartRateAvg;
+    }
+    
+    // Getters
+    public MetricsTotals getTotals() {
+        return totals;
+    }
+    
+    public double getSleepHours() {
+        return sleepHours;
+    }
+    
+    /**
+     * Average heart rate, or 0 if none was recorded
+     */
+    public int getHeartRateAvg() {
+        return heartRateAvg;
+    }
+}
+
@@ -0,0 +1,56 @@
+package com.healthmonitor.model;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Change marker of a set of rows: how many there are and when the newest change was made
+ * Used as a cache validator; adding, changing or deleting a row changes it.
+ */
+public final class DataVersion {
+    
+    private final long count;
+    private final LocalDateTime lastUpdated;
+    
+    public DataVersion(Long count, LocalDateTime lastUpdated) {
+        this.count = count != null ? count : 0;
+        this.lastUpdated = lastUpdated;
+    }
+    
+    // Business methods
+    public boolean isEmpty() {
+        return count == 0;
+    }
+    
+    /**
+     * Entity tag built from the count, the newest change and any extra state the response depends on
+     */
+    public String toETag(Object... qualifiers) {
+        String base = count + "-" + lastModifiedMillis();
+        if (qualifiers.length == 0) {
+            return base;
+        }
+        return base + "-" + Arrays.stream(qualifiers)
+            .map(String::valueOf)
+            .collect(Collectors.joining("-"));
+    }
+    
+    /**
+     * Time of the newest change in epoch milliseconds, or -1 if there are no rows
+     */
+    public long lastModifiedMillis() {
+        return lastUpdated != null ? lastUpdated.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : -1;
+    }
+    
+    // Getters
+    public long getCount() {
+        return count;
+    }
+    
+    public LocalDateTime getLastUpdated() {
+        return lastUpdated;
+    }
+}
+
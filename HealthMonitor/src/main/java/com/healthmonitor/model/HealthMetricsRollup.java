@@ -0,0 +1,139 @@
+package com.healthmonitor.model;
+
+import jakarta.persistence.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * HealthMetricsRollup entity
+ * Totals of a user's daily HealthMetrics over one ISO week or calendar month,
+ * kept up to date by HealthMetricsRepositoryImpl whenever a daily row changes
+ */
+@Entity
+@Table(name = "health_metrics_rollups",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "period", "period_start"}))
+public class HealthMetricsRollup extends BaseEntity {
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "period", nullable = false, length = 10)
+    private Period period;
+    
+    @Column(name = "period_start", nullable = false)
+    private LocalDate periodStart;
+    
+    @Column(name = "steps", nullable = false)
+    private Long steps;
+    
+    @Column(name = "calories_consumed", nullable = false)
+    private Double caloriesConsumed;
+    
+    @Column(name = "calories_burned", nullable = false)
+    private Double caloriesBurned;
+    
+    @Column(name = "distance_km", nullable = false)
+    private Double distanceKm;
+    
+    @Column(name = "active_minutes", nullable = false)
+    private Long activeMinutes;
+    
+    // Constructors
+    public HealthMetricsRollup() {
+    }
+    
+    // Business methods
+    public MetricsTotals toTotals() {
+        return new MetricsTotals(steps, caloriesConsumed, caloriesBurned, distanceKm, activeMinutes);
+    }
+    
+    // Getters and Setters
+    public User getUser() {
+        return user;
+    }
+    
+    public void setUser(User user) {
+        this.user = user;
+    }
+    
+    public Period getPeriod() {
+        return period;
+    }
+    
+    public void setPeriod(Period period) {
+        this.period = period;
+    }
+    
+    public LocalDate getPeriodStart() {
+        return periodStart;
+    }
+    
+    public void setPeriodStart(LocalDate periodStart) {
+        this.periodStart = periodStart;
+    }
+    
+    public Long getSteps() {
+        return steps;
+    }
+    
+    public void setSteps(Long steps) {
+        this.steps = steps;
+    }
+    
+    public Double getCaloriesConsumed() {
+        return caloriesConsumed;
+    }
+    
+    public void setCaloriesConsumed(Double caloriesConsumed) {
+        this.caloriesConsumed = caloriesConsumed;
+    }
+    
+    public Double getCaloriesBurned() {
+        return caloriesBurned;
+    }
+    
+    public void setCaloriesBurned(Double caloriesBurned) {
+        this.caloriesBurned = caloriesBurned;
+    }
+    
+    public Double getDistanceKm() {
+        return distanceKm;
+    }
+    
+    public void setDistanceKm(Double distanceKm) {
+        this.distanceKm = distanceKm;
+    }
+    
+    public Long getActiveMinutes() {
+        return activeMinutes;
+    }
+    
+    public void setActiveMinutes(Long activeMinutes) {
+        this.activeMinutes = activeMinutes;
+    }
+    
+    // Enums
+    public enum Period {
+        WEEK, MONTH;
+        
+        /**
+         * First day of the period containing a date (weeks start on Monday)
+         */
+        public LocalDate startOf(LocalDate date) {
+            return this == WEEK
+                ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                : date.withDayOfMonth(1);
+        }
+        
+        /**
+         * Last day of the period starting on a date
+         */
+        public LocalDate endOf(LocalDate periodStart) {
+            return this == WEEK ? periodStart.plusDays(6) : periodStart.plusMonths(1).minusDays(1);
+        }
+    }
+}
+
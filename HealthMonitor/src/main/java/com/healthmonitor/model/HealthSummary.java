@@ -0,0 +1,46 @@
+package com.healthmonitor.model;
+
+import java.time.LocalDate;
+
+/**
+ * Immutable snapshot of a user's derived body figures (age, BMI, BMR, TDEE)
+ * Valid for one day and one set of profile values; see HealthSummaryService
+ */
+public final class HealthSummary {
+    
+    private final LocalDate date;
+    private final int age;
+    private final double bmi;
+    private final double bmr;
+    private final double tdee;
+    
+    public HealthSummary(LocalDate date, int age, double bmi, double bmr, double tdee) {
+        this.date = date;
+        this.age = age;
+        this.bmi = bmi;
+        this.bmr = bmr;
+        this.tdee = tdee;
+    }
+    
+    // Getters
+    public LocalDate getDate() {
+        return date;
+    }
+    
+    public int getAge() {
+        return age;
+    }
+    
+    public double getBmi() {
+        return bmi;
+    }
+    
+    public double getBmr() {
+        return bmr;
+    }
+    
+    public double getTdee() {
+        return tdee;
+    }
+}
+
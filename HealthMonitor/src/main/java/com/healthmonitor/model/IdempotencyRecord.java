@@ -0,0 +1,86 @@
+package com.healthmonitor.model;
+
+import jakarta.persistence.*;
+
+/**
+ * IdempotencyRecord entity
+ * Stores the response of a request sent with an Idempotency-Key header,
+ * so a retry of the same request can be answered without repeating it
+ */
+@Entity
+@Table(name = "idempotency_keys",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"scope", "idempotency_key"}),
+       indexes = @Index(name = "idx_idempotency_keys_created_at", columnList = "created_at"))
+public class IdempotencyRecord extends BaseEntity {
+    
+    @Column(name = "scope", nullable = false, length = 100)
+    private String scope;
+    
+    @Column(name = "idempotency_key", nullable = false)
+    private String idempotencyKey;
+    
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+    
+    @Column(name = "response_status", nullable = false)
+    private Integer responseStatus;
+    
+    @Lob
+    @Column(name = "response_body")
+    private String responseBody;
+    
+    // Constructors
+    public IdempotencyRecord() {
+    }
+    
+    public IdempotencyRecord(String scope, String idempotencyKey, String requestHash,
+                             Integer responseStatus, String responseBody) {
+        this.scope = scope;
+        this.idempotencyKey = idempotencyKey;
+        this.requestHash = requestHash;
+        this.responseStatus = responseStatus;
+        this.responseBody = responseBody;
+    }
+    
+    // Getters and Setters
+    public String getScope() {
+        return scope;
+    }
+    
+    public void setScope(String scope) {
+        this.scope = scope;
+    }
+    
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+    
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+    
+    public String getRequestHash() {
+        return requestHash;
+    }
+    
+    public void setRequestHash(String requestHash) {
+        this.requestHash = requestHash;
+    }
+    
+    public Integer getResponseStatus() {
+        return responseStatus;
+    }
+    
+    public void setResponseStatus(Integer responseStatus) {
+        this.responseStatus = responseStatus;
+    }
+    
+    public String getResponseBody() {
+        return responseBody;
+    }
+    
+    public void setResponseBody(String responseBody) {
+        this.responseBody = responseBody;
+    }
+}
+
@@ -0,0 +1,69 @@
+package com.healthmonitor.model;
+
+/**
+ * Immutable sums of the additive HealthMetrics columns
+ * Used for week and month rollups and for the change a write made to a daily row
+ */
+public final class MetricsTotals {
+    
+    public static final MetricsTotals ZERO = new MetricsTotals(0, 0.0, 0.0, 0.0, 0);
+    
+    private final long steps;
+    private final double caloriesConsumed;
+    private final double caloriesBurned;
+    private final double distanceKm;
+    private final long activeMinutes;
+    
+    public MetricsTotals(long steps, double caloriesConsumed, double caloriesBurned,
+                         double distanceKm, long activeMinutes) {
+        this.steps = steps;
+        this.caloriesConsumed = caloriesConsumed;
+        this.caloriesBurned = caloriesBurned;
+        this.distanceKm = distanceKm;
+        this.activeMinutes = activeMinutes;
+    }
+    
+    // Business methods
+    public MetricsTotals plus(MetricsTotals other) {
+        return new MetricsTotals(steps + other.steps,
+                                 caloriesConsumed + other.caloriesConsumed,
+                                 caloriesBurned + other.caloriesBurned,
+                                 distanceKm + other.distanceKm,
+                                 activeMinutes + other.activeMinutes);
+    }
+    
+    public MetricsTotals minus(MetricsTotals other) {
+        return new MetricsTotals(steps - other.steps,
+                                 caloriesConsumed - other.caloriesConsumed,
+                                 caloriesBurned - other.caloriesBurned,
+                                 distanceKm - other.distanceKm,
+                                 activeMinutes - other.activeMinutes);
+    }
+    
+    public boolean isZero() {
+        return steps == 0 && caloriesConsumed == 0.0 && caloriesBurned == 0.0
+            && distanceKm == 0.0 && activeMinutes == 0;
+    }
+    
+    // Getters
+    public long getSteps() {
+        return steps;
+    }
+    
+    public double getCaloriesConsumed() {
+        return caloriesConsumed;
+    }
+    
+    public double getCaloriesBurned() {
+        return caloriesBurned;
+    }
+    
+    public double getDistanceKm() {
+        return distanceKm;
+    }
+    
+    public long getActiveMinutes() {
+        return activeMinutes;
+    }
+}
+
@@ -0,0 +1,53 @@
+package com.healthmonitor.model;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Size of the periods a statistics range is split into
+ */
+public enum StatsGranularity {
+    DAY, WEEK, MONTH;
+    
+    /**
+     * Parse a granularity name, ignoring case
+     * 
+     * @throws IllegalArgumentException if the name is not day, week or month
+     */
+    public static StatsGranularity parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Granularity must be one of day, week, month: " + value);
+        }
+    }
+    
+    /**
+     * First day of the period containing a date (weeks start on Monday)
+     */
+    public LocalDate startOf(LocalDate date) {
+        switch (this) {
+            case WEEK:
+                return HealthMetricsRollup.Period.WEEK.startOf(date);
+            case MONTH:
+                return HealthMetricsRollup.Period.MONTH.startOf(date);
+            default:
+                return date;
+        }
+    }
+    
+    /**
+     * Last day of the period starting on a date
+     */
+    public LocalDate endOf(LocalDate periodStart) {
+        switch (this) {
+            case WEEK:
+                return HealthMetricsRollup.Period.WEEK.endOf(periodStart);
+            case MONTH:
+                return HealthMetricsRollup.Period.MONTH.endOf(periodStart);
+            default:
+                return periodStart;
+        }
+    }
+}
+
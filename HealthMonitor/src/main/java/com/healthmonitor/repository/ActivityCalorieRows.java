@@ -0,0 +1,61 @@
+package com.healthmonitor.repository;
+
+import java.time.LocalDate;
+
+/**
+ * The columns of a run of activities that calorie recomputes need, as parallel arrays
+ * Row i is (ids[i], activityTypes[i], startDates[i], durationMinutes[i], caloriesBurned[i]);
+ * a missing calories value is NaN.
+ */
+public final class ActivityCalorieRows {
+    
+    private final long[] ids;
+    private final String[] activityTypes;
+    private final LocalDate[] startDates;
+    private final double[] durationMinutes;
+    private final double[] caloriesBurned;
+    private int size;
+    
+    ActivityCalorieRows(int capacity) {
+        this.ids = new long[capacity];
+        this.activityTypes = new String[capacity];
+        this.startDates = new LocalDate[capacity];
+        this.durationMinutes = new double[capacity];
+        this.caloriesBurned = new double[capacity];
+    }
+    
+    void add(long id, String activityType, LocalDate startDate, double duration, double calories) {
+        ids[size] = id;
+        activityTypes[size] = activityType;
+        startDates[size] = startDate;
+        durationMinutes[size] = duration;
+        caloriesBurned[size] = calories;
+        size++;
+    }
+    
+    // Getters
+    public int size() {
+        return size;
+    }
+    
+    public long[] getIds() {
+        return ids;
+    }
+    
+    public String[] getActivityTypes() {
+        return activityTypes;
+    }
+    
+    public LocalDate[] getStartDates() {
+        return startDates;
+    }
+    
+    public double[] getDurationMinutes() {
+        return durationMinutes;
+    }
+    
+    public double[] getCaloriesBurned() {
+        return caloriesBurned;
+    }
+}
+
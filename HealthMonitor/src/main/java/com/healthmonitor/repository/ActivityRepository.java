@@ -1,29 +1,90 @@
 package com.healthmonitor.repository;
 
+import com.healthmonitor.dto.ActivityDTO;
 import com.healthmonitor.model.Activity;
 import com.healthmonitor.model.User;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 /**
  * Repository interface for Activity entity
  */
 @Repository
-public interface ActivityRepository extends JpaRepository<Activity, Long> {
+public interface ActivityRepository extends JpaRepository<Activity, Long>, ActivityRepositoryCustom {
+    
+    String STREAM_FETCH_SIZE = "500";
+    
+    String DTO_SELECT =
+        "SELECT new com.healthmonitor.dto.ActivityDTO(a.id, a.activityType, a.startTime, a.endTime, " +
+        "a.durationMinutes, a.caloriesBurned, a.distanceKm, a.notes) FROM Activity a ";
+    
+    /**
+     * Find an activity and lock its row until the transaction ends
+     * Used before changing an activity whose current values are subtracted from the daily totals,
+     * so a concurrent edit or calorie backfill cannot change them in between.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM Activity a WHERE a.id = :id")
+    Optional<Activity> findByIdForUpdate(@Param("id") Long id);
     
     /**
      * Find all activities for a user, ordered by start time descending
+     * Sorted by user first so that H2 reads idx_activities_user_start_time in order.
+     */
+    @Query("SELECT a FROM Activity a WHERE a.user = :user ORDER BY a.user.id DESC, a.startTime DESC, a.id DESC")
+    List<Activity> findByUserOrderByStartTimeDesc(@Param("user") User user);
+    
+    /**
+     * Find a page of a user's activities, newest first, after a keyset position on (user.id, startTime, id)
+     * Sorted by user first so that H2 reads idx_activities_user_start_time in order and stops after the page.
      */
-    List<Activity> findByUserOrderByStartTimeDesc(User user);
+    Window<Activity> findByUserOrderByUserIdDescStartTimeDescIdDesc(User user, ScrollPosition position, Limit limit);
     
     /**
      * Find activities by user and date range
      */
     List<Activity> findByUserAndStartTimeBetween(User user, LocalDateTime start, LocalDateTime end);
     
+    /**
+     * Read a user's latest activities into DTOs, ordered by start time descending
+     */
+    @Query(DTO_SELECT + "WHERE a.user = :user ORDER BY a.user.id DESC, a.startTime DESC, a.id DESC")
+    List<ActivityDTO> findDTOsByUser(@Param("user") User user, Limit limit);
+    
+    /**
+     * Read a user's activities starting within a time range into DTOs
+     */
+    @Query(DTO_SELECT + "WHERE a.user = :user AND a.startTime BETWEEN :start AND :end ORDER BY a.startTime")
+    List<ActivityDTO> findDTOsByUserAndStartTimeBetween(@Param("user") User user,
+                                                        @Param("start") LocalDateTime start,
+                                                        @Param("end") LocalDateTime end);
+    
+    /**
+     * Stream a user's activities starting within a time range as DTOs, ordered by start time
+     * Rows are fetched from a cursor in batches; the stream must be consumed and closed in a transaction.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(DTO_SELECT + "WHERE a.user = :user AND a.startTime BETWEEN :start AND :end ORDER BY a.startTime")
+    Stream<ActivityDTO> streamDTOsByUserAndStartTimeBetween(@Param("user") User user,
+                                                            @Param("start") LocalDateTime start,
+                                                            @Param("end") LocalDateTime end);
+    
     /**
      * Find activities by user and activity type
      */
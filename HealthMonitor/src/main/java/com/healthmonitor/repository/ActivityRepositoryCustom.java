@@ -0,0 +1,48 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.Activity;
+
+import java.util.List;
+
+/**
+ * Custom bulk operations for Activity that bypass the persistence context
+ */
+public interface ActivityRepositoryCustom {
+    
+    /**
+     * Insert activities with JDBC batches
+     * Ids are reserved from the activity sequence and set on the given objects;
+     * the activities are not attached to the persistence context
+     * 
+     * @param activities Activities to insert; each must have its user set
+     * @return Number of inserted rows
+     */
+    int batchInsert(List<Activity> activities);
+    
+    /**
+     * Find the ids of a user's activities after an id, in ascending order
+     */
+    long[] findIdsByUserAfter(Long userId, long afterId);
+    
+    /**
+     * Read the calorie inputs of a user's activities with ids in a range, in id order
+     * 
+     * @param fromId First id, inclusive
+     * @param toId Last id, inclusive
+     * @param capacity Upper bound on the number of rows in the range
+     */
+    ActivityCalorieRows findCalorieRows(Long userId, long fromId, long toId, int capacity);
+    
+    /**
+     * Set calories burned with JDBC batches, skipping rows whose calories no longer
+     * have the expected value because they were changed or deleted meanwhile
+     * 
+     * @param rows Rows as read by findCalorieRows; their calories are the expected values
+     * @param caloriesBurned New value per row
+     * @param indexes Rows to update, by index into rows
+     * @param count Number of entries of indexes to use
+     * @return Whether each listed row was updated, in the order of indexes
+     */
+    boolean[] updateCaloriesBurned(ActivityCalorieRows rows, double[] caloriesBurned, int[] indexes, int count);
+}
+
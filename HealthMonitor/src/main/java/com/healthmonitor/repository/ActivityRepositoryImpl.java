@@ -0,0 +1,142 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.Activity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * JDBC batch operations for Activity, used by bulk imports and calorie recomputes
+ */
+public class ActivityRepositoryImpl implements ActivityRepositoryCustom {
+    
+    private static final int BATCH_SIZE = 500;
+    
+    private static final String INSERT_ACTIVITY =
+        "INSERT INTO activities (id, user_id, activity_type, start_time, end_time, duration_minutes, " +
+        "calories_burned, distance_km, notes, created_at, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private static final String SELECT_IDS =
+        "SELECT id FROM activities WHERE user_id = ? AND id > ? ORDER BY id";
+    
+    private static final String SELECT_CALORIE_ROWS =
+        "SELECT id, activity_type, start_time, duration_minutes, calories_burned FROM activities " +
+        "WHERE user_id = ? AND id BETWEEN ? AND ? ORDER BY id";
+    
+    private static final String UPDATE_CALORIES =
+        "UPDATE activities SET calories_burned = ?, updated_at = ? " +
+        "WHERE id = ? AND calories_burned IS NOT DISTINCT FROM ?";
+    
+    private static final int ID_FETCH_SIZE = 10_000;
+    
+    private static final String ID_SEQUENCE = "activities_seq";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final SequenceIdAllocator idAllocator;
+    
+    @Autowired
+    public ActivityRepositoryImpl(JdbcTemplate jdbcTemplate, SequenceIdAllocator idAllocator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.idAllocator = idAllocator;
+    }
+    
+    @Override
+    public int batchInsert(List<Activity> activities) {
+        long[] ids = idAllocator.allocate(ID_SEQUENCE, activities.size());
+        for (int i = 0; i < ids.length; i++) {
+            activities.get(i).setId(ids[i]);
+        }
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_ACTIVITY, activities, BATCH_SIZE, (ps, activity) -> {
+            ps.setLong(1, activity.getId());
+            ps.setLong(2, activity.getUser().getId());
+            ps.setString(3, activity.getActivityType());
+            ps.setTimestamp(4, Timestamp.valueOf(activity.getStartTime()));
+            ps.setTimestamp(5, Timestamp.valueOf(activity.getEndTime()));
+            ps.setDouble(6, activity.getDurationMinutes());
+            ps.setObject(7, activity.getCaloriesBurned(), Types.DOUBLE);
+            ps.setObject(8, activity.getDistanceKm(), Types.DOUBLE);
+            ps.setString(9, activity.getNotes());
+            ps.setTimestamp(10, now);
+            ps.setTimestamp(11, now);
+        });
+        
+        int inserted = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                inserted += count >= 0 ? count : 1;
+            }
+        }
+        return inserted;
+    }
+    
+    @Override
+    public long[] findIdsByUserAfter(Long userId, long afterId) {
+        long[][] ids = {new long[1024]};
+        int[] count = {0};
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SELECT_IDS);
+            ps.setFetchSize(ID_FETCH_SIZE);
+            ps.setLong(1, userId);
+            ps.setLong(2, afterId);
+            return ps;
+        }, (ResultSet rs) -> {
+            if (count[0] == ids[0].length) {
+                ids[0] = Arrays.copyOf(ids[0], ids[0].length * 2);
+            }
+            ids[0][count[0]++] = rs.getLong(1);
+        });
+        return Arrays.copyOf(ids[0], count[0]);
+    }
+    
+    @Override
+    public ActivityCalorieRows findCalorieRows(Long userId, long fromId, long toId, int capacity) {
+        ActivityCalorieRows rows = new ActivityCalorieRows(capacity);
+        jdbcTemplate.query(SELECT_CALORIE_ROWS, (ResultSet rs) -> {
+            double calories = rs.getDouble(5);
+            rows.add(rs.getLong(1),
+                     rs.getString(2),
+                     rs.getTimestamp(3).toLocalDateTime().toLocalDate(),
+                     rs.getDouble(4),
+                     rs.wasNull() ? Double.NaN : calories);
+        }, userId, fromId, toId);
+        return rows;
+    }
+    
+    @Override
+    public boolean[] updateCaloriesBurned(ActivityCalorieRows rows, double[] caloriesBurned, int[] indexes, int count) {
+        List<Integer> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(indexes[i]);
+        }
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_CALORIES, batch, BATCH_SIZE, (ps, row) -> {
+            double expected = rows.getCaloriesBurned()[row];
+            ps.setDouble(1, caloriesBurned[row]);
+            ps.setTimestamp(2, now);
+            ps.setLong(3, rows.getIds()[row]);
+            ps.setObject(4, Double.isNaN(expected) ? null : expected, Types.DOUBLE);
+        });
+        
+        boolean[] updated = new boolean[count];
+        int i = 0;
+        for (int[] chunk : counts) {
+            for (int rowCount : chunk) {
+                updated[i++] = rowCount != 0;
+            }
+        }
+        return updated;
+    }
+}
+
@@ -0,0 +1,57 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.CalorieBackfillCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository interface for CalorieBackfillCheckpoint entity
+ */
+@Repository
+public interface CalorieBackfillCheckpointRepository extends JpaRepository<CalorieBackfillCheckpoint, Long> {
+    
+    /**
+     * Find the checkpoint of a user's unfinished recompute
+     */
+    @Query("SELECT c FROM CalorieBackfillCheckpoint c WHERE c.user.id = :userId")
+    Optional<CalorieBackfillCheckpoint> findByUserId(@Param("userId") Long userId);
+    
+    /**
+     * Find the users with an unfinished recompute
+     */
+    @Query("SELECT c.user.id FROM CalorieBackfillCheckpoint c ORDER BY c.user.id")
+    List<Long> findUserIds();
+    
+    /**
+     * Move a user's checkpoint forward, unless the recompute was restarted for another weight meanwhile
+     */
+    @Modifying
+    @Query("UPDATE CalorieBackfillCheckpoint c SET c.lastActivityId = :lastActivityId, " +
+           "c.processedActivities = :processedActivities, c.updatedAt = CURRENT_TIMESTAMP " +
+           "WHERE c.user.id = :userId AND c.weightKg = :weightKg AND c.lastActivityId < :lastActivityId")
+    int advance(@Param("userId") Long userId,
+                @Param("weightKg") Double weightKg,
+                @Param("lastActivityId") Long lastActivityId,
+                @Param("processedActivities") Long processedActivities);
+    
+    /**
+     * Delete a user's checkpoint once its recompute is done, unless it was restarted for another weight
+     */
+    @Modifying
+    @Query("DELETE FROM CalorieBackfillCheckpoint c WHERE c.user.id = :userId AND c.weightKg = :weightKg")
+    int deleteFinished(@Param("userId") Long userId, @Param("weightKg") Double weightKg);
+    
+    /**
+     * Delete a user's checkpoint
+     */
+    @Modifying
+    @Query("DELETE FROM CalorieBackfillCheckpoint c WHERE c.user.id = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+}
+
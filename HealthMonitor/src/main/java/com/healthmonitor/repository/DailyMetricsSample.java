@@ -0,0 +1,69 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.User;
+import java.time.LocalDate;
+
+/**
+ * Projection of one daily metrics row with the cohort figures of its user
+ * Returned by the sample queries of HealthMetricsRepository; no entity is loaded.
+ */
+public final class DailyMetricsSample {
+    
+    private final Long userId;
+    private final UserBodyProfile profile;
+    private final LocalDate date;
+    private final int steps;
+    private final double caloriesBurned;
+    private final int activeMinutes;
+    private final double sleepHours;
+    private final int heartRateAvg;
+    
+    public DailyMetricsSample(Long userId, Integer birthYear, User.Gender gender, LocalDate date,
+                              Integer steps, Double caloriesBurned, Integer activeMinutes,
+                              Double sleepHours, Integer heartRateAvg) {
+        this.userId = userId;
+        this.profile = new UserBodyProfile(birthYear, gender, 0.0, 0.0, null);
+        this.date = date;
+        this.steps = steps != null ? steps : 0;
+        this.caloriesBurned = caloriesBurned != null ? caloriesBurned : 0.0;
+        this.activeMinutes = activeMinutes != null ? activeMinutes : 0;
+        this.sleepHours = sleepHours != null ? sleepHours : 0.0;
+        this.heartRateAvg = heartRateAvg != null ? heartRateAvg : 0;
+    }
+    
+    public Long getUserId() {
+        return userId;
+    }
+    
+    /**
+     * Birth year and gender of the user; body figures are not read
+     */
+    public UserBodyProfile getProfile() {
+        return profile;
+    }
+    
+    public LocalDate getDate() {
+        return date;
+    }
+    
+    public int getSteps() {
+        return steps;
+    }
+    
+    public double getCaloriesBurned() {
+        return caloriesBurned;
+    }
+    
+    public int getActiveMinutes() {
+        return activeMinutes;
+    }
+    
+    public double getSleepHours() {
+        return sleepHours;
+    }
+    
+    public int getHeartRateAvg() {
+        return heartRateAvg;
+    }
+}
+
@@ -1,19 +1,52 @@
 package com.healthmonitor.repository;
 
+import com.healthmonitor.dto.HealthMetricsDTO;
 import com.healthmonitor.model.HealthMetrics;
 import com.healthmonitor.model.User;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 /**
  * Repository interface for HealthMetrics entity
  */
 @Repository
-public interface HealthMetricsRepository extends JpaRepository<HealthMetrics, Long> {
+public interface HealthMetricsRepository extends JpaRepository<HealthMetrics, Long>, 
+                                                 HealthMetricsRepositoryCustom {
+    
+    String STREAM_FETCH_SIZE = "500";
+    
+    String DTO_SELECT =
+        "SELECT new com.healthmonitor.dto.HealthMetricsDTO(m.id, m.date, m.steps, m.caloriesConsumed, " +
+        "m.caloriesBurned, m.distanceKm, m.activeMinutes, m.waterIntakeLiters, m.sleepHours, m.heartRateAvg) " +
+        "FROM HealthMetrics m ";
+    
+    String SAMPLE_SELECT =
+        "SELECT new com.healthmonitor.repository.DailyMetricsSample(u.id, YEAR(u.dateOfBirth), u.gender, " +
+        "m.date, m.steps, m.caloriesBurned, m.activeMinutes, m.sleepHours, m.heartRateAvg) FROM HealthMetrics m JOIN m.user u ";
+    
+    String AGGREGATE_COLUMNS =
+        "MIN(m.date) AS firstDate, COUNT(m) AS days, " +
+        "COALESCE(SUM(m.steps), 0) AS steps, " +
+        "COALESCE(SUM(m.caloriesConsumed), 0) AS caloriesConsumed, " +
+        "COALESCE(SUM(m.caloriesBurned), 0) AS caloriesBurned, " +
+        "COALESCE(SUM(m.distanceKm), 0) AS distanceKm, " +
+        "COALESCE(SUM(m.activeMinutes), 0) AS activeMinutes, " +
+        "COALESCE(SUM(m.waterIntakeLiters), 0) AS waterIntakeLiters, " +
+        "AVG(CASE WHEN m.sleepHours > 0 THEN m.sleepHours END) AS averageSleepHours, " +
+        "AVG(CASE WHEN m.heartRateAvg > 0 THEN m.heartRateAvg END) AS averageHeartRate " +
+        "FROM HealthMetrics m WHERE m.user = :user AND m.date BETWEEN :startDate AND :endDate";
     
     /**
      * Find health metrics by user and date
@@ -25,6 +58,89 @@ public interface HealthMetricsRepository extends JpaRepository<HealthMetrics, Lo
      */
     List<HealthMetrics> findByUserAndDateBetween(User user, LocalDate startDate, LocalDate endDate);
     
+    /**
+     * Aggregate a user's health metrics within a date range
+     */
+    @Query("SELECT " + AGGREGATE_COLUMNS)
+    MetricsAggregate aggregateByUserAndDateBetween(@Param("user") User user,
+                                                   @Param("startDate") LocalDate startDate,
+                                                   @Param("endDate") LocalDate endDate);
+    
+    /**
+     * Aggregate a user's health metrics within a date range per day, ordered by date
+     */
+    @Query("SELECT " + AGGREGATE_COLUMNS + " GROUP BY m.date ORDER BY m.date")
+    List<MetricsAggregate> aggregateDailyByUserAndDateBetween(@Param("user") User user,
+                                                              @Param("startDate") LocalDate startDate,
+                                                              @Param("endDate") LocalDate endDate);
+    
+    /**
+     * Aggregate a user's health metrics within a date range per week, ordered by week
+     * 
+     * @param weekStart A Monday on or before startDate; weeks are counted from it
+     */
+    @Query("SELECT " + AGGREGATE_COLUMNS + " " +
+           "GROUP BY FLOOR(((m.date - :weekStart) BY DAY) / 7) ORDER BY MIN(m.date)")
+    List<MetricsAggregate> aggregateWeeklyByUserAndDateBetween(@Param("user") User user,
+                                                               @Param("startDate") LocalDate startDate,
+                                                               @Param("endDate") LocalDate endDate,
+                                                               @Param("weekStart") LocalDate weekStart);
+    
+    /**
+     * Aggregate a user's health metrics within a date range per calendar month, ordered by month
+     */
+    @Query("SELECT " + AGGREGATE_COLUMNS + " " +
+           "GROUP BY EXTRACT(YEAR FROM m.date), EXTRACT(MONTH FROM m.date) ORDER BY MIN(m.date)")
+    List<MetricsAggregate> aggregateMonthlyByUserAndDateBetween(@Param("user") User user,
+                                                                @Param("startDate") LocalDate startDate,
+                                                                @Param("endDate") LocalDate endDate);
+    
+    /**
+     * Read a user's health metrics within a date range into DTOs, ordered by date
+     */
+    @Query(DTO_SELECT + "WHERE m.user = :user AND m.date BETWEEN :startDate AND :endDate ORDER BY m.date")
+    List<HealthMetricsDTO> findDTOsByUserAndDateBetween(@Param("user") User user,
+                                                        @Param("startDate") LocalDate startDate,
+                                                        @Param("endDate") LocalDate endDate);
+    
+    /**
+     * Stream a user's health metrics within a date range as DTOs, ordered by date
+     * Rows are fetched from a cursor in batches; the stream must be consumed and closed in a transaction.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(DTO_SELECT + "WHERE m.user = :user AND m.date BETWEEN :startDate AND :endDate ORDER BY m.date")
+    Stream<HealthMetricsDTO> streamDTOsByUserAndDateBetween(@Param("user") User user,
+                                                            @Param("startDate") LocalDate startDate,
+                                                            @Param("endDate") LocalDate endDate);
+    
+    /**
+     * Stream the steps, calories burned, active minutes, sleep and heart rate of all users' days from a date on, in no particular order
+     * Rows are fetched from a cursor in batches; the stream must be consumed and closed in a transaction.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(SAMPLE_SELECT + "WHERE m.date >= :startDate")
+    Stream<DailyMetricsSample> streamSamplesFrom(@Param("startDate") LocalDate startDate);
+    
+    /**
+     * Stream the steps, calories burned, active minutes, sleep and heart rate of all users' rows for some days, in no particular order
+     * Rows are fetched from a cursor in batches; the stream must be consumed and closed in a transaction.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query(SAMPLE_SELECT + "WHERE m.date IN :dates")
+    Stream<DailyMetricsSample> streamSamplesByDateIn(@Param("dates") Collection<LocalDate> dates);
+    
+    /**
+     * Read the steps, calories burned, active minutes, sleep and heart rate of a user's days from a date on
+     */
+    @Query(SAMPLE_SELECT + "WHERE u.id = :userId AND m.date >= :startDate")
+    List<DailyMetricsSample> findSamplesByUserFrom(@Param("userId") Long userId,
+                                                   @Param("startDate") LocalDate startDate);
+    
+    /**
+     * Find health metrics by user for a set of dates, ordered by date
+     */
+    List<HealthMetrics> findByUserAndDateInOrderByDateAsc(User user, Collection<LocalDate> dates);
+    
     /**
      * Find all health metrics for a user, ordered by date descending
      */
@@ -0,0 +1,50 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.DailyMetricsChange;
+import com.healthmonitor.model.DailyMetricsDelta;
+import com.healthmonitor.model.HealthMetrics;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Custom write operations for HealthMetrics that run as a single atomic
+ * statement in the database instead of a find-then-save on the entity
+ * 
+ * Each write returns the values of the rows it touched before and after it, in date order.
+ */
+public interface HealthMetricsRepositoryCustom {
+    
+    /**
+     * Add to a user's daily totals, creating the row if it does not exist yet
+     * A delta without any positive amount only changes an existing row; for a missing row it is a no-op.
+     * 
+     * @param userId User ID
+     * @param date Day of the metrics row
+     * @param delta Amounts to add
+     * @return The change to the row
+     */
+    List<DailyMetricsChange> incrementDailyTotals(Long userId, LocalDate date, DailyMetricsDelta delta);
+    
+    /**
+     * Add to several of a user's daily totals, one statement per day in date order
+     * Deltas without any positive amount only change existing rows, as for a single day.
+     * 
+     * @param userId User ID
+     * @param deltasByDate Amounts to add, keyed by date
+     * @return The changes to the rows
+     */
+    List<DailyMetricsChange> incrementDailyTotals(Long userId, Map<LocalDate, DailyMetricsDelta> deltasByDate);
+    
+    /**
+     * Set the non-null values of a user's daily metrics, creating the row if it does not exist yet
+     * 
+     * @param userId User ID
+     * @param date Day of the metrics row
+     * @param values Values to set; null fields keep their stored value
+     * @return The change to the row
+     */
+    List<DailyMetricsChange> upsertDailyValues(Long userId, LocalDate date, HealthMetrics values);
+}
+
@@ -0,0 +1,307 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.DailyMetricsChange;
+import com.healthmonitor.model.DailyMetricsDelta;
+import com.healthmonitor.model.DailyMetricsValues;
+import com.healthmonitor.model.HealthMetrics;
+import com.healthmonitor.model.MetricsTotals;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Atomic upserts for HealthMetrics
+ * Uses MERGE on H2 and INSERT ... ON CONFLICT on PostgreSQL, keyed by the
+ * (user_id, date) unique constraint, so concurrent writers neither lose
+ * increments nor fail on a duplicate row. HealthMetrics are never written through JPA,
+ * so the row locks taken by these statements are the only concurrency control.
+ * 
+ * Totals are not clamped: a negative delta takes back exactly what an earlier write
+ * added. A delta with any positive amount is upserted whole; one with none only updates
+ * an existing row and is skipped for a day that has no row.
+ * 
+ * Every write also updates the week and month rollups in the same transaction.
+ * An increment is one statement per day that returns the row's new values; its values
+ * before are those minus the delta, and the delta itself goes to the rollups. An
+ * absolute upsert creates and locks the row first and reads it before and after the
+ * write, since only the difference tells how much it changed the totals.
+ * The daily rows are written in date order, then the rollups, so concurrent writers
+ * take their locks in the same order.
+ */
+public class HealthMetricsRepositoryImpl implements HealthMetricsRepositoryCustom {
+    
+    private static final int MAX_ATTEMPTS = 3;
+    
+    private static final String INSERT_COLUMNS =
+        "(id, user_id, date, steps, calories_consumed, calories_burned, distance_km, active_minutes, " +
+        "water_intake_liters, sleep_hours, heart_rate_avg, created_at, updated_at)";
+    
+    private static final String INCREMENT_VALUES =
+        "steps = COALESCE(t.steps, 0) + :steps, " +
+        "calories_burned = COALESCE(t.calories_burned, 0) + :caloriesBurned, " +
+        "distance_km = COALESCE(t.distance_km, 0) + :distanceKm, " +
+        "active_minutes = COALESCE(t.active_minutes, 0) + :activeMinutes, " +
+        "updated_at = :now";
+    
+    private static final String H2_INCREMENT =
+        "MERGE INTO health_metrics t " +
+        "USING (SELECT CAST(:userId AS BIGINT) AS user_id, CAST(:date AS DATE) AS date) s " +
+        "ON t.user_id = s.user_id AND t.date = s.date " +
+        "WHEN MATCHED THEN UPDATE SET " + INCREMENT_VALUES + " " +
+        "WHEN NOT MATCHED THEN INSERT " + INSERT_COLUMNS + " " +
+        "VALUES (NEXT VALUE FOR health_metrics_seq, s.user_id, s.date, " +
+        ":steps, 0, :caloriesBurned, :distanceKm, :activeMinutes, 0, 0, 0, :now, :now)";
+    
+    private static final String POSTGRES_INCREMENT =
+        "INSERT INTO health_metrics AS t " + INSERT_COLUMNS + " " +
+        "VALUES (nextval('health_metrics_seq'), :userId, :date, " +
+        ":steps, 0, :caloriesBurned, :distanceKm, :activeMinutes, 0, 0, 0, :now, :now) " +
+        "ON CONFLICT (user_id, date) DO UPDATE SET " + INCREMENT_VALUES;
+    
+    // Deltas without a positive amount take back a contribution that was added to an existing
+    // row; they never create a row, so a day that has no row is left alone
+    private static final String DECREMENT =
+        "UPDATE health_metrics t SET " + INCREMENT_VALUES + " " +
+        "WHERE t.user_id = :userId AND t.date = :date";
+    
+    private static final String SET_VALUES =
+        "steps = COALESCE(:steps, t.steps), " +
+        "calories_consumed = COALESCE(:caloriesConsumed, t.calories_consumed), " +
+        "calories_burned = COALESCE(:caloriesBurned, t.calories_burned), " +
+        "distance_km = COALESCE(:distanceKm, t.distance_km), " +
+        "active_minutes = COALESCE(:activeMinutes, t.active_minutes), " +
+        "water_intake_liters = COALESCE(:waterIntakeLiters, t.water_intake_liters), " +
+        "sleep_hours = COALESCE(:sleepHours, t.sleep_hours), " +
+        "heart_rate_avg = COALESCE(:heartRateAvg, t.heart_rate_avg), " +
+        "updated_at = :now";
+    
+    private static final String INSERT_VALUES =
+        "COALESCE(:steps, 0), COALESCE(:caloriesConsumed, 0), COALESCE(:caloriesBurned, 0), " +
+        "COALESCE(:distanceKm, 0), COALESCE(:activeMinutes, 0), COALESCE(:waterIntakeLiters, 0), " +
+        "COALESCE(:sleepHours, 0), COALESCE(:heartRateAvg, 0), :now, :now";
+    
+    private static final String H2_SET =
+        "MERGE INTO health_metrics t " +
+        "USING (SELECT CAST(:userId AS BIGINT) AS user_id, CAST(:date AS DATE) AS date) s " +
+        "ON t.user_id = s.user_id AND t.date = s.date " +
+        "WHEN MATCHED THEN UPDATE SET " + SET_VALUES + " " +
+        "WHEN NOT MATCHED THEN INSERT " + INSERT_COLUMNS + " " +
+        "VALUES (NEXT VALUE FOR health_metrics_seq, s.user_id, s.date, " + INSERT_VALUES + ")";
+    
+    private static final String VALUE_COLUMNS =
+        "date, steps, calories_consumed, calories_burned, distance_km, active_minutes, " +
+        "sleep_hours, heart_rate_avg";
+    
+    private static final String SELECT_VALUES =
+        "SELECT " + VALUE_COLUMNS + " FROM health_metrics WHERE user_id = :userId AND date IN (:dates)";
+    
+    // Increments that return the row as it is after them
+    private static final String H2_INCREMENT_RETURNING =
+        "SELECT " + VALUE_COLUMNS + " FROM FINAL TABLE (" + H2_INCREMENT + ")";
+    
+    private static final String POSTGRES_INCREMENT_RETURNING =
+        POSTGRES_INCREMENT + " RETURNING " + VALUE_COLUMNS;
+    
+    private static final String H2_DECREMENT_RETURNING =
+        "SELECT " + VALUE_COLUMNS + " FROM FINAL TABLE (" + DECREMENT + ")";
+    
+    private static final String POSTGRES_DECREMENT_RETURNING =
+        DECREMENT + " RETURNING " + VALUE_COLUMNS;
+    
+    private static final String POSTGRES_SET =
+        "INSERT INTO health_metrics AS t " + INSERT_COLUMNS + " " +
+        "VALUES (nextval('health_metrics_seq'), :userId, :date, " + INSERT_VALUES + ") " +
+        "ON CONFLICT (user_id, date) DO UPDATE SET " + SET_VALUES;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final HealthMetricsRollupRepository rollupRepository;
+    
+    private Boolean postgres;
+    
+    @Autowired
+    public HealthMetricsRepositoryImpl(NamedParameterJdbcTemplate jdbcTemplate,
+                                       HealthMetricsRollupRepository rollupRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rollupRepository = rollupRepository;
+    }
+    
+    @Override
+    public List<DailyMetricsChange> incrementDailyTotals(Long userId, LocalDate date, DailyMetricsDelta delta) {
+        return incrementDailyTotals(userId, Collections.singletonMap(date, delta));
+    }
+    
+    @Override
+    public List<DailyMetricsChange> incrementDailyTotals(Long userId, Map<LocalDate, DailyMetricsDelta> deltasByDate) {
+        if (deltasByDate.isEmpty()) {
+            return Collections.emptyList();
+        }
+        entityManager.flush();
+        
+        LocalDateTime now = LocalDateTime.now();
+        Map<LocalDate, MetricsTotals> totalChanges = new TreeMap<>();
+        List<DailyMetricsChange> changes = new ArrayList<>(deltasByDate.size());
+        for (Map.Entry<LocalDate, DailyMetricsDelta> entry : new TreeMap<>(deltasByDate).entrySet()) {
+            LocalDate date = entry.getKey();
+            DailyMetricsDelta delta = entry.getValue();
+            SqlParameterSource params = incrementParams(userId, date, delta, now);
+            String sql = delta.hasIncrease()
+                ? (isPostgres() ? POSTGRES_INCREMENT_RETURNING : H2_INCREMENT_RETURNING)
+                : (isPostgres() ? POSTGRES_DECREMENT_RETURNING : H2_DECREMENT_RETURNING);
+            DailyMetricsValues after = retryOnDuplicateKey(() -> queryValues(sql, params)).get(date);
+            if (after == null) {
+                // A decrease without any increase for a day without a row
+                continue;
+            }
+            MetricsTotals change = delta.toTotals();
+            DailyMetricsValues before = new DailyMetricsValues(after.getTotals().minus(change),
+                                                               after.getSleepHours(), after.getHeartRateAvg());
+            totalChanges.put(date, change);
+            changes.add(new DailyMetricsChange(userId, date, before, after));
+        }
+        rollupRepository.addToRollups(userId, totalChanges);
+        
+        detachManagedMetrics();
+        return changes;
+    }
+    
+    @Override
+    public List<DailyMetricsChange> upsertDailyValues(Long userId, LocalDate date, HealthMetrics values) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+            .addValue("userId", userId)
+            .addValue("date", date)
+            .addValue("steps", values.getSteps(), Types.INTEGER)
+            .addValue("caloriesConsumed", values.getCaloriesConsumed(), Types.DOUBLE)
+            .addValue("caloriesBurned", values.getCaloriesBurned(), Types.DOUBLE)
+            .addValue("distanceKm", values.getDistanceKm(), Types.DOUBLE)
+            .addValue("activeMinutes", values.getActiveMinutes(), Types.INTEGER)
+            .addValue("waterIntakeLiters", values.getWaterIntakeLiters(), Types.DOUBLE)
+            .addValue("sleepHours", values.getSleepHours(), Types.DOUBLE)
+            .addValue("heartRateAvg", values.getHeartRateAvg(), Types.INTEGER)
+            .addValue("now", LocalDateTime.now());
+        return execute(userId, date, () -> jdbcTemplate.update(isPostgres() ? POSTGRES_SET : H2_SET, params));
+    }
+    
+    private MapSqlParameterSource incrementParams(Long userId, LocalDate date,
+                                                  DailyMetricsDelta delta, LocalDateTime now) {
+        return new MapSqlParameterSource()
+            .addValue("userId", userId)
+            .addValue("date", date)
+            .addValue("steps", delta.getSteps())
+            .addValue("caloriesBurned", delta.getCaloriesBurned())
+            .addValue("distanceKm", delta.getDistanceKm())
+            .addValue("activeMinutes", delta.getActiveMinutes())
+            .addValue("now", now);
+    }
+    
+    /**
+     * Run an absolute upsert of one row in the current transaction and add its changes to the rollups
+     * Pending entity changes are flushed first, and managed HealthMetrics are
+     * detached afterwards so later reads see the new row instead of a stale copy.
+     * 
+     * @return The values of the row before and after the upsert
+     */
+    private List<DailyMetricsChange> execute(Long userId, LocalDate date, Runnable upsert) {
+        entityManager.flush();
+        
+        // A zero increment creates the row if it is missing and locks it
+        SqlParameterSource lockParams = incrementParams(userId, date, DailyMetricsDelta.ZERO, LocalDateTime.now());
+        retryOnDuplicateKey(() -> jdbcTemplate.update(isPostgres() ? POSTGRES_INCREMENT : H2_INCREMENT, lockParams));
+        DailyMetricsValues before = findValues(userId, date);
+        
+        retryOnDuplicateKey(() -> {
+            upsert.run();
+            return null;
+        });
+        
+        DailyMetricsValues after = findValues(userId, date);
+        rollupRepository.addToRollups(userId, Collections.singletonMap(
+            date, after.getTotals().minus(before.getTotals())));
+        
+        detachManagedMetrics();
+        return Collections.singletonList(new DailyMetricsChange(userId, date, before, after));
+    }
+    
+    private DailyMetricsValues findValues(Long userId, LocalDate date) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+            .addValue("userId", userId)
+            .addValue("dates", Collections.singleton(date));
+        return queryValues(SELECT_VALUES, params).getOrDefault(date, DailyMetricsValues.EMPTY);
+    }
+    
+    private Map<LocalDate, DailyMetricsValues> queryValues(String sql, SqlParameterSource params) {
+        Map<LocalDate, DailyMetricsValues> values = new HashMap<>();
+        jdbcTemplate.query(sql, params, rs -> {
+            MetricsTotals totals = new MetricsTotals(
+                rs.getLong("steps"),
+                rs.getDouble("calories_consumed"),
+                rs.getDouble("calories_burned"),
+                rs.getDouble("distance_km"),
+                rs.getLong("active_minutes"));
+            values.put(rs.getObject("date", LocalDate.class),
+                       new DailyMetricsValues(totals, rs.getDouble("sleep_hours"), rs.getInt("heart_rate_avg")));
+        });
+        return values;
+    }
+    
+    private <T> T retryOnDuplicateKey(Supplier<T> upsert) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return upsert.get();
+            } catch (DuplicateKeyException e) {
+                // H2's MERGE is not atomic against a concurrent insert of the same key;
+                // the retry finds the committed row and takes the update branch
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+    
+    private void detachManagedMetrics() {
+        Session session = entityManager.unwrap(Session.class);
+        for (Object entry : new ArrayList<>(session.getStatistics().getEntityKeys())) {
+            EntityKey key = (EntityKey) entry;
+            if (HealthMetrics.class.getName().equals(key.getEntityName())) {
+                Object entity = session.get(HealthMetrics.class, key.getIdentifier());
+                if (entity != null) {
+                    session.detach(entity);
+                }
+            }
+        }
+    }
+    
+    private boolean isPostgres() {
+        if (postgres == null) {
+            Dialect dialect = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices()
+                .getDialect();
+            postgres = dialect instanceof PostgreSQLDialect;
+        }
+        return postgres;
+    }
+}
+
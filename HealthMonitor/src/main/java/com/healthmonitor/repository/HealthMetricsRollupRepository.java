@@ -0,0 +1,41 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.HealthMetricsRollup;
+import com.healthmonitor.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository interface for HealthMetricsRollup entity
+ */
+@Repository
+public interface HealthMetricsRollupRepository extends JpaRepository<HealthMetricsRollup, Long>,
+                                                       HealthMetricsRollupRepositoryCustom {
+    
+    /**
+     * Find a user's rollup for the period starting on a date
+     */
+    Optional<HealthMetricsRollup> findByUserAndPeriodAndPeriodStart(User user, HealthMetricsRollup.Period period,
+                                                                    LocalDate periodStart);
+    
+    /**
+     * Find the ids of all users that have daily metrics
+     */
+    @Query("SELECT DISTINCT m.user.id FROM HealthMetrics m ORDER BY m.user.id")
+    List<Long> findUserIdsWithMetrics();
+    
+    /**
+     * Delete all rollups of a user
+     */
+    @Modifying
+    @Query("DELETE FROM HealthMetricsRollup r WHERE r.user.id = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+}
+
@@ -0,0 +1,33 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.MetricsTotals;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Custom write operations for HealthMetricsRollup
+ */
+public interface HealthMetricsRollupRepositoryCustom {
+    
+    /**
+     * Add changes of a user's daily rows to the week and month rollups containing them,
+     * creating rollup rows that do not exist yet
+     * 
+     * @param userId User ID
+     * @param changesByDate Change of each daily row, keyed by date
+     */
+    void addToRollups(Long userId, Map<LocalDate, MetricsTotals> changesByDate);
+    
+    /**
+     * Recompute all of a user's rollups from the daily rows
+     * The user's rollup rows are locked until the transaction ends, so concurrent writes of
+     * the user wait for the rebuild before adding to them; writes that start a new period
+     * while it runs keep that period's rollups themselves.
+     * 
+     * @param userId User ID
+     * @return Number of daily rows read
+     */
+    int rebuildRollups(Long userId);
+}
+
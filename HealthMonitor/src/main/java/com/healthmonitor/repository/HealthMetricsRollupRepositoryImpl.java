@@ -0,0 +1,244 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.HealthMetricsRollup;
+import com.healthmonitor.model.MetricsTotals;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Atomic increments of HealthMetricsRollup rows
+ * Uses MERGE on H2 and INSERT ... ON CONFLICT on PostgreSQL, keyed by the
+ * (user_id, period, period_start) unique constraint. Rows are written one statement
+ * at a time in a fixed order, so two transactions touching the same periods cannot
+ * deadlock, and retrying a statement that hit a concurrent insert repeats only that one.
+ * Writers lock their daily rows before the rollups, so a rebuild that locks the rollup
+ * rows first and then reads the daily rows counts every concurrent change exactly once.
+ */
+public class HealthMetricsRollupRepositoryImpl implements HealthMetricsRollupRepositoryCustom {
+    
+    private static final int MAX_ATTEMPTS = 3;
+    
+    private static final String INSERT_COLUMNS =
+        "(id, user_id, period, period_start, steps, calories_consumed, calories_burned, distance_km, " +
+        "active_minutes, created_at, updated_at)";
+    
+    private static final String ADD_VALUES =
+        "steps = t.steps + :steps, " +
+        "calories_consumed = t.calories_consumed + :caloriesConsumed, " +
+        "calories_burned = t.calories_burned + :caloriesBurned, " +
+        "distance_km = t.distance_km + :distanceKm, " +
+        "active_minutes = t.active_minutes + :activeMinutes, " +
+        "updated_at = :now";
+    
+    private static final String INSERT_VALUES =
+        ":steps, :caloriesConsumed, :caloriesBurned, :distanceKm, :activeMinutes, :now, :now";
+    
+    private static final String H2_ADD =
+        "MERGE INTO health_metrics_rollups t " +
+        "USING (SELECT CAST(:userId AS BIGINT) AS user_id, CAST(:period AS VARCHAR(10)) AS period, " +
+        "CAST(:periodStart AS DATE) AS period_start) s " +
+        "ON t.user_id = s.user_id AND t.period = s.period AND t.period_start = s.period_start " +
+        "WHEN MATCHED THEN UPDATE SET " + ADD_VALUES + " " +
+        "WHEN NOT MATCHED THEN INSERT " + INSERT_COLUMNS + " " +
+        "VALUES (NEXT VALUE FOR health_metrics_rollups_seq, s.user_id, s.period, s.period_start, " +
+        INSERT_VALUES + ")";
+    
+    private static final String POSTGRES_ADD =
+        "INSERT INTO health_metrics_rollups AS t " + INSERT_COLUMNS + " " +
+        "VALUES (nextval('health_metrics_rollups_seq'), :userId, :period, :periodStart, " + INSERT_VALUES + ") " +
+        "ON CONFLICT (user_id, period, period_start) DO UPDATE SET " + ADD_VALUES;
+    
+    private static final String SET_VALUES =
+        "UPDATE health_metrics_rollups SET steps = :steps, calories_consumed = :caloriesConsumed, " +
+        "calories_burned = :caloriesBurned, distance_km = :distanceKm, active_minutes = :activeMinutes, " +
+        "updated_at = :now WHERE user_id = :userId AND period = :period AND period_start = :periodStart";
+    
+    private static final String DELETE_ROLLUP =
+        "DELETE FROM health_metrics_rollups " +
+        "WHERE user_id = :userId AND period = :period AND period_start = :periodStart";
+    
+    private static final String SELECT_ROLLUP_PERIODS =
+        "SELECT period, period_start FROM health_metrics_rollups WHERE user_id = :userId";
+    
+    private static final String SELECT_DAILY_DATES =
+        "SELECT date FROM health_metrics WHERE user_id = :userId";
+    
+    private static final String SELECT_DAILY_ROWS =
+        "SELECT date, steps, calories_consumed, calories_burned, distance_km, active_minutes " +
+        "FROM health_metrics WHERE user_id = :userId";
+    
+    private static final Comparator<PeriodKey> PERIOD_ORDER = Comparator
+        .comparing((PeriodKey key) -> key.period)
+        .thenComparing(key -> key.start);
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    
+    private Boolean postgres;
+    
+    @Autowired
+    public HealthMetricsRollupRepositoryImpl(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+    
+    @Override
+    public void addToRollups(Long userId, Map<LocalDate, MetricsTotals> changesByDate) {
+        Map<PeriodKey, MetricsTotals> changesByPeriod = new TreeMap<>(PERIOD_ORDER);
+        changesByDate.forEach((date, change) -> {
+            if (change.isZero()) {
+                return;
+            }
+            for (HealthMetricsRollup.Period period : HealthMetricsRollup.Period.values()) {
+                changesByPeriod.merge(new PeriodKey(period, period.startOf(date)), change, MetricsTotals::plus);
+            }
+        });
+        if (changesByPeriod.isEmpty()) {
+            return;
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        String sql = isPostgres() ? POSTGRES_ADD : H2_ADD;
+        changesByPeriod.forEach((key, change) -> add(sql, periodParams(userId, key, change, now)));
+    }
+    
+    private void add(String sql, SqlParameterSource params) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                jdbcTemplate.update(sql, params);
+                return;
+            } catch (DuplicateKeyException e) {
+                // H2's MERGE is not atomic against a concurrent insert of the same key;
+                // the retry finds the committed row and takes the update branch
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+    
+    @Override
+    public int rebuildRollups(Long userId) {
+        entityManager.flush();
+        MapSqlParameterSource params = new MapSqlParameterSource("userId", userId);
+        
+        // Every period that has a rollup row or a daily row now
+        Set<PeriodKey> periods = new TreeSet<>(PERIOD_ORDER);
+        jdbcTemplate.query(SELECT_ROLLUP_PERIODS, params, rs -> {
+            periods.add(new PeriodKey(HealthMetricsRollup.Period.valueOf(rs.getString("period")),
+                                      rs.getObject("period_start", LocalDate.class)));
+        });
+        jdbcTemplate.query(SELECT_DAILY_DATES, params, rs -> {
+            LocalDate date = rs.getObject("date", LocalDate.class);
+            for (HealthMetricsRollup.Period period : HealthMetricsRollup.Period.values()) {
+                periods.add(new PeriodKey(period, period.startOf(date)));
+            }
+        });
+        
+        // Lock the rollup rows in the order writers do, creating missing ones. A write that
+        // changed a daily row before this either committed, and is read below, or waits here
+        // for its rollups and adds its change to the rebuilt totals once this commits.
+        LocalDateTime now = LocalDateTime.now();
+        String sql = isPostgres() ? POSTGRES_ADD : H2_ADD;
+        for (PeriodKey key : periods) {
+            add(sql, periodParams(userId, key, MetricsTotals.ZERO, now));
+        }
+        
+        Map<PeriodKey, MetricsTotals> totalsByPeriod = new TreeMap<>(PERIOD_ORDER);
+        int[] dailyRows = new int[1];
+        jdbcTemplate.query(SELECT_DAILY_ROWS, params, rs -> {
+            LocalDate date = rs.getObject("date", LocalDate.class);
+            MetricsTotals totals = new MetricsTotals(
+                rs.getLong("steps"),
+                rs.getDouble("calories_consumed"),
+                rs.getDouble("calories_burned"),
+                rs.getDouble("distance_km"),
+                rs.getLong("active_minutes"));
+            dailyRows[0]++;
+            for (HealthMetricsRollup.Period period : HealthMetricsRollup.Period.values()) {
+                totalsByPeriod.merge(new PeriodKey(period, period.startOf(date)), totals, MetricsTotals::plus);
+            }
+        });
+        
+        // Days of a period that was not locked were added after the periods were listed;
+        // their writes keep that period's rollup themselves
+        for (PeriodKey key : periods) {
+            MetricsTotals totals = totalsByPeriod.get(key);
+            if (totals == null) {
+                jdbcTemplate.update(DELETE_ROLLUP, periodParams(userId, key, MetricsTotals.ZERO, now));
+            } else {
+                jdbcTemplate.update(SET_VALUES, periodParams(userId, key, totals, now));
+            }
+        }
+        return dailyRows[0];
+    }
+    
+    private static MapSqlParameterSource periodParams(Long userId, PeriodKey key, MetricsTotals totals,
+                                                      LocalDateTime now) {
+        return new MapSqlParameterSource()
+            .addValue("userId", userId)
+            .addValue("period", key.period.name())
+            .addValue("periodStart", key.start)
+            .addValue("steps", totals.getSteps())
+            .addValue("caloriesConsumed", totals.getCaloriesConsumed())
+            .addValue("caloriesBurned", totals.getCaloriesBurned())
+            .addValue("distanceKm", totals.getDistanceKm())
+            .addValue("activeMinutes", totals.getActiveMinutes())
+            .addValue("now", now);
+    }
+    
+    private boolean isPostgres() {
+        if (postgres == null) {
+            postgres = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices()
+                .getDialect() instanceof PostgreSQLDialect;
+        }
+        return postgres;
+    }
+    
+    private static final class PeriodKey {
+        private final HealthMetricsRollup.Period period;
+        private final LocalDate start;
+        
+        private PeriodKey(HealthMetricsRollup.Period period, LocalDate start) {
+            this.period = period;
+            this.start = start;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PeriodKey)) {
+                return false;
+            }
+            PeriodKey other = (PeriodKey) o;
+            return period == other.period && start.equals(other.start);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(period, start);
+        }
+    }
+}
+
@@ -0,0 +1,413 @@
+package com.healthmonitor.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Append-only store for raw heart-rate samples, kept outside the database
+ * 
+ * Each user has one segment file per day (data-dir/user-{id}/{date}.hrs), memory-mapped
+ * at its full size. A segment is a 16-byte header followed by 3-byte records:
+ * 
+ * <pre>
+ * header: int magic, int record count, long epoch day
+ * record: u16 seconds since the previous record (the first since midnight), u8 bpm
+ * </pre>
+ * 
+ * A bpm of 0 marks a filler record for gaps longer than 65535 seconds. Records are
+ * written before the count that publishes them, so a process crash never exposes a torn
+ * record. With sync-on-append, each append forces only the new record range to disk and then
+ * the header, so the same holds after a power loss; without it the OS writes the pages back
+ * in any order, and an append is only durable once the segment is closed.
+ * Running totals for the daily average are rebuilt when a segment is opened and then
+ * updated with every append. A deleted user's directory is removed after the delete commits.
+ */
+@Repository
+public class HeartRateSampleStore {
+    
+    private static final Logger log = LoggerFactory.getLogger(HeartRateSampleStore.class);
+    
+    public static final int RECORD_BYTES = 3;
+    
+    private static final int MAGIC = 0x48525331;
+    private static final int HEADER_BYTES = 16;
+    private static final int COUNT_OFFSET = 4;
+    private static final int EPOCH_DAY_OFFSET = 8;
+    private static final int MAX_DELTA = 0xFFFF;
+    private static final int SECONDS_PER_DAY = 86_400;
+    
+    // One sample per second all day, plus at most one gap filler (86399 / 65535 < 2)
+    private static final int MAX_RECORDS = SECONDS_PER_DAY + 1;
+    private static final long SEGMENT_BYTES = HEADER_BYTES + (long) MAX_RECORDS * RECORD_BYTES;
+    
+    private final Path dataDir;
+    private final boolean syncOnAppend;
+    private final Cache<SegmentKey, Segment> openSegments;
+    
+    @Autowired
+    public HeartRateSampleStore(@Value("${healthmonitor.heart-rate.data-dir:data/heart-rate}") String dataDir,
+                                @Value("${healthmonitor.heart-rate.open-segments:1024}") long openSegments,
+                                @Value("${healthmonitor.heart-rate.sync-on-append:true}") boolean syncOnAppend) {
+        this.dataDir = Paths.get(dataDir);
+        this.syncOnAppend = syncOnAppend;
+        this.openSegments = Caffeine.newBuilder()
+            .maximumSize(openSegments)
+            // Runs inside the eviction, so no second mapping of the file can be opened meanwhile
+            .evictionListener((SegmentKey key, Segment segment, RemovalCause cause) -> {
+                if (segment != null) {
+                    segment.close();
+                }
+            })
+            .build();
+    }
+    
+    /**
+     * Append samples to a user's segment for one day
+     * Samples must be sorted by time; samples not later than the last stored one are skipped.
+     * 
+     * @param secondsOfDay Sample times as seconds since midnight
+     * @param bpm Heart rate per sample, 1-255
+     * @param length Number of samples to read from the arrays
+     * @return Number of samples written and the day's totals after the append
+     */
+    public AppendResult append(Long userId, LocalDate date, int[] secondsOfDay, int[] bpm, int length) {
+        while (true) {
+            Segment segment = openSegments.get(new SegmentKey(userId, date), key -> open(key, true));
+            synchronized (segment) {
+                if (segment.closed) {
+                    continue;
+                }
+                return segment.append(secondsOfDay, bpm, length, syncOnAppend);
+            }
+        }
+    }
+    
+    /**
+     * Read all samples of a user's day
+     * The records are a read-only view of the mapped file, not a copy.
+     */
+    public DaySamples readDay(Long userId, LocalDate date) {
+        while (true) {
+            Segment segment = openSegments.get(new SegmentKey(userId, date), key -> open(key, false));
+            if (segment == null) {
+                return new DaySamples(date, ByteBuffer.allocate(0), 0, 0);
+            }
+            synchronized (segment) {
+                if (segment.closed) {
+                    continue;
+                }
+                // Records below the published count never change, so the slice is safe to read without the lock
+                ByteBuffer records = segment.buffer.slice(HEADER_BYTES, segment.records * RECORD_BYTES)
+                    .asReadOnlyBuffer();
+                return new DaySamples(date, records, segment.bpmSum, segment.bpmSamples);
+            }
+        }
+    }
+    
+    /**
+     * Delete all of a user's segments once the current transaction commits, or at once outside a transaction
+     * Open segments are flushed and closed first; a file that cannot be deleted is logged and left behind.
+     */
+    public void deleteUser(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteSegments(userId);
+                }
+            });
+        } else {
+            deleteSegments(userId);
+        }
+    }
+    
+    /**
+     * Flush the open segments before the application context closes
+     * The files stay mapped until the garbage collector releases the buffers: DaySamples hand out
+     * views of the mappings, so there is no point at which unmapping them would be safe.
+     */
+    @PreDestroy
+    public void close() {
+        openSegments.asMap().values().forEach(Segment::close);
+        openSegments.invalidateAll();
+    }
+    
+    private void deleteSegments(Long userId) {
+        for (SegmentKey key : openSegments.asMap().keySet()) {
+            if (key.userId.equals(userId)) {
+                // Closing inside the removal keeps appends from reopening the segment meanwhile
+                openSegments.asMap().computeIfPresent(key, (k, segment) -> {
+                    segment.close();
+                    return null;
+                });
+            }
+        }
+        
+        Path userDir = userDir(userId);
+        if (!Files.exists(userDir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(userDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Cannot delete heart-rate data {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Cannot delete heart-rate data of user {}: {}", userId, e.getMessage());
+        }
+    }
+    
+    private Path userDir(Long userId) {
+        return dataDir.resolve("user-" + userId);
+    }
+    
+    private Segment open(SegmentKey key, boolean create) {
+        Path file = userDir(key.userId).resolve(key.date + ".hrs");
+        try {
+            if (!create && !Files.exists(file)) {
+                return null;
+            }
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+                return new Segment(buffer, key.date, file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open heart-rate segment " + file, e);
+        }
+    }
+    
+    /**
+     * Receives decoded samples
+     */
+    @FunctionalInterface
+    public interface SampleVisitor {
+        void visit(int secondOfDay, int bpm);
+    }
+    
+    /**
+     * Outcome of an append
+     */
+    public static final class AppendResult {
+        private final int written;
+        private final long bpmSum;
+        private final int bpmSamples;
+        
+        private AppendResult(int written, long bpmSum, int bpmSamples) {
+            this.written = written;
+            this.bpmSum = bpmSum;
+            this.bpmSamples = bpmSamples;
+        }
+        
+        public int getWritten() {
+            return written;
+        }
+        
+        /**
+         * Rounded average bpm of the whole day, or null if the day has no samples
+         */
+        public Integer getAverage() {
+            return bpmSamples > 0 ? (int) Math.round((double) bpmSum / bpmSamples) : null;
+        }
+    }
+    
+    /**
+     * Samples of one day as encoded records
+     */
+    public static final class DaySamples {
+        private final LocalDate date;
+        private final ByteBuffer records;
+        private final long bpmSum;
+        private final int bpmSamples;
+        
+        private DaySamples(LocalDate date, ByteBuffer records, long bpmSum, int bpmSamples) {
+            this.date = date;
+            this.records = records;
+            this.bpmSum = bpmSum;
+            this.bpmSamples = bpmSamples;
+        }
+        
+        public LocalDate getDate() {
+            return date;
+        }
+        
+        /**
+         * Encoded records (u16 delta seconds, u8 bpm), positioned at the first record
+         */
+        public ByteBuffer getRecords() {
+            return records.duplicate();
+        }
+        
+        public int getSampleCount() {
+            return bpmSamples;
+        }
+        
+        /**
+         * Rounded average bpm of the day, or null if the day has no samples
+         */
+        public Integer getAverage() {
+            return bpmSamples > 0 ? (int) Math.round((double) bpmSum / bpmSamples) : null;
+        }
+        
+        /**
+         * Decode the samples between two times of day, without allocating per sample
+         * 
+         * @param fromSecond First second of day to include
+         * @param toSecond Last second of day to include
+         */
+        public void forEach(int fromSecond, int toSecond, SampleVisitor visitor) {
+            int second = 0;
+            for (int position = 0; position < records.limit(); position += RECORD_BYTES) {
+                second += Short.toUnsignedInt(records.getShort(position));
+                if (second > toSecond) {
+                    return;
+                }
+                int bpm = Byte.toUnsignedInt(records.get(position + 2));
+                if (bpm != 0 && second >= fromSecond) {
+                    visitor.visit(second, bpm);
+                }
+            }
+        }
+    }
+    
+    /**
+     * An open, mapped segment file
+     * All fields are guarded by the segment's monitor.
+     */
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private int records;
+        private int lastSecond = -1;
+        private long bpmSum;
+        private int bpmSamples;
+        private boolean closed;
+        
+        private Segment(MappedByteBuffer buffer, LocalDate date, Path file) {
+            this.buffer = buffer;
+            int magic = buffer.getInt(0);
+            if (magic == 0) {
+                buffer.putLong(EPOCH_DAY_OFFSET, date.toEpochDay());
+                buffer.putInt(COUNT_OFFSET, 0);
+                buffer.putInt(0, MAGIC);
+                return;
+            }
+            if (magic != MAGIC || buffer.getLong(EPOCH_DAY_OFFSET) != date.toEpochDay()) {
+                throw new IllegalStateException("Not a heart-rate segment for " + date + ": " + file);
+            }
+            
+            records = buffer.getInt(COUNT_OFFSET);
+            int second = 0;
+            for (int i = 0; i < records; i++) {
+                int position = HEADER_BYTES + i * RECORD_BYTES;
+                second += Short.toUnsignedInt(buffer.getShort(position));
+                int bpm = Byte.toUnsignedInt(buffer.get(position + 2));
+                if (bpm != 0) {
+                    bpmSum += bpm;
+                    bpmSamples++;
+                    lastSecond = second;
+                }
+            }
+        }
+        
+        private AppendResult append(int[] secondsOfDay, int[] bpm, int length, boolean sync) {
+            int written = 0;
+            int start = HEADER_BYTES + records * RECORD_BYTES;
+            int position = start;
+            for (int i = 0; i < length; i++) {
+                int second = secondsOfDay[i];
+                if (second <= lastSecond || second >= SECONDS_PER_DAY || bpm[i] < 1 || bpm[i] > 255) {
+                    continue;
+                }
+                int delta = lastSecond < 0 ? second : second - lastSecond;
+                while (delta > MAX_DELTA) {
+                    buffer.putShort(position, (short) MAX_DELTA);
+                    buffer.put(position + 2, (byte) 0);
+                    position += RECORD_BYTES;
+                    records++;
+                    delta -= MAX_DELTA;
+                }
+                buffer.putShort(position, (short) delta);
+                buffer.put(position + 2, (byte) bpm[i]);
+                position += RECORD_BYTES;
+                records++;
+                lastSecond = second;
+                bpmSum += bpm[i];
+                bpmSamples++;
+                written++;
+            }
+            if (written > 0) {
+                if (sync) {
+                    // The records must be on disk before the count that publishes them
+                    buffer.force(start, position - start);
+                }
+                buffer.putInt(COUNT_OFFSET, records);
+                if (sync) {
+                    buffer.force(0, HEADER_BYTES);
+                }
+            }
+            return new AppendResult(written, bpmSum, bpmSamples);
+        }
+        
+        private void close() {
+            synchronized (this) {
+                closed = true;
+                buffer.force();
+            }
+        }
+    }
+    
+    private static final class SegmentKey {
+        private final Long userId;
+        private final LocalDate date;
+        
+        private SegmentKey(Long userId, LocalDate date) {
+            this.userId = userId;
+            this.date = date;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SegmentKey)) {
+                return false;
+            }
+            SegmentKey other = (SegmentKey) o;
+            return userId.equals(other.userId) && date.equals(other.date);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, date);
+        }
+    }
+}
+
@@ -0,0 +1,43 @@
+package com.healthmonitor.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Projection of HealthMetrics aggregated over a set of days
+ * Returned by the aggregate queries of HealthMetricsRepository; no entity is loaded.
+ */
+public interface MetricsAggregate {
+    
+    /**
+     * First day with metrics in the group
+     */
+    LocalDate getFirstDate();
+    
+    /**
+     * Number of days with metrics
+     */
+    long getDays();
+    
+    Long getSteps();
+    
+    Double getCaloriesConsumed();
+    
+    Double getCaloriesBurned();
+    
+    Double getDistanceKm();
+    
+    Long getActiveMinutes();
+    
+    Double getWaterIntakeLiters();
+    
+    /**
+     * Average over the days with sleep recorded, or null if there are none
+     */
+    Double getAverageSleepHours();
+    
+    /**
+     * Average over the days with a heart rate recorded, or null if there are none
+     */
+    Double getAverageHeartRate();
+}
+
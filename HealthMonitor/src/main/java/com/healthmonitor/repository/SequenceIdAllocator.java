@@ -0,0 +1,61 @@
+package com.healthmonitor.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands out entity ids from the pooled sequences for rows inserted with plain JDBC
+ * 
+ * Hibernate is configured with the pooled-lo optimizer: each sequence value V reserves
+ * the ids V to V + ALLOCATION_SIZE - 1 for whoever fetched it. This allocator uses the
+ * same rule, so JDBC batch inserts and entities saved through JPA never collide.
+ */
+@Component
+public class SequenceIdAllocator {
+    
+    /**
+     * Increment of the entity sequences (the JPA default allocation size)
+     */
+    public static final int ALLOCATION_SIZE = 50;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManagerFactory entityManagerFactory;
+    
+    @Autowired
+    public SequenceIdAllocator(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+    
+    /**
+     * Reserve ids from a sequence
+     * 
+     * @param sequenceName Sequence name, e.g. activities_seq
+     * @param count Number of ids needed
+     * @return Reserved ids in ascending order
+     */
+    public long[] allocate(String sequenceName, int count) {
+        String nextValueSql = nextValueSql(sequenceName);
+        long[] ids = new long[count];
+        int filled = 0;
+        while (filled < count) {
+            Long low = jdbcTemplate.queryForObject(nextValueSql, Long.class);
+            for (long id = Math.max(low, 1); id < low + ALLOCATION_SIZE && filled < count; id++) {
+                ids[filled++] = id;
+            }
+        }
+        return ids;
+    }
+    
+    private String nextValueSql(String sequenceName) {
+        return entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+            .getJdbcServices()
+            .getDialect()
+            .getSequenceSupport()
+            .getSequenceNextValString(sequenceName);
+    }
+}
+
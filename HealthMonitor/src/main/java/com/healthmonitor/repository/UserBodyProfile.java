@@ -0,0 +1,64 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.User;
+
+/**
+ * Projection of the body figures of a user, for population-wide BMR and TDEE calculations
+ * Returned by UserRepository.streamBodyProfiles; no entity is loaded.
+ */
+public final class UserBodyProfile {
+    
+    private final int birthYear;
+    private final User.Gender gender;
+    private final double heightCm;
+    private final double weightKg;
+    private final User.ActivityLevel activityLevel;
+    
+    public UserBodyProfile(Integer birthYear, User.Gender gender, Double heightCm, Double weightKg,
+                           User.ActivityLevel activityLevel) {
+        this.birthYear = birthYear;
+        this.gender = gender;
+        this.heightCm = heightCm;
+        this.weightKg = weightKg;
+        this.activityLevel = activityLevel;
+    }
+    
+    /**
+     * Profile of a loaded user
+     */
+    public static UserBodyProfile of(User user) {
+        return new UserBodyProfile(user.getDateOfBirth().getYear(), user.getGender(), user.getHeightCm(),
+                                   user.getWeightKg(), user.getActivityLevel());
+    }
+    
+    /**
+     * Age in years, counted the same way as User.calculateAge
+     */
+    public int getAge(int currentYear) {
+        return currentYear - birthYear;
+    }
+    
+    public int getBirthYear() {
+        return birthYear;
+    }
+    
+    public User.Gender getGender() {
+        return gender;
+    }
+    
+    public double getHeightCm() {
+        return heightCm;
+    }
+    
+    public double getWeightKg() {
+        return weightKg;
+    }
+    
+    /**
+     * Activity level, or null if the user has not set one
+     */
+    public User.ActivityLevel getActivityLevel() {
+        return activityLevel;
+    }
+}
+
@@ -1,10 +1,22 @@
 package com.healthmonitor.repository;
 
+import com.healthmonitor.dto.UserDTO;
 import com.healthmonitor.model.User;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 /**
  * Repository interface for User entity
@@ -13,6 +25,8 @@ import java.util.Optional;
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     
+    String STREAM_FETCH_SIZE = "1000";
+    
     /**
      * Find user by email
      * @param email Email address
@@ -26,5 +40,39 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * @return true if exists, false otherwise
      */
     boolean existsByEmail(String email);
+    
+    /**
+     * Read the first users into DTOs, ordered by id
+     */
+    @Query("SELECT new com.healthmonitor.dto.UserDTO(u.id, u.name, u.email, u.dateOfBirth, u.gender, " +
+           "u.heightCm, u.weightKg, u.activityLevel) FROM User u ORDER BY u.id")
+    List<UserDTO> findAllDTOs(Limit limit);
+    
+    /**
+     * Find the ids of all users, in ascending order
+     */
+    @Query("SELECT u.id FROM User u ORDER BY u.id")
+    List<Long> findAllIds();
+    
+    /**
+     * Stream the body figures of all users, in no particular order
+     * Rows are fetched from a cursor in batches; the stream must be consumed and closed in a transaction.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = STREAM_FETCH_SIZE))
+    @Query("SELECT new com.healthmonitor.repository.UserBodyProfile(YEAR(u.dateOfBirth), u.gender, " +
+           "u.heightCm, u.weightKg, u.activityLevel) FROM User u")
+    Stream<UserBodyProfile> streamBodyProfiles();
+    
+    /**
+     * Read the body figures of one user
+     */
+    @Query("SELECT new com.healthmonitor.repository.UserBodyProfile(YEAR(u.dateOfBirth), u.gender, " +
+           "u.heightCm, u.weightKg, u.activityLevel) FROM User u WHERE u.id = :userId")
+    Optional<UserBodyProfile> findBodyProfileById(@Param("userId") Long userId);
+    
+    /**
+     * Find a page of users ordered by id, after a keyset position on id
+     */
+    Window<User> findByOrderByIdAsc(ScrollPosition position, Limit limit);
 }
 
@@ -0,0 +1,315 @@
+package com.healthmonitor.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthmonitor.dto.ActivityDTO;
+import com.healthmonitor.dto.ActivityImportReportDTO;
+import com.healthmonitor.model.Activity;
+import com.healthmonitor.model.DailyMetricsDelta;
+import com.healthmonitor.model.User;
+import com.healthmonitor.repository.ActivityRepository;
+import com.healthmonitor.service.calculator.CalorieCalculator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Service for importing large activity histories
+ * 
+ * The input is read line by line and never held in memory as a whole. Records are
+ * inserted in chunks with JDBC batching. Each chunk's totals are added to the daily
+ * HealthMetrics rows, once per affected day, in the same transaction as its inserts,
+ * so a chunk is either imported and counted or not imported at all.
+ */
+@Service
+public class ActivityImportService {
+    
+    private static final Logger log = LoggerFactory.getLogger(ActivityImportService.class);
+    
+    private static final int MAX_ERRORS_PER_CHUNK = 100;
+    
+    public enum Format {
+        CSV, NDJSON
+    }
+    
+    private final ActivityRepository activityRepository;
+    private final CalorieCalculator calorieCalculator;
+    private final HealthMetricsService healthMetricsService;
+    private final ObjectMapper objectMapper;
+    private final OptimisticRetryExecutor retryExecutor;
+    private final int chunkSize;
+    
+    @Autowired
+    public ActivityImportService(ActivityRepository activityRepository,
+                                 CalorieCalculator calorieCalculator,
+                                 HealthMetricsService healthMetricsService,
+                                 ObjectMapper objectMapper,
+                                 OptimisticRetryExecutor retryExecutor,
+                                 @Value("${healthmonitor.import.chunk-size:1000}") int chunkSize) {
+        this.activityRepository = activityRepository;
+        this.calorieCalculator = calorieCalculator;
+        this.healthMetricsService = healthMetricsService;
+        this.objectMapper = objectMapper;
+        this.retryExecutor = retryExecutor;
+        this.chunkSize = chunkSize;
+    }
+    
+    /**
+     * Import activities for a user from a CSV or NDJSON stream
+     * 
+     * CSV input needs a header row with at least activityType, startTime and endTime
+     * (distanceKm and notes are optional). NDJSON input has one ActivityDTO object per line.
+     * 
+     * @param user Owner of the imported activities
+     * @param input Raw request body
+     * @param format Input format
+     * @return Totals plus a progress and error report per chunk
+     */
+    public ActivityImportReportDTO importActivities(User user, InputStream input, Format format)
+            throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        ActivityImportReportDTO report = new ActivityImportReportDTO(format.name());
+        Set<LocalDate> daysUpdated = new HashSet<>();
+        
+        long lineNumber = 0;
+        RecordParser parser;
+        if (format == Format.CSV) {
+            parser = new CsvRecordParser(reader.readLine());
+            lineNumber++;
+        } else {
+            parser = line -> objectMapper.readValue(line, ActivityDTO.class);
+        }
+        
+        List<Activity> pending = new ArrayList<>(chunkSize);
+        ActivityImportReportDTO.ChunkReport chunk = new ActivityImportReportDTO.ChunkReport(1, lineNumber + 1);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            
+            try {
+                pending.add(toActivity(user, parser.parse(line)));
+            } catch (JsonProcessingException e) {
+                recordError(chunk, lineNumber, "Malformed JSON: " + e.getOriginalMessage());
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                recordError(chunk, lineNumber, e.getMessage());
+            }
+            
+            if (pending.size() + chunk.getFailed() >= chunkSize) {
+                chunk.setLastLine(lineNumber);
+                writeChunk(user, pending, chunk, daysUpdated);
+                report.addChunk(chunk);
+                pending.clear();
+                chunk = new ActivityImportReportDTO.ChunkReport(chunk.getChunk() + 1, lineNumber + 1);
+            }
+        }
+        
+        if (!pending.isEmpty() || chunk.getFailed() > 0) {
+            chunk.setLastLine(lineNumber);
+            writeChunk(user, pending, chunk, daysUpdated);
+            report.addChunk(chunk);
+        }
+        
+        report.setDaysUpdated(daysUpdated.size());
+        
+        log.info("Imported {} of {} activities for user {} ({} days updated)",
+                 report.getImportedRecords(), report.getTotalRecords(), user.getId(), daysUpdated.size());
+        return report;
+    }
+    
+    private Activity toActivity(User user, ActivityDTO record) {
+        if (record.getActivityType() == null || record.getActivityType().isBlank()) {
+            throw new IllegalArgumentException("Activity type is required");
+        }
+        if (record.getStartTime() == null) {
+            throw new IllegalArgumentException("Start time is required");
+        }
+        if (record.getEndTime() == null) {
+            throw new IllegalArgumentException("End time is required");
+        }
+        if (record.getEndTime().isBefore(record.getStartTime())) {
+            throw new IllegalArgumentException("End time must not be before start time");
+        }
+        if (record.getDistanceKm() != null && record.getDistanceKm() < 0) {
+            throw new IllegalArgumentException("Distance cannot be negative");
+        }
+        
+        Activity activity = new Activity(user, record.getActivityType(),
+                                         record.getStartTime(), record.getEndTime());
+        activity.setDistanceKm(record.getDistanceKm());
+        activity.setNotes(record.getNotes());
+        return activity;
+    }
+    
+    /**
+     * Set calories burned for a chunk of activities with one batch calculation
+     */
+    private void calculateCalories(List<Activity> activities) {
+        int count = activities.size();
+        int[] metIds = new int[count];
+        double[] durationMinutes = new double[count];
+        double[] weightKg = new double[count];
+        double[] caloriesBurned = new double[count];
+        for (int i = 0; i < count; i++) {
+            Activity activity = activities.get(i);
+            metIds[i] = calorieCalculator.resolveMETId(activity.getActivityType());
+            durationMinutes[i] = activity.getDurationMinutes();
+            weightKg[i] = activity.getUser().getWeightKg();
+        }
+        
+        calorieCalculator.calculateCaloriesBurned(metIds, durationMinutes, weightKg, caloriesBurned, count);
+        for (int i = 0; i < count; i++) {
+            activities.get(i).setCaloriesBurned(caloriesBurned[i]);
+        }
+    }
+    
+    /**
+     * Insert a chunk and add its totals to the daily metrics in one transaction
+     * The transaction is repeated if the daily rows conflict with a concurrent write;
+     * batchInsert allocates new ids on every attempt.
+     */
+    private void writeChunk(User user, List<Activity> activities, ActivityImportReportDTO.ChunkReport chunk,
+                            Set<LocalDate> daysUpdated) {
+        if (!activities.isEmpty()) {
+            calculateCalories(activities);
+            // Roll up once per affected day instead of once per imported activity
+            Map<LocalDate, DailyMetricsDelta> rollups = new TreeMap<>();
+            for (Activity activity : activities) {
+                rollups.merge(activity.getStartTime().toLocalDate(),
+                              DailyMetricsDelta.ofActivity(activity), DailyMetricsDelta::plus);
+            }
+            try {
+                retryExecutor.run("importActivities", user.getId(), rollups.keySet(), () -> {
+                    activityRepository.batchInsert(activities);
+                    healthMetricsService.addDailyTotals(user.getId(), rollups);
+                });
+                chunk.setImported(activities.size());
+                daysUpdated.addAll(rollups.keySet());
+            } catch (DataAccessException e) {
+                chunk.setFailed(chunk.getFailed() + activities.size());
+                chunk.getErrors().add(new ActivityImportReportDTO.RecordError(
+                    chunk.getFirstLine(), "Chunk rejected by database: " + e.getMostSpecificCause().getMessage()));
+            }
+        }
+        log.debug("Import chunk {} (lines {}-{}): {} imported, {} failed",
+                  chunk.getChunk(), chunk.getFirstLine(), chunk.getLastLine(),
+                  chunk.getImported(), chunk.getFailed());
+    }
+    
+    private void recordError(ActivityImportReportDTO.ChunkReport chunk, long lineNumber, String message) {
+        chunk.setFailed(chunk.getFailed() + 1);
+        if (chunk.getErrors().size() < MAX_ERRORS_PER_CHUNK) {
+            chunk.getErrors().add(new ActivityImportReportDTO.RecordError(lineNumber, message));
+        }
+    }
+    
+    /**
+     * Parses one input line into an activity record
+     */
+    private interface RecordParser {
+        ActivityDTO parse(String line) throws JsonProcessingException;
+    }
+    
+    /**
+     * Parses CSV lines using the column order from the header row
+     * Fields may be quoted with double quotes; a doubled quote inside a quoted field is a literal quote.
+     */
+    private static final class CsvRecordParser implements RecordParser {
+        
+        private final Map<String, Integer> columns = new HashMap<>();
+        
+        private CsvRecordParser(String header) {
+            if (header == null) {
+                throw new IllegalArgumentException("CSV input is empty");
+            }
+            List<String> names = split(header);
+            for (int i = 0; i < names.size(); i++) {
+                columns.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+            for (String required : List.of("activitytype", "starttime", "endtime")) {
+                if (!columns.containsKey(required)) {
+                    throw new IllegalArgumentException("CSV header is missing column: " + required);
+                }
+            }
+        }
+        
+        @Override
+        public ActivityDTO parse(String line) {
+            List<String> fields = split(line);
+            ActivityDTO record = new ActivityDTO();
+            record.setActivityType(field(fields, "activitytype"));
+            String startTime = field(fields, "starttime");
+            String endTime = field(fields, "endtime");
+            String distanceKm = field(fields, "distancekm");
+            record.setStartTime(startTime != null ? LocalDateTime.parse(startTime) : null);
+            record.setEndTime(endTime != null ? LocalDateTime.parse(endTime) : null);
+            try {
+                record.setDistanceKm(distanceKm != null ? Double.valueOf(distanceKm) : null);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid distanceKm: " + distanceKm);
+            }
+            record.setNotes(field(fields, "notes"));
+            return record;
+        }
+        
+        private String field(List<String> fields, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= fields.size()) {
+                return null;
+            }
+            String value = fields.get(index).trim();
+            return value.isEmpty() ? null : value;
+        }
+        
+        private static List<String> split(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        current.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(current.toString());
+                    current.setLength(0);
+                } else {
+                    current.append(c);
+                }
+            }
+            fields.add(current.toString());
+            return fields;
+        }
+    }
+}
+
@@ -0,0 +1,285 @@
+package com.healthmonitor.service;
+
+import com.healthmonitor.model.DailyMetricsDelta;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies activity rollup deltas to HealthMetrics off the request thread
+ * Used by ActivityService when asynchronous rollups are enabled
+ * 
+ * Deltas are queued per (userId, date) once the submitting transaction commits,
+ * and deltas for the same day are merged so a burst of activities costs one upsert.
+ * Users are spread over a fixed number of stripes; each stripe is drained by at most
+ * one task at a time on a worker pool of the same size.
+ * 
+ * When a write fails, its deltas are put back and the stripe is drained again after an
+ * exponentially growing delay, until a drain succeeds. On shutdown the retries still waiting
+ * out their delay are cancelled and everything pending is written on the closing thread.
+ */
+@Component
+public class ActivityRollupPipeline {
+    
+    private static final Logger log = LoggerFactory.getLogger(ActivityRollupPipeline.class);
+    
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+    
+    private final HealthMetricsService healthMetricsService;
+    private final Stripe[] stripes;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService retryScheduler;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final Object quiescenceMonitor = new Object();
+    private volatile boolean closing;
+    
+    @Autowired
+    public ActivityRollupPipeline(HealthMetricsService healthMetricsService,
+                                  @Value("${healthmonitor.rollup.async.workers:2}") int workers,
+                                  @Value("${healthmonitor.rollup.async.retry.initial-backoff-ms:100}")
+                                  long initialBackoffMs,
+                                  @Value("${healthmonitor.rollup.async.retry.max-backoff-ms:30000}")
+                                  long maxBackoffMs) {
+        this.healthMetricsService = healthMetricsService;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.stripes = new Stripe[workers];
+        for (int i = 0; i < workers; i++) {
+            stripes[i] = new Stripe();
+        }
+        
+        // At most one drain task per stripe is ever queued or running, so the queue stays bounded
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(workers),
+            task -> {
+                Thread thread = new Thread(task, "rollup-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "rollup-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Queue deltas for a user's daily totals
+     * Inside a transaction the deltas are queued after it commits and dropped if it rolls back.
+     * 
+     * @param userId User ID
+     * @param deltasByDate Amounts to add, keyed by date
+     */
+    public void submit(Long userId, Map<LocalDate, DailyMetricsDelta> deltasByDate) {
+        if (deltasByDate.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Map<LocalDate, DailyMetricsDelta> deltas = new TreeMap<>(deltasByDate);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(userId, deltas);
+                }
+            });
+        } else {
+            enqueue(userId, deltasByDate);
+        }
+    }
+    
+    /**
+     * Wait until every queued delta has been written
+     * 
+     * @param timeout Maximum time to wait
+     * @return true if nothing is pending, false if the timeout elapsed first
+     */
+    public boolean awaitQuiescence(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (quiescenceMonitor) {
+            while (!isQuiescent()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(quiescenceMonitor, remaining);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Check whether all queued deltas have been written
+     */
+    public boolean isQuiescent() {
+        for (Stripe stripe : stripes) {
+            if (stripe.scheduled.get() || !stripe.pending.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Write what is left before the application context closes
+     * Running drains finish on the workers; deltas waiting for a retry are written here,
+     * without a backoff, as are any that arrive until the last stripe is done.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        closing = true;
+        retryScheduler.shutdownNow();
+        executor.shutdown();
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("Activity rollup workers did not finish within {}", SHUTDOWN_TIMEOUT);
+        }
+        
+        int lost = 0;
+        for (Stripe stripe : stripes) {
+            writePending(stripe);
+            lost += stripe.pending.size();
+        }
+        if (lost > 0) {
+            log.error("{} pending activity rollups could not be written before shutdown", lost);
+        }
+    }
+    
+    private void enqueue(Long userId, Map<LocalDate, DailyMetricsDelta> deltasByDate) {
+        Stripe stripe = stripes[Math.floorMod(userId.hashCode(), stripes.length)];
+        deltasByDate.forEach((date, delta) ->
+            stripe.pending.merge(new DailyKey(userId, date), delta, DailyMetricsDelta::plus));
+        scheduleDrain(stripe);
+    }
+    
+    private void scheduleDrain(Stripe stripe) {
+        // Once closing, shutdown writes the pending deltas itself
+        if (!closing && !stripe.pending.isEmpty() && stripe.scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> drain(stripe));
+            } catch (RejectedExecutionException e) {
+                // Shutdown started meanwhile
+                stripe.scheduled.set(false);
+            }
+        }
+    }
+    
+    private void drain(Stripe stripe) {
+        boolean failed = true;
+        try {
+            failed = !writePending(stripe);
+        } finally {
+            if (failed && !closing) {
+                // The stripe stays scheduled until the retry, so new deltas wait for it as well
+                stripe.failures++;
+                long delay = Math.min(maxBackoffMs, initialBackoffMs << Math.min(stripe.failures - 1, 20));
+                try {
+                    retryScheduler.schedule(() -> executor.execute(() -> drain(stripe)), delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // Shutdown started meanwhile
+                    stripe.scheduled.set(false);
+                }
+            } else {
+                // A drain that fails while closing leaves its deltas to shutdown
+                stripe.failures = 0;
+                stripe.scheduled.set(false);
+                // Pick up deltas that arrived while this drain was running
+                scheduleDrain(stripe);
+            }
+            synchronized (quiescenceMonitor) {
+                quiescenceMonitor.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Write a stripe's pending deltas, one transaction per user
+     * 
+     * @return true if every write succeeded; deltas of failed writes are put back
+     */
+    private boolean writePending(Stripe stripe) {
+        // Remove each entry before writing it; deltas merged in meanwhile start a new entry
+        Map<Long, Map<LocalDate, DailyMetricsDelta>> byUser = new TreeMap<>();
+        for (DailyKey key : new ArrayList<>(stripe.pending.keySet())) {
+            DailyMetricsDelta delta = stripe.pending.remove(key);
+            if (delta != null && !delta.isZero()) {
+                byUser.computeIfAbsent(key.userId, id -> new TreeMap<>()).put(key.date, delta);
+            }
+        }
+        
+        boolean succeeded = true;
+        for (Map.Entry<Long, Map<LocalDate, DailyMetricsDelta>> entry : byUser.entrySet()) {
+            Long userId = entry.getKey();
+            try {
+                healthMetricsService.addDailyTotals(userId, entry.getValue());
+            } catch (RuntimeException e) {
+                // Put the deltas back so the next drain retries them
+                log.warn("Failed to apply activity rollups for user {}: {}", userId, e.getMessage());
+                entry.getValue().forEach((date, delta) ->
+                    stripe.pending.merge(new DailyKey(userId, date), delta, DailyMetricsDelta::plus));
+                succeeded = false;
+            }
+        }
+        return succeeded;
+    }
+    
+    /**
+     * Pending deltas of the users mapped to one worker
+     */
+    private static final class Stripe {
+        private final ConcurrentHashMap<DailyKey, DailyMetricsDelta> pending = new ConcurrentHashMap<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // Consecutive failed drains; only used by the stripe's current drain
+        private int failures;
+    }
+    
+    private static final class DailyKey {
+        private final Long userId;
+        private final LocalDate date;
+        
+        private DailyKey(Long userId, LocalDate date) {
+            this.userId = userId;
+            this.date = date;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DailyKey)) {
+                return false;
+            }
+            DailyKey other = (DailyKey) o;
+            return userId.equals(other.userId) && date.equals(other.date);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, date);
+        }
+    }
+}
+
@@ -1,37 +1,59 @@
 package com.healthmonitor.service;
 
+import com.healthmonitor.dto.ActivityDTO;
 import com.healthmonitor.model.Activity;
+import com.healthmonitor.model.DailyMetricsDelta;
 import com.healthmonitor.model.User;
 import com.healthmonitor.repository.ActivityRepository;
 import com.healthmonitor.service.calculator.CalorieCalculator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Service class for managing activities
  * Demonstrates service layer pattern and business logic encapsulation
+ * 
+ * Every change to an activity marks the owner changed once it commits, which invalidates
+ * cached activity and metrics reads (see UserChangeTracker).
  */
 @Service
 @Transactional
 public class ActivityService {
     
     private final ActivityRepository activityRepository;
+    private final UserChangeTracker changeTracker;
     private final CalorieCalculator calorieCalculator;
     private final HealthMetricsService healthMetricsService;
+    private final ActivityRollupPipeline rollupPipeline;
+    private final boolean asyncRollups;
     
     @Autowired
     public ActivityService(ActivityRepository activityRepository,
+                          UserChangeTracker changeTracker,
                           CalorieCalculator calorieCalculator,
-                          HealthMetricsService healthMetricsService) {
+                          HealthMetricsService healthMetricsService,
+                          ActivityRollupPipeline rollupPipeline,
+                          @Value("${healthmonitor.rollup.async.enabled:false}") boolean asyncRollups) {
         this.activityRepository = activityRepository;
+        this.changeTracker = changeTracker;
         this.calorieCalculator = calorieCalculator;
         this.healthMetricsService = healthMetricsService;
+        this.rollupPipeline = rollupPipeline;
+        this.asyncRollups = asyncRollups;
     }
     
     /**
@@ -55,6 +77,7 @@ public class ActivityService {
         activity.setCaloriesBurned(caloriesBurned);
         
         // Save activity
+        changeTracker.markChanged(user.getId());
         Activity savedActivity = activityRepository.save(activity);
         
         // Update health metrics for the activity date
@@ -73,32 +96,88 @@ public class ActivityService {
     }
     
     /**
-     * Get all activities for a user
+     * Get a user's latest KeysetCursor.MAX_PAGE_SIZE activities, newest first
+     * Continue with getActivitiesPage from the cursor of the last one.
      */
     @Transactional(readOnly = true)
-    public List<Activity> getActivitiesByUser(User user) {
-        return activityRepository.findByUserOrderByStartTimeDesc(user);
+    public Window<ActivityDTO> getActivitiesByUser(User user) {
+        List<ActivityDTO> activities = activityRepository.findDTOsByUser(user, Limit.of(KeysetCursor.MAX_PAGE_SIZE + 1));
+        return KeysetCursor.firstPage(activities, activity -> Map.of("user.id", user.getId(),
+                                                                     "startTime", activity.getStartTime(),
+                                                                     "id", activity.getId()));
+    }
+    
+    /**
+     * Get a page of a user's activities, newest first
+     * 
+     * @param cursor Cursor from the previous page, or null for the first page
+     * @param size Requested page size, capped at KeysetCursor.MAX_PAGE_SIZE
+     */
+    @Transactional(readOnly = true)
+    public Window<Activity> getActivitiesPage(User user, String cursor, int size) {
+        ScrollPosition position = ScrollPosition.keyset();
+        if (cursor != null) {
+            String[] keys = KeysetCursor.decode(cursor, 2);
+            try {
+                position = ScrollPosition.forward(Map.of("user.id", user.getId(),
+                                                         "startTime", LocalDateTime.parse(keys[0]),
+                                                         "id", Long.valueOf(keys[1])));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+        return activityRepository.findByUserOrderByUserIdDescStartTimeDescIdDesc(
+            user, position, Limit.of(KeysetCursor.pageSize(size)));
+    }
+    
+    /**
+     * Cursor for the page after the given one, or null if it is the last page
+     */
+    public String nextCursor(Window<Activity> page) {
+        if (!page.hasNext() || page.isEmpty()) {
+            return null;
+        }
+        Activity last = page.getContent().get(page.size() - 1);
+        return KeysetCursor.encode(last.getStartTime(), last.getId());
     }
     
     /**
      * Get activities for a user within a date range
      */
     @Transactional(readOnly = true)
-    public List<Activity> getActivitiesByUserAndDateRange(User user, 
-                                                           LocalDate startDate, 
-                                                           LocalDate endDate) {
+    public List<ActivityDTO> getActivitiesByUserAndDateRange(User user, 
+                                                              LocalDate startDate, 
+                                                              LocalDate endDate) {
         LocalDateTime startDateTime = startDate.atStartOfDay();
         LocalDateTime endDateTime = endDate.atTime(23, 59, 59);
-        return activityRepository.findByUserAndStartTimeBetween(user, startDateTime, endDateTime);
+        return activityRepository.findDTOsByUserAndStartTimeBetween(user, startDateTime, endDateTime);
     }
     
     /**
-     * Update activity
+     * Pass a user's activities within a date range to an action one at a time, in start time order
+     * The rows are read from a database cursor, so memory use does not grow with the range.
+     */
+    @Transactional(readOnly = true)
+    public void forEachActivityInDateRange(User user, LocalDate startDate, LocalDate endDate,
+                                           Consumer<? super ActivityDTO> action) {
+        try (Stream<ActivityDTO> activities = activityRepository.streamDTOsByUserAndStartTimeBetween(
+                user, startDate.atStartOfDay(), endDate.atTime(23, 59, 59))) {
+            activities.forEach(action);
+        }
+    }
+    
+    /**
+     * Update activity and move its contribution to the daily health metrics
+     * The activity row stays locked until commit, so the contribution taken out is the stored one.
      */
     public Activity updateActivity(Long id, Activity updatedActivity) {
-        Activity existingActivity = activityRepository.findById(id)
+        Activity existingActivity = activityRepository.findByIdForUpdate(id)
             .orElseThrow(() -> new IllegalArgumentException("Activity not found with id: " + id));
         
+        changeTracker.markChanged(existingActivity.getUser().getId());
+        LocalDate previousDate = existingActivity.getStartTime().toLocalDate();
+        DailyMetricsDelta previousContribution = DailyMetricsDelta.ofActivity(existingActivity);
+        
         existingActivity.setActivityType(updatedActivity.getActivityType());
         existingActivity.setStartTime(updatedActivity.getStartTime());
         existingActivity.setEndTime(updatedActivity.getEndTime());
@@ -119,54 +198,54 @@ public class ActivityService {
             existingActivity.setNotes(updatedActivity.getNotes());
         }
         
-        return activityRepository.save(existingActivity);
+        Activity savedActivity = activityRepository.save(existingActivity);
+        
+        // Take the old contribution out and put the new one in, possibly on another day
+        Map<LocalDate, DailyMetricsDelta> deltasByDate = new TreeMap<>();
+        deltasByDate.put(previousDate, previousContribution.negate());
+        deltasByDate.merge(savedActivity.getStartTime().toLocalDate(),
+                           DailyMetricsDelta.ofActivity(savedActivity), DailyMetricsDelta::plus);
+        deltasByDate.values().removeIf(DailyMetricsDelta::isZero);
+        applyRollups(savedActivity.getUser().getId(), deltasByDate);
+        
+        return savedActivity;
     }
     
     /**
-     * Delete activity
+     * Delete activity and remove its contribution from the daily health metrics
+     * The activity row stays locked until commit, so the contribution taken out is the stored one.
      */
     public void deleteActivity(Long id) {
-        if (!activityRepository.existsById(id)) {
-            throw new IllegalArgumentException("Activity not found with id: " + id);
-        }
-        activityRepository.deleteById(id);
+        Activity activity = activityRepository.findByIdForUpdate(id)
+            .orElseThrow(() -> new IllegalArgumentException("Activity not found with id: " + id));
+        
+        changeTracker.markChanged(activity.getUser().getId());
+        applyRollups(
+            activity.getUser().getId(),
+            Map.of(activity.getStartTime().toLocalDate(), DailyMetricsDelta.ofActivity(activity).negate()));
+        activityRepository.delete(activity);
     }
     
     /**
      * Update health metrics based on activity
      */
     private void updateHealthMetricsFromActivity(User user, LocalDate date, Activity activity) {
-        Optional<com.healthmonitor.model.HealthMetrics> metricsOpt = 
-            healthMetricsService.getMetricsByUserAndDate(user, date);
-        
-        com.healthmonitor.model.HealthMetrics metrics;
-        if (metricsOpt.isPresent()) {
-            metrics = metricsOpt.get();
-            // Add to existing values
-            metrics.setCaloriesBurned(
-                (metrics.getCaloriesBurned() != null ? metrics.getCaloriesBurned() : 0.0) +
-                (activity.getCaloriesBurned() != null ? activity.getCaloriesBurned() : 0.0)
-            );
-            metrics.setActiveMinutes(
-                (metrics.getActiveMinutes() != null ? metrics.getActiveMinutes() : 0) +
-                activity.getDurationMinutes().intValue()
-            );
-            if (activity.getDistanceKm() != null) {
-                metrics.setDistanceKm(
-                    (metrics.getDistanceKm() != null ? metrics.getDistanceKm() : 0.0) +
-                    activity.getDistanceKm()
-                );
-            }
+        applyRollups(user.getId(), Map.of(date, DailyMetricsDelta.ofActivity(activity)));
+    }
+    
+    /**
+     * Add deltas to the daily health metrics, either right away in the current transaction
+     * or through the rollup pipeline after it commits
+     */
+    private void applyRollups(Long userId, Map<LocalDate, DailyMetricsDelta> deltasByDate) {
+        if (deltasByDate.isEmpty()) {
+            return;
+        }
+        if (asyncRollups) {
+            rollupPipeline.submit(userId, deltasByDate);
         } else {
-            metrics = new com.healthmonitor.model.HealthMetrics(user, date);
-            metrics.setCaloriesBurned(activity.getCaloriesBurned() != null ? 
-                                     activity.getCaloriesBurned() : 0.0);
-            metrics.setActiveMinutes(activity.getDurationMinutes().intValue());
-            metrics.setDistanceKm(activity.getDistanceKm() != null ? 
-                                 activity.getDistanceKm() : 0.0);
+            healthMetricsService.addDailyTotals(userId, deltasByDate);
         }
-        
-        healthMetricsService.saveOrUpdateMetrics(user, date, metrics);
     }
 }
 
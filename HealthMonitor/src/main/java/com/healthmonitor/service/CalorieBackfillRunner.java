@@ -0,0 +1,61 @@
+package com.healthmonitor.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Starts calorie recomputes at startup
+ * 
+ * Recomputes that were interrupted by the last shutdown always resume. Starting the
+ * application with --recompute-calories (all users) or --recompute-calories=1,2,3
+ * (selected users) also recomputes every activity at the users' current weights.
+ * The jobs run in the background while the application serves requests.
+ */
+@Component
+public class CalorieBackfillRunner implements ApplicationRunner {
+    
+    public static final String OPTION = "recompute-calories";
+    
+    private static final Logger log = LoggerFactory.getLogger(CalorieBackfillRunner.class);
+    
+    private final CalorieBackfillService calorieBackfillService;
+    
+    @Autowired
+    public CalorieBackfillRunner(CalorieBackfillService calorieBackfillService) {
+        this.calorieBackfillService = calorieBackfillService;
+    }
+    
+    @Override
+    public void run(ApplicationArguments args) {
+        int resumed = calorieBackfillService.resumeInterrupted();
+        if (resumed > 0) {
+            log.info("Resuming interrupted calorie recomputes for {} users", resumed);
+        }
+        
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+        
+        List<Long> userIds = args.getOptionValues(OPTION).stream()
+            .flatMap(value -> Arrays.stream(value.split(",")))
+            .map(String::trim)
+            .filter(value -> !value.isEmpty())
+            .map(Long::valueOf)
+            .collect(Collectors.toList());
+        if (userIds.isEmpty()) {
+            log.info("Recomputing activity calories for {} users", calorieBackfillService.recomputeAll());
+        } else {
+            userIds.forEach(calorieBackfillService::recompute);
+            log.info("Recomputing activity calories for users {}", userIds);
+        }
+    }
+}
+
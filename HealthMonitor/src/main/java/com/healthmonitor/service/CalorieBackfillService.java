@@ -0,0 +1,424 @@
+package com.healthmonitor.service;
+
+import com.healthmonitor.model.CalorieBackfillCheckpoint;
+import com.healthmonitor.model.DailyMetricsDelta;
+import com.healthmonitor.model.User;
+import com.healthmonitor.repository.ActivityCalorieRows;
+import com.healthmonitor.repository.ActivityRepository;
+import com.healthmonitor.repository.CalorieBackfillCheckpointRepository;
+import com.healthmonitor.repository.UserRepository;
+import com.healthmonitor.service.calculator.CalorieCalculator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recomputes the calories burned of stored activities for a user's current weight
+ * 
+ * Activity calories are computed once, at the weight the user had when the activity was
+ * saved. When the weight changes, a job for that user splits the activities into chunks of
+ * consecutive ids and recomputes them on a fork-join pool. Each chunk runs in its own
+ * transaction: it reads the rows with JDBC, computes calories with the batch calculator,
+ * writes changed values in JDBC batches (skipping rows edited meanwhile) and adds the
+ * differences to the daily totals.
+ * 
+ * A checkpoint row per user records the highest id below which every chunk is done, so a
+ * job interrupted by a shutdown or crash resumes from there on the next start. Chunks
+ * past the checkpoint that were done before the interruption are recomputed as no-ops.
+ * A weight change while a job runs makes it start over once its current chunks are done.
+ * 
+ * Progress and throughput are exported as healthmonitor.calories.backfill.activities
+ * (tagged result=updated or unchanged), .chunks (timer), .remaining, .jobs and .failures.
+ */
+@Service
+public class CalorieBackfillService {
+    
+    private static final Logger log = LoggerFactory.getLogger(CalorieBackfillService.class);
+    
+    private final ActivityRepository activityRepository;
+    private final UserRepository userRepository;
+    private final CalorieBackfillCheckpointRepository checkpointRepository;
+    private final HealthMetricsService healthMetricsService;
+    private final CalorieCalculator calorieCalculator;
+    private final OptimisticRetryExecutor retryExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+    private final ConcurrentHashMap<Long, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong remaining = new AtomicLong();
+    
+    private final Counter updatedActivities;
+    private final Counter unchangedActivities;
+    private final Counter failures;
+    private final Timer chunkTimer;
+    
+    @Autowired
+    public CalorieBackfillService(ActivityRepository activityRepository,
+                                  UserRepository userRepository,
+                                  CalorieBackfillCheckpointRepository checkpointRepository,
+                                  HealthMetricsService healthMetricsService,
+                                  CalorieCalculator calorieCalculator,
+                                  OptimisticRetryExecutor retryExecutor,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${healthmonitor.calories.backfill.parallelism:4}") int parallelism,
+                                  @Value("${healthmonitor.calories.backfill.chunk-size:500}") int chunkSize) {
+        this.activityRepository = activityRepository;
+        this.userRepository = userRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.healthMetricsService = healthMetricsService;
+        this.calorieCalculator = calorieCalculator;
+        this.retryExecutor = retryExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+        
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("calorie-backfill-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        
+        this.updatedActivities = Counter.builder("healthmonitor.calories.backfill.activities")
+            .tag("result", "updated")
+            .register(meterRegistry);
+        this.unchangedActivities = Counter.builder("healthmonitor.calories.backfill.activities")
+            .tag("result", "unchanged")
+            .register(meterRegistry);
+        this.failures = Counter.builder("healthmonitor.calories.backfill.failures")
+            .register(meterRegistry);
+        this.chunkTimer = Timer.builder("healthmonitor.calories.backfill.chunks")
+            .register(meterRegistry);
+        Gauge.builder("healthmonitor.calories.backfill.remaining", remaining, AtomicLong::get)
+            .register(meterRegistry);
+        Gauge.builder("healthmonitor.calories.backfill.jobs", jobs, Map::size)
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Recompute a user's activity calories in the background
+     * Inside a transaction the job starts after it commits and is dropped if it rolls back.
+     */
+    public void recompute(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    start(userId);
+                }
+            });
+        } else {
+            start(userId);
+        }
+    }
+    
+    /**
+     * Resume the recomputes that were interrupted before they finished
+     * 
+     * @return Number of resumed jobs
+     */
+    public int resumeInterrupted() {
+        List<Long> userIds = checkpointRepository.findUserIds();
+        userIds.forEach(this::start);
+        return userIds.size();
+    }
+    
+    /**
+     * Recompute the activity calories of every user in the background
+     * 
+     * @return Number of started jobs
+     */
+    public int recomputeAll() {
+        List<Long> userIds = userRepository.findAllIds();
+        userIds.forEach(this::start);
+        return userIds.size();
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        // Chunks in flight roll back; the checkpoints let the jobs resume on the next start
+        pool.shutdownNow();
+    }
+    
+    private void start(Long userId) {
+        while (true) {
+            Job created = new Job(userId);
+            Job running = jobs.putIfAbsent(userId, created);
+            if (running == null) {
+                pool.execute(() -> run(created));
+                return;
+            }
+            if (running.requestRestart()) {
+                return;
+            }
+            // The running job is just finishing; replace it
+            jobs.remove(userId, running);
+        }
+    }
+    
+    private void run(Job job) {
+        try {
+            do {
+                try {
+                    recomputeUser(job);
+                } catch (RuntimeException e) {
+                    failures.increment();
+                    log.error("Calorie recompute for user {} failed; it resumes from its checkpoint on the next start",
+                              job.userId, e);
+                }
+            } while (!job.finishOrRestart());
+        } finally {
+            jobs.remove(job.userId, job);
+        }
+    }
+    
+    private void recomputeUser(Job job) {
+        Long userId = job.userId;
+        CalorieBackfillCheckpoint checkpoint = transactionTemplate.execute(status -> {
+            User user = userRepository.findById(userId).orElse(null);
+            if (user == null) {
+                checkpointRepository.deleteByUserId(userId);
+                return null;
+            }
+            CalorieBackfillCheckpoint existing = checkpointRepository.findByUserId(userId)
+                .orElseGet(() -> new CalorieBackfillCheckpoint(user, user.getWeightKg()));
+            if (!existing.getWeightKg().equals(user.getWeightKg())) {
+                existing.restart(user.getWeightKg());
+            }
+            return checkpointRepository.save(existing);
+        });
+        if (checkpoint == null) {
+            return;
+        }
+        
+        long[] ids = activityRepository.findIdsByUserAfter(userId, checkpoint.getLastActivityId());
+        log.info("Recomputing calories of {} activities for user {} at {} kg (from activity {})",
+                 ids.length, userId, checkpoint.getWeightKg(), checkpoint.getLastActivityId());
+        
+        Progress progress = new Progress(userId, checkpoint, ids);
+        remaining.addAndGet(ids.length);
+        try {
+            pool.invoke(new ChunkTask(job, progress, 0, progress.chunks));
+        } finally {
+            remaining.addAndGet(-progress.unfinished());
+        }
+        
+        if (progress.isComplete()) {
+            transactionTemplate.executeWithoutResult(status ->
+                checkpointRepository.deleteFinished(userId, checkpoint.getWeightKg()));
+            log.info("Recomputed calories for user {}: {} activities, {} changed",
+                     userId, progress.processed.get(), progress.updated.get());
+        }
+    }
+    
+    /**
+     * Recompute one chunk in its own transaction, retried on write conflicts
+     * 
+     * @return Number of activities whose calories changed
+     */
+    private int recomputeChunk(Long userId, double weightKg, long fromId, long toId, int capacity) {
+        return retryExecutor.execute("recomputeCalories", userId, "activities " + fromId + "-" + toId, () -> {
+            ActivityCalorieRows rows = activityRepository.findCalorieRows(userId, fromId, toId, capacity);
+            int count = rows.size();
+            int[] metIds = new int[count];
+            double[] weights = new double[count];
+            double[] calories = new double[count];
+            for (int i = 0; i < count; i++) {
+                metIds[i] = calorieCalculator.resolveMETId(rows.getActivityTypes()[i]);
+            }
+            Arrays.fill(weights, weightKg);
+            calorieCalculator.calculateCaloriesBurned(metIds, rows.getDurationMinutes(), weights, calories, count);
+            
+            int[] changed = new int[count];
+            int changedCount = 0;
+            for (int i = 0; i < count; i++) {
+                if (Double.compare(calories[i], rows.getCaloriesBurned()[i]) != 0) {
+                    changed[changedCount++] = i;
+                }
+            }
+            if (changedCount == 0) {
+                return 0;
+            }
+            
+            boolean[] updated = activityRepository.updateCaloriesBurned(rows, calories, changed, changedCount);
+            Map<LocalDate, DailyMetricsDelta> deltas = new TreeMap<>();
+            int updatedCount = 0;
+            for (int i = 0; i < changedCount; i++) {
+                if (!updated[i]) {
+                    continue;
+                }
+                int row = changed[i];
+                double previous = Double.isNaN(rows.getCaloriesBurned()[row]) ? 0.0 : rows.getCaloriesBurned()[row];
+                deltas.merge(rows.getStartDates()[row],
+                             DailyMetricsDelta.ofActivity(calories[row] - previous, 0, 0.0),
+                             DailyMetricsDelta::plus);
+                updatedCount++;
+            }
+            if (!deltas.isEmpty()) {
+                healthMetricsService.addDailyTotals(userId, deltas);
+            }
+            return updatedCount;
+        });
+    }
+    
+    /**
+     * Splits a range of chunks in halves until a single chunk is left, then recomputes it
+     */
+    private final class ChunkTask extends RecursiveAction {
+        private final Job job;
+        private final Progress progress;
+        private final int fromChunk;
+        private final int toChunk;
+        
+        private ChunkTask(Job job, Progress progress, int fromChunk, int toChunk) {
+            this.job = job;
+            this.progress = progress;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+        
+        @Override
+        protected void compute() {
+            if (toChunk - fromChunk > 1) {
+                int middle = (fromChunk + toChunk) >>> 1;
+                invokeAll(new ChunkTask(job, progress, fromChunk, middle),
+                          new ChunkTask(job, progress, middle, toChunk));
+                return;
+            }
+            if (fromChunk >= toChunk || job.isRestartRequested()) {
+                return;
+            }
+            
+            int first = fromChunk * chunkSize;
+            int end = Math.min(first + chunkSize, progress.ids.length);
+            long[] ids = progress.ids;
+            int updated = chunkTimer.record(() -> recomputeChunk(
+                progress.userId, progress.weightKg, ids[first], ids[end - 1], end - first));
+            updatedActivities.increment(updated);
+            unchangedActivities.increment(end - first - updated);
+            remaining.addAndGet(first - end);
+            progress.complete(fromChunk, end - first, updated);
+        }
+    }
+    
+    /**
+     * Completed chunks of one run of a job, and the checkpoint they advance
+     */
+    private final class Progress {
+        private final Long userId;
+        private final double weightKg;
+        private final long[] ids;
+        private final int chunks;
+        private final long processedBefore;
+        private final boolean[] done;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong updated = new AtomicLong();
+        private int doneBelow;
+        private long unfinished;
+        
+        private Progress(Long userId, CalorieBackfillCheckpoint checkpoint, long[] ids) {
+            this.userId = userId;
+            this.weightKg = checkpoint.getWeightKg();
+            this.ids = ids;
+            this.chunks = (ids.length + chunkSize - 1) / chunkSize;
+            this.processedBefore = checkpoint.getProcessedActivities();
+            this.done = new boolean[chunks];
+            this.unfinished = ids.length;
+        }
+        
+        private void complete(int chunk, int activities, int changed) {
+            processed.addAndGet(activities);
+            updated.addAndGet(changed);
+            int below;
+            synchronized (this) {
+                unfinished -= activities;
+                done[chunk] = true;
+                if (chunk != doneBelow) {
+                    return;
+                }
+                while (doneBelow < chunks && done[doneBelow]) {
+                    doneBelow++;
+                }
+                below = doneBelow;
+            }
+            
+            // Every activity up to the last one of the completed prefix of chunks is done
+            int lastIndex = Math.min(below * chunkSize, ids.length) - 1;
+            transactionTemplate.executeWithoutResult(status -> checkpointRepository.advance(
+                userId, weightKg, ids[lastIndex], processedBefore + lastIndex + 1));
+        }
+        
+        private synchronized long unfinished() {
+            return unfinished;
+        }
+        
+        private synchronized boolean isComplete() {
+            return doneBelow == chunks;
+        }
+    }
+    
+    /**
+     * The single running recompute of a user
+     */
+    private static final class Job {
+        private final Long userId;
+        private boolean restartRequested;
+        private boolean finished;
+        
+        private Job(Long userId) {
+            this.userId = userId;
+        }
+        
+        /**
+         * @return false if the job has already finished and cannot take the request
+         */
+        private synchronized boolean requestRestart() {
+            if (finished) {
+                return false;
+            }
+            restartRequested = true;
+            return true;
+        }
+        
+        private synchronized boolean isRestartRequested() {
+            return restartRequested;
+        }
+        
+        /**
+         * @return true if the job is finished, false if it has to run again
+         */
+        private synchronized boolean finishOrRestart() {
+            if (restartRequested) {
+                restartRequested = false;
+                return false;
+            }
+            finished = true;
+            return true;
+        }
+    }
+}
+
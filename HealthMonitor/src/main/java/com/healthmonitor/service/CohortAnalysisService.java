@@ -0,0 +1,303 @@
+package com.healthmonitor.service;
+
+import com.healthmonitor.dto.BMRStatsDTO;
+import com.healthmonitor.dto.CohortSummaryDTO;
+import com.healthmonitor.model.AgeBand;
+import com.healthmonitor.model.User;
+import com.healthmonitor.repository.UserBodyProfile;
+import com.healthmonitor.repository.UserRepository;
+import com.healthmonitor.service.calculator.BMRAnalyzer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Computes BMR and TDEE statistics for the whole user population, grouped into cohorts
+ * 
+ * A cohort is an age band, a gender and an activity level. Users are streamed from a
+ * database cursor as UserBodyProfile projections and copied into fixed-size batches of
+ * primitive columns; each batch is computed on a dedicated fork-join pool under every
+ * selected BMRAnalyzer and folded into per-cohort sums. At most one batch per worker is
+ * in flight plus the one being filled, and batches are reused, so memory stays bounded
+ * however many users there are and the computation does not allocate per user.
+ */
+@Service
+public class CohortAnalysisService {
+    
+    private static final AgeBand[] AGE_BANDS = AgeBand.values();
+    
+    private static final User.Gender[] GENDERS = User.Gender.values();
+    private static final User.ActivityLevel[] ACTIVITY_LEVELS = User.ActivityLevel.values();
+    
+    // The extra activity level slot is for users without one
+    private static final int LEVEL_SLOTS = ACTIVITY_LEVELS.length + 1;
+    private static final int COHORTS = AGE_BANDS.length * GENDERS.length * LEVEL_SLOTS;
+    
+    private final UserRepository userRepository;
+    private final Map<String, BMRAnalyzer> analyzers = new LinkedHashMap<>();
+    private final int parallelism;
+    private final int batchSize;
+    private final ForkJoinPool pool;
+    
+    @Autowired
+    public CohortAnalysisService(UserRepository userRepository,
+                                 List<BMRAnalyzer> analyzers,
+                                 @Value("${healthmonitor.cohorts.parallelism:4}") int parallelism,
+                                 @Value("${healthmonitor.cohorts.batch-size:4096}") int batchSize) {
+        this.userRepository = userRepository;
+        for (BMRAnalyzer analyzer : analyzers) {
+            this.analyzers.put(analyzer.getFormula(), analyzer);
+        }
+        this.parallelism = Math.max(1, parallelism);
+        this.batchSize = Math.max(1, batchSize);
+        
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = new ForkJoinPool(this.parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("cohort-analysis-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+    
+    /**
+     * Summarize BMR and TDEE per cohort under the given formulas
+     * 
+     * @param formulas Formula names, or null or empty for all available formulas
+     * @return Summaries of the cohorts that have users, by age band, gender and activity level
+     */
+    @Transactional(readOnly = true)
+    public List<CohortSummaryDTO> summarizeCohorts(List<String> formulas) {
+        BMRAnalyzer[] selected = select(formulas);
+        int currentYear = LocalDate.now().getYear();
+        CohortTotals totals = new CohortTotals(selected.length);
+        ArrayDeque<Batch> free = new ArrayDeque<>();
+        ArrayDeque<Future<Batch>> inFlight = new ArrayDeque<>();
+        
+        try (Stream<UserBodyProfile> profiles = userRepository.streamBodyProfiles()) {
+            Iterator<UserBodyProfile> iterator = profiles.iterator();
+            Batch batch = new Batch(batchSize, selected);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next(), currentYear);
+                if (batch.size == batchSize) {
+                    if (inFlight.size() == parallelism) {
+                        free.push(fold(inFlight.poll(), totals));
+                    }
+                    inFlight.add(pool.submit(batch));
+                    batch = free.isEmpty() ? new Batch(batchSize, selected) : free.pop();
+                }
+            }
+            if (batch.size > 0) {
+                inFlight.add(pool.submit(batch));
+            }
+            while (!inFlight.isEmpty()) {
+                fold(inFlight.poll(), totals);
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+        
+        return toSummaries(totals, selected);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+    
+    private BMRAnalyzer[] select(List<String> formulas) {
+        if (formulas == null || formulas.isEmpty()) {
+            return analyzers.values().toArray(new BMRAnalyzer[0]);
+        }
+        
+        List<BMRAnalyzer> selected = new ArrayList<>();
+        for (String formula : formulas) {
+            BMRAnalyzer analyzer = analyzers.get(formula);
+            if (analyzer == null) {
+                throw new IllegalArgumentException("Unknown BMR formula: " + formula +
+                                                   " (available: " + String.join(", ", analyzers.keySet()) + ")");
+            }
+            if (!selected.contains(analyzer)) {
+                selected.add(analyzer);
+            }
+        }
+        return selected.toArray(new BMRAnalyzer[0]);
+    }
+    
+    private static Batch fold(Future<Batch> future, CohortTotals totals) {
+        try {
+            Batch batch = future.get();
+            totals.add(batch.totals);
+            batch.clear();
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while summarizing cohorts", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Cohort summary failed", e.getCause());
+        }
+    }
+    
+    private static List<CohortSummaryDTO> toSummaries(CohortTotals totals, BMRAnalyzer[] analyzers) {
+        List<CohortSummaryDTO> summaries = new ArrayList<>();
+        for (int cohort = 0; cohort < COHORTS; cohort++) {
+            long users = totals.users[cohort];
+            if (users == 0) {
+                continue;
+            }
+            
+            Map<String, BMRStatsDTO> formulas = new LinkedHashMap<>();
+            for (int f = 0; f < analyzers.length; f++) {
+                int slot = f * COHORTS + cohort;
+                formulas.put(analyzers[f].getFormula(), new BMRStatsDTO(
+                    totals.bmrSum[slot] / users,
+                    totals.bmrMin[slot],
+                    totals.bmrMax[slot],
+                    totals.tdeeSum[slot] / users
+                ));
+            }
+            int level = cohort % LEVEL_SLOTS;
+            int gender = cohort / LEVEL_SLOTS % GENDERS.length;
+            int ageBand = cohort / LEVEL_SLOTS / GENDERS.length;
+            summaries.add(new CohortSummaryDTO(
+                AGE_BANDS[ageBand].getLabel(),
+                GENDERS[gender],
+                level < ACTIVITY_LEVELS.length ? ACTIVITY_LEVELS[level] : null,
+                users,
+                formulas
+            ));
+        }
+        return summaries;
+    }
+    
+    /**
+     * User counts, and per formula BMR and TDEE sums and BMR extremes, of every cohort
+     * Per-formula arrays are indexed by formula * COHORTS + cohort.
+     */
+    private static final class CohortTotals {
+        private final long[] users = new long[COHORTS];
+        private final double[] bmrSum;
+        private final double[] tdeeSum;
+        private final double[] bmrMin;
+        private final double[] bmrMax;
+        
+        private CohortTotals(int formulas) {
+            this.bmrSum = new double[formulas * COHORTS];
+            this.tdeeSum = new double[formulas * COHORTS];
+            this.bmrMin = new double[formulas * COHORTS];
+            this.bmrMax = new double[formulas * COHORTS];
+            clear();
+        }
+        
+        private void add(CohortTotals other) {
+            for (int cohort = 0; cohort < COHORTS; cohort++) {
+                users[cohort] += other.users[cohort];
+            }
+            for (int slot = 0; slot < bmrSum.length; slot++) {
+                bmrSum[slot] += other.bmrSum[slot];
+                tdeeSum[slot] += other.tdeeSum[slot];
+                bmrMin[slot] = Math.min(bmrMin[slot], other.bmrMin[slot]);
+                bmrMax[slot] = Math.max(bmrMax[slot], other.bmrMax[slot]);
+            }
+        }
+        
+        private void clear() {
+            Arrays.fill(users, 0);
+            Arrays.fill(bmrSum, 0.0);
+            Arrays.fill(tdeeSum, 0.0);
+            Arrays.fill(bmrMin, Double.POSITIVE_INFINITY);
+            Arrays.fill(bmrMax, Double.NEGATIVE_INFINITY);
+        }
+    }
+    
+    /**
+     * A batch of users as primitive columns, and the cohort totals computed from it
+     */
+    private static final class Batch implements Callable<Batch> {
+        private final BMRAnalyzer[] analyzers;
+        private final int[] cohorts;
+        private final int[] ages;
+        private final double[] heightsCm;
+        private final double[] weightsKg;
+        private final User.Gender[] genders;
+        private final User.ActivityLevel[] activityLevels;
+        private final CohortTotals totals;
+        private int size;
+        
+        private Batch(int capacity, BMRAnalyzer[] analyzers) {
+            this.analyzers = analyzers;
+            this.cohorts = new int[capacity];
+            this.ages = new int[capacity];
+            this.heightsCm = new double[capacity];
+            this.weightsKg = new double[capacity];
+            this.genders = new User.Gender[capacity];
+            this.activityLevels = new User.ActivityLevel[capacity];
+            this.totals = new CohortTotals(analyzers.length);
+        }
+        
+        private void add(UserBodyProfile profile, int currentYear) {
+            int age = profile.getAge(currentYear);
+            User.ActivityLevel level = profile.getActivityLevel();
+            int levelSlot = level != null ? level.ordinal() : ACTIVITY_LEVELS.length;
+            cohorts[size] = (AgeBand.of(age).ordinal() * GENDERS.length + profile.getGender().ordinal()) * LEVEL_SLOTS + levelSlot;
+            ages[size] = age;
+            heightsCm[size] = profile.getHeightCm();
+            weightsKg[size] = profile.getWeightKg();
+            genders[size] = profile.getGender();
+            activityLevels[size] = level;
+            size++;
+        }
+        
+        @Override
+        public Batch call() {
+            for (int i = 0; i < size; i++) {
+                totals.users[cohorts[i]]++;
+            }
+            for (int f = 0; f < analyzers.length; f++) {
+                BMRAnalyzer analyzer = analyzers[f];
+                int offset = f * COHORTS;
+                for (int i = 0; i < size; i++) {
+                    double bmr = analyzer.calculateBMR(weightsKg[i], heightsCm[i], ages[i], genders[i]);
+                    double tdee = analyzer.calculateTDEE(activityLevels[i], bmr);
+                    int slot = offset + cohorts[i];
+                    totals.bmrSum[slot] += bmr;
+                    totals.tdeeSum[slot] += tdee;
+                    if (bmr < totals.bmrMin[slot]) {
+                        totals.bmrMin[slot] = bmr;
+                    }
+                    if (bmr > totals.bmrMax[slot]) {
+                        totals.bmrMax[slot] = bmr;
+                    }
+                }
+            }
+            return this;
+        }
+        
+        private void clear() {
+            totals.clear();
+            size = 0;
+        }
+    }
+}
+
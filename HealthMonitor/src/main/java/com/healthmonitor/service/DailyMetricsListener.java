@@ -0,0 +1,37 @@
+package com.healthmonitor.service;
+
+import com.healthmonitor.model.DailyMetricsChange;
+
+import java.util.List;
+
+/**
+ * Receives the changes HealthMetricsService writes make to daily metrics rows
+ * 
+ * Changes are delivered after their transaction commits, never for a rolled back write,
+ * on the thread that committed. Changes of concurrent transactions to the same row may
+ * arrive in either order, so listeners should apply them as commutative differences
+ * (after minus before) rather than as absolute values.
+ */
+public interface DailyMetricsListener {
+    
+    /**
+     * Called inside the write's transaction, before it commits, with the changes it made
+     * For the reads onDailyMetricsChanged needs; the changes may still be rolled back.
+     */
+    default void prepareDailyMetricsChange(List<DailyMetricsChange> changes) {
+    }
+    
+    /**
+     * Called with the changes of one committed write, in date order
+     */
+    void onDailyMetricsChanged(List<DailyMetricsChange> changes);
+    
+    /**
+     * Called instead when the changes of a committed write could not be applied,
+     * because preparing or applying them failed
+     * The listener should recompute what they affect from the stored rows.
+     */
+    default void onDailyMetricsMissed(List<DailyMetricsChange> changes) {
+    }
+}
+
@@ -1,96 +1,419 @@
 package com.healthmonitor.service;
 
+import com.healthmonitor.dto.HealthMetricsDTO;
+import com.healthmonitor.model.DailyMetricsChange;
+import com.healthmonitor.model.DailyMetricsDelta;
 import com.healthmonitor.model.HealthMetrics;
+import com.healthmonitor.model.HealthMetricsRollup;
+import com.healthmonitor.model.MetricsTotals;
+import com.healthmonitor.model.StatsGranularity;
 import com.healthmonitor.model.User;
 import com.healthmonitor.repository.HealthMetricsRepository;
+import com.healthmonitor.repository.HealthMetricsRollupRepository;
+import com.healthmonitor.repository.MetricsAggregate;
 import com.healthmonitor.service.calculator.BMRAnalyzer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Service class for managing health metrics
  * Demonstrates service layer pattern and encapsulation
+ * 
+ * Daily rows are written with atomic upserts (see HealthMetricsRepositoryCustom),
+ * so concurrent requests for the same user and date never lose an update.
+ * 
+ * When healthmonitor.steps.write-behind.enabled is set, step increments are
+ * buffered in StepAccumulator and written by StepFlushScheduler instead of
+ * updating the daily row on every call.
+ * 
+ * Writes go through OptimisticRetryExecutor. They join the caller's transaction when
+ * there is one, and otherwise run in their own transaction that is retried on conflicts.
+ * 
+ * Week and month totals are read from HealthMetricsRollup rows, which every daily
+ * write keeps up to date, instead of summing the daily rows.
+ * 
+ * The values every write changed are passed to the DailyMetricsListener beans once
+ * the write commits, so derived state can follow the daily rows incrementally.
  */
 @Service
 @Transactional
 public class HealthMetricsService {
     
+    private static final Logger log = LoggerFactory.getLogger(HealthMetricsService.class);
+    
     private final HealthMetricsRepository healthMetricsRepository;
+    private final HealthMetricsRollupRepository rollupRepository;
     private final BMRAnalyzer bmrAnalyzer;
+    private final StepAccumulator stepAccumulator;
+    private final OptimisticRetryExecutor retryExecutor;
+    private final UserChangeTracker changeTracker;
+    private final List<DailyMetricsListener> listeners;
+    private final boolean writeBehindSteps;
     
     @Autowired
     public HealthMetricsService(HealthMetricsRepository healthMetricsRepository,
-                                 BMRAnalyzer bmrAnalyzer) {
+                                 HealthMetricsRollupRepository rollupRepository,
+                                 BMRAnalyzer bmrAnalyzer,
+                                 StepAccumulator stepAccumulator,
+                                 OptimisticRetryExecutor retryExecutor,
+                                 UserChangeTracker changeTracker,
+                                 List<DailyMetricsListener> listeners,
+                                 @Value("${healthmonitor.steps.write-behind.enabled:false}") 
+                                 boolean writeBehindSteps) {
         this.healthMetricsRepository = healthMetricsRepository;
+        this.rollupRepository = rollupRepository;
         this.bmrAnalyzer = bmrAnalyzer;
+        this.stepAccumulator = stepAccumulator;
+        this.retryExecutor = retryExecutor;
+        this.changeTracker = changeTracker;
+        this.listeners = listeners;
+        this.writeBehindSteps = writeBehindSteps;
     }
     
     /**
      * Create or update health metrics for a user on a specific date
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public HealthMetrics saveOrUpdateMetrics(User user, LocalDate date, HealthMetrics metrics) {
-        Optional<HealthMetrics> existingMetrics = 
-            healthMetricsRepository.findByUserAndDate(user, date);
-        
-        HealthMetrics healthMetrics;
-        if (existingMetrics.isPresent()) {
-            healthMetrics = existingMetrics.get();
-            updateMetrics(healthMetrics, metrics);
-        } else {
-            healthMetrics = new HealthMetrics(user, date);
-            updateMetrics(healthMetrics, metrics);
-        }
-        
-        return healthMetricsRepository.save(healthMetrics);
+        return retryExecutor.execute("saveOrUpdateMetrics", user.getId(), date, () -> {
+            if (writeBehindSteps && metrics.getSteps() != null) {
+                // An explicit total replaces any increments that are still buffered
+                discardPendingStepsOnCommit(user.getId(), date);
+            }
+            publish(healthMetricsRepository.upsertDailyValues(user.getId(), date, metrics));
+            return findStoredMetrics(user, date);
+        });
     }
     
     /**
      * Get health metrics for a user on a specific date
+     * In write-behind mode the result includes steps that have not been flushed yet
      */
     @Transactional(readOnly = true)
     public Optional<HealthMetrics> getMetricsByUserAndDate(User user, LocalDate date) {
-        return healthMetricsRepository.findByUserAndDate(user, date);
+        Optional<HealthMetrics> stored = healthMetricsRepository.findByUserAndDate(user, date);
+        if (!writeBehindSteps) {
+            return stored;
+        }
+        
+        long pendingSteps = stepAccumulator.getPendingSteps(user.getId(), date);
+        if (pendingSteps == 0) {
+            return stored;
+        }
+        return Optional.of(withPendingSteps(stored.orElseGet(() -> new HealthMetrics(user, date)), 
+                                            pendingSteps));
     }
     
     /**
      * Get all health metrics for a user within a date range
      */
     @Transactional(readOnly = true)
-    public List<HealthMetrics> getMetricsByUserAndDateRange(User user, 
-                                                             LocalDate startDate, 
-                                                             LocalDate endDate) {
-        return healthMetricsRepository.findByUserAndDateBetween(user, startDate, endDate);
+    public List<HealthMetricsDTO> getMetricsByUserAndDateRange(User user, 
+                                                                LocalDate startDate, 
+                                                                LocalDate endDate) {
+        return healthMetricsRepository.findDTOsByUserAndDateBetween(user, startDate, endDate);
+    }
+    
+    /**
+     * Pass a user's health metrics within a date range to an action one at a time, in date order
+     * The rows are read from a database cursor, so memory use does not grow with the range.
+     */
+    @Transactional(readOnly = true)
+    public void forEachMetricsInDateRange(User user, LocalDate startDate, LocalDate endDate,
+                                          Consumer<? super HealthMetricsDTO> action) {
+        try (Stream<HealthMetricsDTO> metrics = healthMetricsRepository.streamDTOsByUserAndDateBetween(
+                user, startDate, endDate)) {
+            metrics.forEach(action);
+        }
+    }
+    
+    /**
+     * Get the steps for a user's day that are accepted but not flushed yet (always 0 without write-behind)
+     */
+    public long getPendingSteps(User user, LocalDate date) {
+        return writeBehindSteps ? stepAccumulator.getPendingSteps(user.getId(), date) : 0;
+    }
+    
+    /**
+     * Aggregate a user's health metrics within a date range in the database
+     */
+    @Transactional(readOnly = true)
+    public MetricsAggregate getAggregate(User user, LocalDate startDate, LocalDate endDate) {
+        return healthMetricsRepository.aggregateByUserAndDateBetween(user, startDate, endDate);
+    }
+    
+    /**
+     * Aggregate a user's health metrics within a date range per day, week or month
+     * Only periods with metrics are returned, ordered by date.
+     */
+    @Transactional(readOnly = true)
+    public List<MetricsAggregate> getAggregates(User user, LocalDate startDate, LocalDate endDate,
+                                                StatsGranularity granularity) {
+        switch (granularity) {
+            case WEEK:
+                return healthMetricsRepository.aggregateWeeklyByUserAndDateBetween(
+                    user, startDate, endDate, StatsGranularity.WEEK.startOf(startDate));
+            case MONTH:
+                return healthMetricsRepository.aggregateMonthlyByUserAndDateBetween(user, startDate, endDate);
+            default:
+                return healthMetricsRepository.aggregateDailyByUserAndDateBetween(user, startDate, endDate);
+        }
+    }
+    
+    /**
+     * Get a user's totals for the week or month containing a date
+     * Steps still buffered in write-behind mode are not included.
+     */
+    @Transactional(readOnly = true)
+    public MetricsTotals getRollupTotals(User user, HealthMetricsRollup.Period period, LocalDate date) {
+        return rollupRepository.findByUserAndPeriodAndPeriodStart(user, period, period.startOf(date))
+            .map(HealthMetricsRollup::toTotals)
+            .orElse(MetricsTotals.ZERO);
+    }
+    
+    /**
+     * Recompute a user's week and month rollups from the daily rows
+     * 
+     * @return Number of daily rows read
+     */
+    public int rebuildRollups(Long userId) {
+        return rollupRepository.rebuildRollups(userId);
+    }
+    
+    /**
+     * Find the ids of all users that have daily metrics
+     */
+    @Transactional(readOnly = true)
+    public List<Long> findUserIdsWithMetrics() {
+        return rollupRepository.findUserIdsWithMetrics();
     }
     
     /**
      * Add steps to existing metrics or create new entry
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public HealthMetrics addSteps(User user, LocalDate date, int steps) {
-        Optional<HealthMetrics> existingMetrics = 
-            healthMetricsRepository.findByUserAndDate(user, date);
-        
-        HealthMetrics healthMetrics;
-        if (existingMetrics.isPresent()) {
-            healthMetrics = existingMetrics.get();
-            healthMetrics.setSteps((healthMetrics.getSteps() != null ? 
-                                    healthMetrics.getSteps() : 0) + steps);
-        } else {
-            healthMetrics = new HealthMetrics(user, date);
-            healthMetrics.setSteps(steps);
+        if (writeBehindSteps) {
+            return bufferSteps(user, date, steps);
         }
         
-        // Update distance based on steps (average: 1 km = 1300 steps)
-        if (healthMetrics.getDistanceKm() == null) {
-            healthMetrics.setDistanceKm(0.0);
+        // Distance is updated from steps as well (average: 1 km = 1300 steps)
+        return retryExecutor.execute("addSteps", user.getId(), date, () -> {
+            DailyMetricsDelta delta = DailyMetricsDelta.ofSteps(steps);
+            publish(healthMetricsRepository.incrementDailyTotals(user.getId(), date, delta));
+            return findIncrementedMetrics(user, date);
+        });
+    }
+    
+    /**
+     * Add steps for several days at once
+     * Each day's total is applied as one upsert, all in one transaction
+     * 
+     * @param stepsByDate Total steps to add, keyed by date
+     * @return Updated metrics, one per date
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<HealthMetrics> addSteps(User user, Map<LocalDate, Integer> stepsByDate) {
+        if (writeBehindSteps) {
+            stepsByDate.forEach((date, steps) -> checkDailyStepsLimit(user, date, steps));
+            List<HealthMetrics> views = new ArrayList<>(stepsByDate.size());
+            stepsByDate.forEach((date, steps) -> views.add(bufferSteps(user, date, steps)));
+            return views;
         }
-        healthMetrics.setDistanceKm(healthMetrics.getDistanceKm() + (steps / 1300.0));
-        
-        return healthMetricsRepository.save(healthMetrics);
+        return retryExecutor.execute("addSteps", user.getId(), stepsByDate.keySet(), () -> {
+            writeSteps(user.getId(), stepsByDate);
+            return healthMetricsRepository.findByUserAndDateInOrderByDateAsc(user, stepsByDate.keySet());
+        });
+    }
+    
+    /**
+     * Write steps buffered by the write-behind accumulator
+     * 
+     * @param userId User the steps belong to
+     * @param stepsByDate Total steps to add, keyed by date
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void applyPendingSteps(Long userId, Map<LocalDate, Integer> stepsByDate) {
+        retryExecutor.run("applyPendingSteps", userId, stepsByDate.keySet(), () -> writeSteps(userId, stepsByDate));
+    }
+    
+    /**
+     * Add the totals of an activity to the user's daily metrics
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public HealthMetrics addActivityTotals(User user, LocalDate date, double caloriesBurned,
+                                           int activeMinutes, double distanceKm) {
+        DailyMetricsDelta delta = DailyMetricsDelta.ofActivity(caloriesBurned, activeMinutes, distanceKm);
+        return retryExecutor.execute("addActivityTotals", user.getId(), date, () -> {
+            publish(healthMetricsRepository.incrementDailyTotals(user.getId(), date, delta));
+            return findIncrementedMetrics(user, date);
+        });
+    }
+    
+    /**
+     * Add totals to several of a user's days in one transaction
+     * 
+     * @param deltasByDate Amounts to add, keyed by date
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void addDailyTotals(Long userId, Map<LocalDate, DailyMetricsDelta> deltasByDate) {
+        retryExecutor.run("addDailyTotals", userId, deltasByDate.keySet(),
+                          () -> publish(healthMetricsRepository.incrementDailyTotals(userId, deltasByDate)));
+    }
+    
+    /**
+     * Set a user's average heart rate for a day, creating the metrics row if needed
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void updateHeartRateAvg(Long userId, LocalDate date, int heartRateAvg) {
+        HealthMetrics values = new HealthMetrics();
+        values.setHeartRateAvg(heartRateAvg);
+        retryExecutor.run("updateHeartRateAvg", userId, date,
+                          () -> publish(healthMetricsRepository.upsertDailyValues(userId, date, values)));
+    }
+    
+    /**
+     * Add steps to the write-behind accumulator and return the day's metrics including them
+     * Inside a transaction the steps are buffered once it commits, so a request that rolls back,
+     * e.g. one that lost the race for its Idempotency-Key, adds nothing.
+     */
+    private HealthMetrics bufferSteps(User user, LocalDate date, int steps) {
+        checkDailyStepsLimit(user, date, steps);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    stepAccumulator.add(user.getId(), date, steps);
+                    changeTracker.markChanged(user.getId());
+                }
+            });
+            return withPendingSteps(getMetricsByUserAndDate(user, date)
+                .orElseGet(() -> new HealthMetrics(user, date)), steps);
+        }
+        stepAccumulator.add(user.getId(), date, steps);
+        changeTracker.markChanged(user.getId());
+        return getMetricsByUserAndDate(user, date)
+            .orElseGet(() -> new HealthMetrics(user, date));
+    }
+    
+    /**
+     * Reject steps that would take a day's total, stored and pending, past the int column
+     * Checked when they are buffered, since the flush could otherwise never write them.
+     */
+    private void checkDailyStepsLimit(User user, LocalDate date, int steps) {
+        long stored = healthMetricsRepository.findByUserAndDate(user, date)
+            .map(HealthMetrics::getSteps)
+            .orElse(0);
+        if (stored + stepAccumulator.getPendingSteps(user.getId(), date) + steps > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Steps on " + date + " would exceed " + Integer.MAX_VALUE);
+        }
+    }
+    
+    /**
+     * Take a day's buffered steps out of the accumulator for the current transaction
+     * They are set aside at once, so a concurrent flush cannot add them on top of the new total,
+     * and put back unless the transaction commits.
+     */
+    private void discardPendingStepsOnCommit(Long userId, LocalDate date) {
+        long discarded = stepAccumulator.discard(userId, date);
+        if (discarded == 0) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    stepAccumulator.add(userId, date, discarded);
+                }
+            }
+        });
+    }
+    
+    private void writeSteps(Long userId, Map<LocalDate, Integer> stepsByDate) {
+        Map<LocalDate, DailyMetricsDelta> deltasByDate = new TreeMap<>();
+        stepsByDate.forEach((date, steps) -> deltasByDate.put(date, DailyMetricsDelta.ofSteps(steps)));
+        publish(healthMetricsRepository.incrementDailyTotals(userId, deltasByDate));
+    }
+    
+    /**
+     * Let the listeners prepare a write's changes now and pass them on once the current transaction commits
+     * Writes always run in a transaction (see OptimisticRetryExecutor), so a rolled back
+     * attempt never reaches the listeners. A listener that fails on a committed change is told
+     * it missed it; the write itself never turns into an error.
+     */
+    private void publish(List<DailyMetricsChange> changes) {
+        if (changes.isEmpty() || listeners.isEmpty()) {
+            return;
+        }
+        boolean[] prepared = new boolean[listeners.size()];
+        for (int i = 0; i < listeners.size(); i++) {
+            try {
+                listeners.get(i).prepareDailyMetricsChange(changes);
+                prepared[i] = true;
+            } catch (RuntimeException e) {
+                logListenerFailure(listeners.get(i), changes, e);
+            }
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (int i = 0; i < listeners.size(); i++) {
+                    DailyMetricsListener listener = listeners.get(i);
+                    boolean applied = false;
+                    if (prepared[i]) {
+                        try {
+                            listener.onDailyMetricsChanged(changes);
+                            applied = true;
+                        } catch (RuntimeException e) {
+                            logListenerFailure(listener, changes, e);
+                        }
+                    }
+                    if (!applied) {
+                        try {
+                            listener.onDailyMetricsMissed(changes);
+                        } catch (RuntimeException e) {
+                            logListenerFailure(listener, changes, e);
+                        }
+                    }
+                }
+            }
+        });
+    }
+    
+    private void logListenerFailure(DailyMetricsListener listener, List<DailyMetricsChange> changes,
+                                    RuntimeException e) {
+        log.warn("Daily metrics listener {} failed for user {}: {}",
+                 listener.getClass().getSimpleName(), changes.get(0).getUserId(), e.getMessage());
+    }
+    
+    /**
+     * Metrics after an increment; a negative increment on a day without a row leaves it empty
+     */
+    private HealthMetrics findIncrementedMetrics(User user, LocalDate date) {
+        return healthMetricsRepository.findByUserAndDate(user, date)
+            .orElseGet(() -> new HealthMetrics(user, date));
+    }
+    
+    private HealthMetrics findStoredMetrics(User user, LocalDate date) {
+        return healthMetricsRepository.findByUserAndDate(user, date)
+            .orElseThrow(() -> new IllegalStateException(
+                "Health metrics missing after upsert for user " + user.getId() + " on " + date));
     }
     
     /**
@@ -109,6 +432,22 @@ public class HealthMetricsService {
         }
     }
     
+    /**
+     * Build a detached copy of stored metrics with buffered steps added,
+     * so the managed entity is never modified by a read
+     */
+    private HealthMetrics withPendingSteps(HealthMetrics stored, long pendingSteps) {
+        HealthMetrics view = new HealthMetrics(stored.getUser(), stored.getDate());
+        view.setId(stored.getId());
+        view.setCreatedAt(stored.getCreatedAt());
+        view.setUpdatedAt(stored.getUpdatedAt());
+        updateMetrics(view, stored);
+        view.setSteps((int) ((stored.getSteps() != null ? stored.getSteps() : 0) + pendingSteps));
+        view.setDistanceKm((stored.getDistanceKm() != null ? stored.getDistanceKm() : 0.0) + 
+                           (pendingSteps / 1300.0));
+        return view;
+    }
+    
     private void updateMetrics(HealthMetrics existing, HealthMetrics newMetrics) {
         if (newMetrics.getSteps() != null) {
             existing.setSteps(newMetrics.getSteps());
@@ -0,0 +1,124 @@
+package com.healthmonitor.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.healthmonitor.model.HealthSummary;
+import com.healthmonitor.model.User;
+import com.healthmonitor.service.calculator.BMRAnalyzer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Service for a user's derived body figures
+ * 
+ * Age, BMI, BMR and TDEE depend only on the profile fields below and on the current
+ * date (for age), so they are computed once and memoized per user. A memoized summary
+ * is rebuilt when one of those fields differs from the user passed in, or when the
+ * date has changed; edits to other fields such as name or email keep it.
+ */
+@Service
+public class HealthSummaryService {
+    
+    private final BMRAnalyzer bmrAnalyzer;
+    private final Cache<Long, Entry> summaries;
+    
+    @Autowired
+    public HealthSummaryService(BMRAnalyzer bmrAnalyzer,
+                                MeterRegistry meterRegistry,
+                                @Value("${healthmonitor.users.cache.max-size:10000}") long cacheSize) {
+        this.bmrAnalyzer = bmrAnalyzer;
+        this.summaries = Caffeine.newBuilder()
+            .maximumSize(cacheSize)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, summaries, "healthSummaries");
+    }
+    
+    /**
+     * Get the summary for a user's current profile and today's date
+     */
+    public HealthSummary getSummary(User user) {
+        Profile profile = new Profile(user);
+        LocalDate today = LocalDate.now();
+        
+        Entry entry = summaries.getIfPresent(user.getId());
+        if (entry != null && entry.profile.equals(profile) && entry.summary.getDate().equals(today)) {
+            return entry.summary;
+        }
+        
+        double bmr = bmrAnalyzer.calculateBMR(user);
+        HealthSummary summary = new HealthSummary(
+            today,
+            user.calculateAge(),
+            user.calculateBMI(),
+            bmr,
+            bmrAnalyzer.calculateTDEE(user, bmr)
+        );
+        summaries.put(user.getId(), new Entry(profile, summary));
+        return summary;
+    }
+    
+    /**
+     * Drop a user's memoized summary, e.g. when the user is deleted
+     */
+    public void evict(Long userId) {
+        summaries.invalidate(userId);
+    }
+    
+    private static final class Entry {
+        private final Profile profile;
+        private final HealthSummary summary;
+        
+        private Entry(Profile profile, HealthSummary summary) {
+            this.profile = profile;
+            this.summary = summary;
+        }
+    }
+    
+    /**
+     * The profile fields the summary is derived from
+     */
+    private static final class Profile {
+        private final Double weightKg;
+        private final Double heightCm;
+        private final LocalDate dateOfBirth;
+        private final User.Gender gender;
+        private final User.ActivityLevel activityLevel;
+        
+        private Profile(User user) {
+            this.weightKg = user.getWeightKg();
+            this.heightCm = user.getHeightCm();
+            this.dateOfBirth = user.getDateOfBirth();
+            this.gender = user.getGender();
+            this.activityLevel = user.getActivityLevel();
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Profile)) {
+                return false;
+            }
+            Profile other = (Profile) o;
+            return Objects.equals(weightKg, other.weightKg)
+                && Objects.equals(heightCm, other.heightCm)
+                && Objects.equals(dateOfBirth, other.dateOfBirth)
+                && gender == other.gender
+                && activityLevel == other.activityLevel;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(weightKg, heightCm, dateOfBirth, gender, activityLevel);
+        }
+    }
+}
+
@@ -0,0 +1,95 @@
+package com.healthmonitor.service;
+
+import com.healthmonitor.dto.HeartRateIngestDTO;
+import com.healthmonitor.dto.HeartRateSampleDTO;
+import com.healthmonitor.model.User;
+import com.healthmonitor.repository.HeartRateSampleStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Service for raw heart-rate samples
+ * Samples go to HeartRateSampleStore; only the daily average is written to HealthMetrics.
+ */
+@Service
+public class HeartRateService {
+    
+    private final HeartRateSampleStore sampleStore;
+    private final HealthMetricsService healthMetricsService;
+    
+    @Autowired
+    public HeartRateService(HeartRateSampleStore sampleStore,
+                            HealthMetricsService healthMetricsService) {
+        this.sampleStore = sampleStore;
+        this.healthMetricsService = healthMetricsService;
+    }
+    
+    /**
+     * Store samples and update the daily heart-rate averages
+     * Samples may arrive in any order within a batch, but a day only accepts samples
+     * later than the last one already stored for it.
+     */
+    public HeartRateIngestDTO addSamples(User user, List<HeartRateSampleDTO> samples) {
+        Map<LocalDate, List<HeartRateSampleDTO>> samplesByDate = new TreeMap<>();
+        for (HeartRateSampleDTO sample : samples) {
+            samplesByDate.computeIfAbsent(sample.getTimestamp().toLocalDate(), date -> new ArrayList<>())
+                .add(sample);
+        }
+        
+        HeartRateIngestDTO result = new HeartRateIngestDTO();
+        samplesByDate.forEach((date, daySamples) -> {
+            daySamples.sort(Comparator.comparing(HeartRateSampleDTO::getTimestamp));
+            int[] secondsOfDay = new int[daySamples.size()];
+            int[] bpm = new int[daySamples.size()];
+            for (int i = 0; i < daySamples.size(); i++) {
+                secondsOfDay[i] = daySamples.get(i).getTimestamp().toLocalTime().toSecondOfDay();
+                bpm[i] = daySamples.get(i).getBpm();
+            }
+            
+            HeartRateSampleStore.AppendResult appended =
+                sampleStore.append(user.getId(), date, secondsOfDay, bpm, daySamples.size());
+            result.setAccepted(result.getAccepted() + appended.getWritten());
+            result.setSkipped(result.getSkipped() + daySamples.size() - appended.getWritten());
+            
+            // The store keeps running totals, so the average costs nothing extra per append
+            if (appended.getWritten() > 0) {
+                healthMetricsService.updateHeartRateAvg(user.getId(), date, appended.getAverage());
+            }
+            if (appended.getAverage() != null) {
+                result.getDailyAverages().put(date, appended.getAverage());
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Get a day's samples as encoded records, without copying them
+     */
+    public HeartRateSampleStore.DaySamples getDaySamples(User user, LocalDate date) {
+        return sampleStore.readDay(user.getId(), date);
+    }
+    
+    /**
+     * Get the samples in a time range, both ends inclusive
+     */
+    public List<HeartRateSampleDTO> getSamples(User user, LocalDateTime from, LocalDateTime to) {
+        List<HeartRateSampleDTO> samples = new ArrayList<>();
+        for (LocalDate date = from.toLocalDate(); !date.isAfter(to.toLocalDate()); date = date.plusDays(1)) {
+            LocalDate day = date;
+            int fromSecond = day.equals(from.toLocalDate()) ? from.toLocalTime().toSecondOfDay() : 0;
+            int toSecond = day.equals(to.toLocalDate()) ? to.toLocalTime().toSecondOfDay() : Integer.MAX_VALUE;
+            sampleStore.readDay(user.getId(), day).forEach(fromSecond, toSecond, (second, bpm) ->
+                samples.add(new HeartRateSampleDTO(day.atStartOfDay().plusSeconds(second), bpm)));
+        }
+        return samples;
+    }
+}
+
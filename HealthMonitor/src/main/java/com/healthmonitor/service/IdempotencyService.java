@@ -0,0 +1,245 @@
+package com.healthmonitor.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.healthmonitor.exception.IdempotencyException;
+import com.healthmonitor.model.IdempotencyRecord;
+import com.healthmonitor.repository.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Service for requests sent with an Idempotency-Key header
+ * 
+ * The first request with a key runs normally; its successful response is stored in the
+ * idempotency_keys table in the same transaction as the request's own writes, and kept
+ * in a bounded Caffeine cache. Retries with the same key get the stored response back
+ * without touching the database. Concurrent retries of a request that is still running
+ * wait for it through a per-key future, so no lock is shared between different keys.
+ */
+@Service
+public class IdempotencyService {
+    
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+    
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long IN_FLIGHT_WAIT_SECONDS = 30;
+    
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final Cache<String, StoredResponse> responses;
+    private final ConcurrentHashMap<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+    
+    @Autowired
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${healthmonitor.idempotency.ttl:PT24H}") Duration ttl,
+                              @Value("${healthmonitor.idempotency.cache-size:10000}") long cacheSize) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.ttl = ttl;
+        this.responses = Caffeine.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, responses, "idempotency");
+    }
+    
+    /**
+     * Run a request at most once per idempotency key
+     * 
+     * @param scope Endpoint and owner the key belongs to, e.g. "activities:42"
+     * @param key Value of the Idempotency-Key header; null runs the request without deduplication
+     * @param request Request parameters, used to reject a key reused for a different request
+     * @param bodyType Type of the response body, used to rebuild a stored response
+     * @param action Handles the request; only 2xx responses are stored
+     * @return Response of the first request with this key
+     */
+    public <T> ResponseEntity<T> execute(String scope, String key, Object request,
+                                         Class<T> bodyType, Supplier<ResponseEntity<T>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+        
+        String cacheKey = scope + '\n' + key;
+        String requestHash = hash(request);
+        while (true) {
+            StoredResponse cached = responses.getIfPresent(cacheKey);
+            if (cached != null) {
+                return replay(cached, requestHash, bodyType);
+            }
+            
+            CompletableFuture<StoredResponse> claim = new CompletableFuture<>();
+            CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(cacheKey, claim);
+            if (running != null) {
+                StoredResponse result = await(running);
+                if (result != null) {
+                    return replay(result, requestHash, bodyType);
+                }
+                // The other request failed without a stored response; try again
+                continue;
+            }
+            
+            StoredResponse result = null;
+            try {
+                Optional<IdempotencyRecord> existing = idempotencyRecordRepository.findByScopeAndIdempotencyKey(scope, key);
+                if (existing.isPresent() && !isExpired(existing.get())) {
+                    result = new StoredResponse(existing.get());
+                    responses.put(cacheKey, result);
+                    return replay(result, requestHash, bodyType);
+                }
+                
+                ResponseEntity<T> response = transactionTemplate.execute(status -> {
+                    existing.ifPresent(expired -> {
+                        idempotencyRecordRepository.delete(expired);
+                        idempotencyRecordRepository.flush();
+                    });
+                    ResponseEntity<T> handled = action.get();
+                    if (handled.getStatusCode().is2xxSuccessful()) {
+                        idempotencyRecordRepository.saveAndFlush(new IdempotencyRecord(
+                            scope, key, requestHash, handled.getStatusCode().value(), toJson(handled.getBody())));
+                    }
+                    return handled;
+                });
+                
+                if (response.getStatusCode().is2xxSuccessful()) {
+                    result = new StoredResponse(requestHash, response.getStatusCode().value(),
+                                                toJson(response.getBody()));
+                    responses.put(cacheKey, result);
+                }
+                return response;
+            } catch (DataIntegrityViolationException e) {
+                // Another instance stored the same key first; this request's writes were rolled back
+                IdempotencyRecord winner = idempotencyRecordRepository.findByScopeAndIdempotencyKey(scope, key)
+                    .orElseThrow(() -> e);
+                result = new StoredResponse(winner);
+                responses.put(cacheKey, result);
+                return replay(result, requestHash, bodyType);
+            } finally {
+                inFlight.remove(cacheKey, claim);
+                claim.complete(result);
+            }
+        }
+    }
+    
+    /**
+     * Delete stored responses older than the configured TTL
+     */
+    @Scheduled(fixedDelayString = "${healthmonitor.idempotency.cleanup-interval-ms:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = idempotencyRecordRepository.deleteCreatedBefore(LocalDateTime.now().minus(ttl));
+        if (deleted > 0) {
+            log.debug("Purged {} expired idempotency keys", deleted);
+        }
+    }
+    
+    private boolean isExpired(IdempotencyRecord record) {
+        return record.getCreatedAt().isBefore(LocalDateTime.now().minus(ttl));
+    }
+    
+    private <T> ResponseEntity<T> replay(StoredResponse stored, String requestHash, Class<T> bodyType) {
+        if (!stored.requestHash.equals(requestHash)) {
+            throw new IdempotencyException(HttpStatus.UNPROCESSABLE_ENTITY,
+                                           HEADER + " was already used for a different request");
+        }
+        try {
+            T body = stored.body != null ? objectMapper.readValue(stored.body, bodyType) : null;
+            return ResponseEntity.status(stored.status)
+                .header(REPLAYED_HEADER, "true")
+                .body(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored response cannot be read", e);
+        }
+    }
+    
+    private StoredResponse await(CompletableFuture<StoredResponse> running) {
+        try {
+            return running.get(IN_FLIGHT_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyException(HttpStatus.CONFLICT, "A request with this " + HEADER + " is in progress");
+        } catch (TimeoutException | ExecutionException e) {
+            throw new IdempotencyException(HttpStatus.CONFLICT, "A request with this " + HEADER + " is in progress");
+        }
+    }
+    
+    private String toJson(Object body) {
+        try {
+            return body != null ? objectMapper.writeValueAsString(body) : null;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Response cannot be stored", e);
+        }
+    }
+    
+    private String hash(Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String json = toJson(request);
+            byte[] bytes = json != null ? json.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            return HexFormat.of().formatHex(digest.digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+    
+    /**
+     * A response as stored for replay
+     */
+    private static final class StoredResponse {
+        private final String requestHash;
+        private final int status;
+        private final String body;
+        
+        private StoredResponse(String requestHash, int status, String body) {
+            this.requestHash = requestHash;
+            this.status = status;
+            this.body = body;
+        }
+        
+        private StoredResponse(IdempotencyRecord record) {
+            this(record.getRequestHash(), record.getResponseStatus(), record.getResponseBody());
+        }
+    }
+}
+
@@ -0,0 +1,96 @@
+package com.healthmonitor.service;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Opaque cursor tokens for keyset pagination
+ * A token holds the sort keys of the last item of a page, so the next page starts
+ * right after it with an index seek instead of skipping the previous pages.
+ */
+public final class KeysetCursor {
+    
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+    
+    /**
+     * Response header with the cursor of the page after a capped list, when there is one
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    
+    private static final String SEPARATOR = "|";
+    
+    private KeysetCursor() {
+    }
+    
+    /**
+     * Clamp a requested page size to 1..MAX_PAGE_SIZE
+     */
+    public static int pageSize(int requested) {
+        return Math.max(1, Math.min(requested, MAX_PAGE_SIZE));
+    }
+    
+    /**
+     * First page of a list read with a limit of MAX_PAGE_SIZE + 1: the extra item only tells
+     * that there is a next page
+     * 
+     * @param positionKeys Keyset position of an item, as a map of sort key names to values
+     */
+    public static <T> Window<T> firstPage(List<T> items, Function<T, Map<String, ?>> positionKeys) {
+        boolean hasNext = items.size() > MAX_PAGE_SIZE;
+        List<T> page = hasNext ? items.subList(0, MAX_PAGE_SIZE) : items;
+        return Window.from(page, index -> ScrollPosition.forward(positionKeys.apply(page.get(index))), hasNext);
+    }
+    
+    /**
+     * Token for the page after a window of keyset positions, or null if it is the last page
+     * 
+     * @param keyNames Sort keys of the token, in order
+     */
+    public static String nextCursor(Window<?> page, String... keyNames) {
+        if (!page.hasNext() || page.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> keys = ((KeysetScrollPosition) page.positionAt(page.size() - 1)).getKeys();
+        return encode(Arrays.stream(keyNames).map(keys::get).toArray());
+    }
+    
+    /**
+     * Build a token from the sort keys of the last item on a page
+     */
+    public static String encode(Object... keys) {
+        String joined = Arrays.stream(keys)
+            .map(String::valueOf)
+            .collect(Collectors.joining(SEPARATOR));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Read the sort keys from a token
+     * 
+     * @param keyCount Number of keys the token must contain
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static String[] decode(String cursor, int keyCount) {
+        try {
+            String joined = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] keys = joined.split("\\|", -1);
+            if (keys.length == keyCount) {
+                return keys;
+            }
+        } catch (IllegalArgumentException e) {
+            // Not Base64; reported below
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+}
+
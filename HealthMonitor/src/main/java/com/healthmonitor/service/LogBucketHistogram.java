@@ -0,0 +1,103 @@
+package com.healthmonitor.service;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mergeable quantile sketch over positive values, with counts in logarithmic buckets
+ * 
+ * Bucket i > 0 holds the values in (min * gamma^(i-1), min * gamma^i], so a bucket's
+ * width is a fixed fraction of its values (gamma = 1.02, about 1% relative error at the
+ * bucket midpoint); bucket 0 holds everything up to min, the last bucket everything above
+ * max. Unlike t-digest or KLL, a value can be removed again by adding -1 to its bucket,
+ * which is what lets a day's sketch follow values that are corrected many times. Counts
+ * are plain sums, so sketches merge by adding them, updates commute, and a count may
+ * dip below zero while a removal overtakes its insert.
+ */
+final class LogBucketHistogram {
+    
+    private static final double GAMMA = 1.02;
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    
+    private final double minValue;
+    private final AtomicIntegerArray counts;
+    private final AtomicLong total = new AtomicLong();
+    
+    /**
+     * @param minValue Upper bound of the first bucket
+     * @param maxValue Lower bound of the last bucket
+     */
+    LogBucketHistogram(double minValue, double maxValue) {
+        this.minValue = minValue;
+        this.counts = new AtomicIntegerArray(bucketCount(minValue, maxValue));
+    }
+    
+    /**
+     * Number of buckets a histogram over the given range has
+     */
+    static int bucketCount(double minValue, double maxValue) {
+        return (int) Math.ceil(Math.log(maxValue / minValue) / LOG_GAMMA) + 2;
+    }
+    
+    int size() {
+        return counts.length();
+    }
+    
+    int bucketOf(double value) {
+        if (value <= minValue) {
+            return 0;
+        }
+        int bucket = (int) Math.ceil(Math.log(value / minValue) / LOG_GAMMA);
+        return Math.min(bucket, counts.length() - 1);
+    }
+    
+    /**
+     * Add a number of occurrences of a value; negative to remove them
+     */
+    void add(double value, int delta) {
+        addCount(bucketOf(value), delta);
+    }
+    
+    int getCount(int bucket) {
+        return counts.get(bucket);
+    }
+    
+    void addCount(int bucket, int delta) {
+        counts.addAndGet(bucket, delta);
+        total.addAndGet(delta);
+    }
+    
+    long getTotal() {
+        return total.get();
+    }
+    
+    /**
+     * Add the counts below a value's bucket, in it, and in total to rank[0], rank[1] and rank[2]
+     * Only the buckets up to the value's are read. Calling this for several histograms ranks
+     * the value in their merge without building it.
+     */
+    void rank(double value, long[] rank) {
+        int bucket = bucketOf(value);
+        long below = 0;
+        for (int i = 0; i < bucket; i++) {
+            below += counts.get(i);
+        }
+        rank[0] += below;
+        rank[1] += counts.get(bucket);
+        rank[2] += total.get();
+    }
+    
+    /**
+     * Percentile rank from the counts collected by rank(): the share of values below the
+     * value, counting half of those in its bucket, or null if there are no values
+     * Counts read during concurrent updates may be off by those updates, so it is clamped to 0-100.
+     */
+    static Double percentile(long[] rank) {
+        if (rank[2] <= 0) {
+            return null;
+        }
+        double percentile = 100.0 * (rank[0] + rank[1] / 2.0) / rank[2];
+        return Math.min(100.0, Math.max(0.0, percentile));
+    }
+}
+
@@ -0,0 +1,553 @@
+package com.healthmonitor.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.healthmonitor.dto.PercentileRankDTO;
+import com.healthmonitor.model.AgeBand;
+import com.healthmonitor.model.DailyMetricsChange;
+import com.healthmonitor.model.DailyMetricsValues;
+import com.healthmonitor.model.User;
+import com.healthmonitor.repository.DailyMetricsSample;
+import com.healthmonitor.repository.HealthMetricsRepository;
+import com.healthmonitor.repository.UserBodyProfile;
+import com.healthmonitor.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Percentile ranks of users' daily steps, sleep and heart rate within their cohort
+ * 
+ * Keeps a LogBucketHistogram per day, metric and cohort (age band on that day and
+ * gender), plus one for the whole population, for the last retention-days days. Every committed write to a daily row moves
+ * the row's old values out of the histograms and its new values in, so the histograms
+ * always describe the stored rows and a rank reads at most a few hundred buckets,
+ * without touching the database. Zero values mean "not recorded" and are not counted.
+ * 
+ * A user's cohort is resolved inside the write's transaction. A change that could not be
+ * applied marks its day dirty, and the dirty days are recounted from the daily rows.
+ * 
+ * The histograms are written to the snapshot file on shutdown and read back on the next
+ * start. The file is deleted once read, so after a crash, or on first start, they are
+ * rebuilt from the daily rows of the retention window instead. No snapshot is written
+ * while a day is still dirty.
+ */
+@Service
+public class MetricsPercentileService implements DailyMetricsListener {
+    
+    private static final Logger log = LoggerFactory.getLogger(MetricsPercentileService.class);
+    
+    private static final int MAGIC = 0x484D5053;
+    private static final int FORMAT_VERSION = 1;
+    
+    private static final AgeBand[] AGE_BANDS = AgeBand.values();
+    private static final User.Gender[] GENDERS = User.Gender.values();
+    private static final Metric[] METRICS = Metric.values();
+    private static final int COHORTS = AGE_BANDS.length * GENDERS.length;
+    
+    // Histogram slots per day and metric: one per cohort, then the whole population
+    private static final int POPULATION = COHORTS;
+    private static final int SLOTS = COHORTS + 1;
+    
+    /**
+     * Daily values that percentile ranks are kept for
+     */
+    public enum Metric {
+        STEPS("steps", 1.0, 1_000_000.0),
+        SLEEP_HOURS("sleepHours", 0.05, 24.0),
+        HEART_RATE_AVG("heartRateAvg", 20.0, 255.0);
+        
+        private final String key;
+        private final double minValue;
+        private final double maxValue;
+        
+        Metric(String key, double minValue, double maxValue) {
+            this.key = key;
+            this.minValue = minValue;
+            this.maxValue = maxValue;
+        }
+        
+        /**
+         * Name of the metric in API responses
+         */
+        public String getKey() {
+            return key;
+        }
+        
+        private double valueOf(DailyMetricsValues values) {
+            switch (this) {
+                case STEPS:
+                    return values.getTotals().getSteps();
+                case SLEEP_HOURS:
+                    return values.getSleepHours();
+                default:
+                    return values.getHeartRateAvg();
+            }
+        }
+        
+        private double valueOf(DailyMetricsSample sample) {
+            switch (this) {
+                case STEPS:
+                    return sample.getSteps();
+                case SLEEP_HOURS:
+                    return sample.getSleepHours();
+                default:
+                    return sample.getHeartRateAvg();
+            }
+        }
+    }
+    
+    private final HealthMetricsRepository healthMetricsRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate readTransaction;
+    private final Path snapshotFile;
+    private final int retentionDays;
+    private final ConcurrentHashMap<LocalDate, DaySketches> days = new ConcurrentHashMap<>();
+    private final Set<LocalDate> dirtyDays = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Long, Integer> movingUsers = new ConcurrentHashMap<>();
+    private final Cache<Long, UserBodyProfile> profiles;
+    
+    @Autowired
+    public MetricsPercentileService(HealthMetricsRepository healthMetricsRepository,
+                                    UserRepository userRepository,
+                                    PlatformTransactionManager transactionManager,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${healthmonitor.percentiles.snapshot-file:data/percentiles.snapshot}")
+                                    String snapshotFile,
+                                    @Value("${healthmonitor.percentiles.retention-days:35}") int retentionDays,
+                                    @Value("${healthmonitor.users.cache.max-size:10000}") long maxProfiles) {
+        this.healthMetricsRepository = healthMetricsRepository;
+        this.userRepository = userRepository;
+        this.snapshotFile = Paths.get(snapshotFile);
+        this.retentionDays = Math.max(1, retentionDays);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+        
+        this.profiles = Caffeine.newBuilder()
+            .maximumSize(maxProfiles)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, profiles, "percentileProfiles");
+    }
+    
+    /**
+     * Restore the histograms from the snapshot, or rebuild them from the daily rows
+     */
+    @PostConstruct
+    public void restore() {
+        if (Files.exists(snapshotFile)) {
+            try {
+                int restored = readSnapshot();
+                Files.delete(snapshotFile);
+                log.info("Restored percentile histograms of {} days from {}", restored, snapshotFile);
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Cannot read percentile snapshot {}, rebuilding: {}", snapshotFile, e.getMessage());
+                days.clear();
+            }
+        }
+        rebuild();
+    }
+    
+    /**
+     * Write the histograms to the snapshot file
+     * Runs after the beans that write metrics on shutdown have flushed, since they depend on this one.
+     */
+    @PreDestroy
+    public void snapshot() {
+        purgeExpiredDays();
+        rebuildDirtyDays();
+        if (!dirtyDays.isEmpty()) {
+            log.warn("Percentile histograms of {} days missed changes; they will be rebuilt on the next start",
+                     dirtyDays.size());
+            return;
+        }
+        try {
+            Files.createDirectories(snapshotFile.toAbsolutePath().getParent());
+            Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                writeSnapshot(out);
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Wrote percentile histograms of {} days to {}", days.size(), snapshotFile);
+        } catch (IOException e) {
+            log.error("Cannot write percentile snapshot {}; it will be rebuilt on the next start: {}",
+                      snapshotFile, e.getMessage());
+        }
+    }
+    
+    /**
+     * Drop the histograms of days that left the retention window
+     */
+    @Scheduled(fixedDelayString = "${healthmonitor.percentiles.purge-interval-ms:3600000}")
+    public void purgeExpiredDays() {
+        LocalDate firstDay = firstRetainedDay();
+        days.keySet().removeIf(date -> date.isBefore(firstDay));
+        dirtyDays.removeIf(date -> date.isBefore(firstDay));
+    }
+    
+    /**
+     * Recount the dirty days from the daily rows
+     * A day that changes while it is read stays dirty for the next run.
+     */
+    @Scheduled(fixedDelayString = "${healthmonitor.percentiles.repair-interval-ms:10000}")
+    public void rebuildDirtyDays() {
+        if (dirtyDays.isEmpty()) {
+            return;
+        }
+        List<LocalDate> dates = new ArrayList<>();
+        for (LocalDate date : List.copyOf(dirtyDays)) {
+            dirtyDays.remove(date);
+            if (isRetained(date)) {
+                dates.add(date);
+            }
+        }
+        
+        // Seen before the rows are read, so a change committed after the read started always shows up
+        Map<LocalDate, DaySketches> seen = new HashMap<>();
+        Map<LocalDate, Long> seenChanges = new HashMap<>();
+        Map<LocalDate, DaySketches> rebuilt = new HashMap<>();
+        for (LocalDate date : dates) {
+            DaySketches current = days.get(date);
+            seen.put(date, current);
+            seenChanges.put(date, current != null ? current.changes : 0L);
+            rebuilt.put(date, new DaySketches());
+        }
+        try {
+            readTransaction.executeWithoutResult(status -> {
+                try (Stream<DailyMetricsSample> samples = healthMetricsRepository.streamSamplesByDateIn(dates)) {
+                    samples.forEach(sample -> rebuilt.get(sample.getDate()).add(sample.getProfile(), sample, 1));
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Cannot recount percentile histograms of {} days: {}", dates.size(), e.getMessage());
+            dirtyDays.addAll(dates);
+            return;
+        }
+        
+        for (LocalDate date : dates) {
+            days.compute(date, (d, current) -> {
+                if (current == seen.get(d) && (current != null ? current.changes : 0L) == seenChanges.get(d)) {
+                    return rebuilt.get(d);
+                }
+                dirtyDays.add(d);
+                return current;
+            });
+        }
+    }
+    
+    /**
+     * Resolve the user's cohort while the write's transaction is still open
+     */
+    @Override
+    public void prepareDailyMetricsChange(List<DailyMetricsChange> changes) {
+        findProfile(changes.get(0).getUserId());
+    }
+    
+    @Override
+    public void onDailyMetricsChanged(List<DailyMetricsChange> changes) {
+        Long userId = changes.get(0).getUserId();
+        UserBodyProfile profile = profiles.getIfPresent(userId);
+        if (profile == null || movingUsers.containsKey(userId)) {
+            // Not found, or evicted since the write resolved it; or its days are being moved
+            // from samples that may predate this change
+            onDailyMetricsMissed(changes);
+            return;
+        }
+        for (DailyMetricsChange change : changes) {
+            int cohort = cohortOf(profile, change.getDate());
+            apply(change.getDate(), sketches -> {
+                for (Metric metric : METRICS) {
+                    double before = metric.valueOf(change.getBefore());
+                    double after = metric.valueOf(change.getAfter());
+                    if (before != after) {
+                        sketches.add(metric, cohort, before, -1);
+                        sketches.add(metric, cohort, after, 1);
+                    }
+                }
+            });
+        }
+    }
+    
+    @Override
+    public void onDailyMetricsMissed(List<DailyMetricsChange> changes) {
+        for (DailyMetricsChange change : changes) {
+            if (isRetained(change.getDate())) {
+                dirtyDays.add(change.getDate());
+            }
+        }
+    }
+    
+    /**
+     * Move a user's retained days to another cohort once the current transaction commits,
+     * e.g. after a change of date of birth or gender
+     * The days are read now, so this also works for a user whose rows are being deleted.
+     * Changes of the user's rows that commit between that read and the move may or may not
+     * be in the samples, so until the move is done they are not applied but mark their days
+     * dirty, and the repair pass recounts them.
+     * 
+     * @param from The cohort profile the days were counted under
+     * @param to The new profile, or null to remove the days
+     */
+    public void moveUser(Long userId, UserBodyProfile from, UserBodyProfile to) {
+        boolean inTransaction = TransactionSynchronizationManager.isSynchronizationActive();
+        if (inTransaction) {
+            // Set before the read, so no change applied after it is missed
+            movingUsers.merge(userId, 1, Integer::sum);
+        }
+        List<DailyMetricsSample> samples;
+        try {
+            samples = healthMetricsRepository.findSamplesByUserFrom(userId, firstRetainedDay());
+        } catch (RuntimeException e) {
+            if (inTransaction) {
+                endMove(userId);
+            }
+            throw e;
+        }
+        Runnable move = () -> {
+            if (to != null) {
+                profiles.put(userId, to);
+            } else {
+                profiles.invalidate(userId);
+            }
+            for (DailyMetricsSample sample : samples) {
+                add(from, sample, -1);
+                if (to != null) {
+                    add(to, sample, 1);
+                }
+            }
+        };
+        
+        if (inTransaction) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    move.run();
+                }
+                
+                @Override
+                public void afterCompletion(int status) {
+                    endMove(userId);
+                }
+            });
+        } else {
+            move.run();
+        }
+    }
+    
+    private void endMove(Long userId) {
+        movingUsers.computeIfPresent(userId, (id, moves) -> moves > 1 ? moves - 1 : null);
+    }
+    
+    /**
+     * Rank a value among the values of a day, in the cohort of a profile and in the whole population
+     * 
+     * @return The rank, or null if the value is not positive or the day is not retained
+     */
+    public PercentileRankDTO rank(UserBodyProfile profile, LocalDate date, Metric metric, double value) {
+        DaySketches sketches = days.get(date);
+        if (sketches == null || value <= 0) {
+            return null;
+        }
+        
+        LogBucketHistogram[] histograms = sketches.histograms[metric.ordinal()];
+        long[] cohortRank = new long[3];
+        long[] populationRank = new long[3];
+        histograms[cohortOf(profile, date)].rank(value, cohortRank);
+        histograms[POPULATION].rank(value, populationRank);
+        return new PercentileRankDTO(value,
+                                     LogBucketHistogram.percentile(cohortRank),
+                                     cohortRank[2],
+                                     LogBucketHistogram.percentile(populationRank),
+                                     populationRank[2]);
+    }
+    
+    private void rebuild() {
+        LocalDate firstDay = firstRetainedDay();
+        long started = System.nanoTime();
+        AtomicLong rows = new AtomicLong();
+        readTransaction.executeWithoutResult(status -> {
+            try (Stream<DailyMetricsSample> samples = healthMetricsRepository.streamSamplesFrom(firstDay)) {
+                samples.forEach(sample -> {
+                    add(sample.getProfile(), sample, 1);
+                    rows.incrementAndGet();
+                });
+            }
+        });
+        log.info("Rebuilt percentile histograms from {} daily rows since {} in {} ms",
+                 rows.get(), firstDay, (System.nanoTime() - started) / 1_000_000);
+    }
+    
+    private void add(UserBodyProfile profile, DailyMetricsSample sample, int delta) {
+        apply(sample.getDate(), sketches -> sketches.add(profile, sample, delta));
+    }
+    
+    /**
+     * Update the histograms of a day, created on first use; days outside the window are skipped
+     * Runs inside the map's compute function, so it never overlaps the swap of a recounted day.
+     */
+    private void apply(LocalDate date, Consumer<DaySketches> change) {
+        if (!isRetained(date)) {
+            return;
+        }
+        days.compute(date, (d, sketches) -> {
+            DaySketches updated = sketches != null ? sketches : new DaySketches();
+            change.accept(updated);
+            updated.changes++;
+            return updated;
+        });
+    }
+    
+    /**
+     * Look up a user's cohort profile, reading it in the current transaction if it is not cached
+     */
+    private UserBodyProfile findProfile(Long userId) {
+        return profiles.get(userId, id -> userRepository.findBodyProfileById(id).orElse(null));
+    }
+    
+    /**
+     * Whether a day is in the window; days up to tomorrow are accepted, for clients ahead of the server's time zone
+     */
+    private boolean isRetained(LocalDate date) {
+        return !date.isBefore(firstRetainedDay()) && !date.isAfter(LocalDate.now().plusDays(1));
+    }
+    
+    private LocalDate firstRetainedDay() {
+        return LocalDate.now().minusDays(retentionDays - 1);
+    }
+    
+    private static int cohortOf(UserBodyProfile profile, LocalDate date) {
+        return AgeBand.of(profile.getAge(date.getYear())).ordinal() * GENDERS.length + profile.getGender().ordinal();
+    }
+    
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(SLOTS);
+        out.writeInt(METRICS.length);
+        for (Metric metric : METRICS) {
+            out.writeInt(LogBucketHistogram.bucketCount(metric.minValue, metric.maxValue));
+        }
+        
+        Map<LocalDate, DaySketches> retained = Map.copyOf(days);
+        out.writeInt(retained.size());
+        for (Map.Entry<LocalDate, DaySketches> day : retained.entrySet()) {
+            out.writeLong(day.getKey().toEpochDay());
+            for (LogBucketHistogram[] histograms : day.getValue().histograms) {
+                for (LogBucketHistogram histogram : histograms) {
+                    int used = 0;
+                    for (int bucket = 0; bucket < histogram.size(); bucket++) {
+                        if (histogram.getCount(bucket) != 0) {
+                            used++;
+                        }
+                    }
+                    out.writeInt(used);
+                    for (int bucket = 0; bucket < histogram.size() && used > 0; bucket++) {
+                        int count = histogram.getCount(bucket);
+                        if (count != 0) {
+                            out.writeInt(bucket);
+                            out.writeInt(count);
+                            used--;
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    private int readSnapshot() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != SLOTS
+                || in.readInt() != METRICS.length) {
+                throw new IOException("Unsupported snapshot format");
+            }
+            for (Metric metric : METRICS) {
+                if (in.readInt() != LogBucketHistogram.bucketCount(metric.minValue, metric.maxValue)) {
+                    throw new IOException("Snapshot has a different bucket layout for " + metric.key);
+                }
+            }
+            
+            LocalDate firstDay = firstRetainedDay();
+            int dayCount = in.readInt();
+            for (int d = 0; d < dayCount; d++) {
+                LocalDate date = LocalDate.ofEpochDay(in.readLong());
+                DaySketches sketches = new DaySketches();
+                for (LogBucketHistogram[] histograms : sketches.histograms) {
+                    for (LogBucketHistogram histogram : histograms) {
+                        int used = in.readInt();
+                        for (int i = 0; i < used; i++) {
+                            histogram.addCount(in.readInt(), in.readInt());
+                        }
+                    }
+                }
+                if (!date.isBefore(firstDay)) {
+                    days.put(date, sketches);
+                }
+            }
+            return days.size();
+        }
+    }
+    
+    /**
+     * Histograms of one day, per metric and slot (cohort or population)
+     */
+    private static final class DaySketches {
+        private final LogBucketHistogram[][] histograms = new LogBucketHistogram[METRICS.length][SLOTS];
+        // Changes applied so far; only incremented inside the map's compute function
+        private volatile long changes;
+        
+        private DaySketches() {
+            for (Metric metric : METRICS) {
+                for (int slot = 0; slot < SLOTS; slot++) {
+                    histograms[metric.ordinal()][slot] = new LogBucketHistogram(metric.minValue, metric.maxValue);
+                }
+            }
+        }
+        
+        private void add(Metric metric, int cohort, double value, int delta) {
+            if (value > 0) {
+                histograms[metric.ordinal()][cohort].add(value, delta);
+                histograms[metric.ordinal()][POPULATION].add(value, delta);
+            }
+        }
+        
+        private void add(UserBodyProfile profile, DailyMetricsSample sample, int delta) {
+            int cohort = cohortOf(profile, sample.getDate());
+            for (Metric metric : METRICS) {
+                add(metric, cohort, metric.valueOf(sample), delta);
+            }
+        }
+    }
+}
+
@@ -0,0 +1,444 @@
+package com.healthmonitor.service;
+
+import com.healthmonitor.dto.MetricTrendDTO;
+import com.healthmonitor.model.DailyMetricsChange;
+import com.healthmonitor.model.DailyMetricsValues;
+import com.healthmonitor.repository.DailyMetricsSample;
+import com.healthmonitor.repository.HealthMetricsRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Rolling 7- and 28-day sums and exponentially weighted averages of users' daily
+ * steps, calories burned, active minutes and sleep
+ * 
+ * Every committed write to a daily row adds the difference it made to the user's
+ * state, in constant time whichever day it corrected: the day's slot in a ring of the
+ * last 28 days (plus tomorrow) and the window sums change by the difference, and the
+ * averages by the difference times the day's weight, decay^age. When a day passes the
+ * sums drop the days that left their window and the averages are multiplied by the
+ * decay, so reading the trends never queries the database.
+ * 
+ * Zero values mean "not recorded": they are not counted in the averages, which sum the
+ * weights of the recorded days alongside the weighted values and divide the two. The
+ * state is rebuilt from the daily rows of the last HISTORY_DAYS days on start; older days
+ * carry less than 0.1% of the 28-day average's weight. Users without a recorded day in
+ * that history have no state. A user whose change could not be applied is marked dirty,
+ * and the dirty users' state is rebuilt from their daily rows.
+ */
+@Service
+public class MetricsTrendService implements DailyMetricsListener {
+    
+    private static final Logger log = LoggerFactory.getLogger(MetricsTrendService.class);
+    
+    private static final int SHORT_WINDOW = 7;
+    private static final int LONG_WINDOW = 28;
+    private static final int HISTORY_DAYS = 4 * LONG_WINDOW;
+    
+    // Spans of the averages: alpha = 2 / (span + 1)
+    private static final double SHORT_DECAY = 1.0 - 2.0 / (SHORT_WINDOW + 1);
+    private static final double LONG_DECAY = 1.0 - 2.0 / (LONG_WINDOW + 1);
+    
+    // Below this 28-day weight no recorded day is left in the history
+    private static final double MIN_LONG_WEIGHT = Math.pow(LONG_DECAY, HISTORY_DAYS - 0.5);
+    
+    // Ring slots: the long window plus tomorrow, for clients ahead of the server's time zone
+    private static final int RING_DAYS = LONG_WINDOW + 1;
+    
+    private static final Metric[] METRICS = Metric.values();
+    
+    /**
+     * Daily values that trends are kept for
+     */
+    public enum Metric {
+        STEPS("steps"),
+        CALORIES_BURNED("caloriesBurned"),
+        ACTIVE_MINUTES("activeMinutes"),
+        SLEEP_HOURS("sleepHours");
+        
+        private final String key;
+        
+        Metric(String key) {
+            this.key = key;
+        }
+        
+        /**
+         * Name of the metric in API responses
+         */
+        public String getKey() {
+            return key;
+        }
+        
+        private double valueOf(DailyMetricsValues values) {
+            switch (this) {
+                case STEPS:
+                    return values.getTotals().getSteps();
+                case CALORIES_BURNED:
+                    return values.getTotals().getCaloriesBurned();
+                case ACTIVE_MINUTES:
+                    return values.getTotals().getActiveMinutes();
+                default:
+                    return values.getSleepHours();
+            }
+        }
+        
+        private double valueOf(DailyMetricsSample sample) {
+            switch (this) {
+                case STEPS:
+                    return sample.getSteps();
+                case CALORIES_BURNED:
+                    return sample.getCaloriesBurned();
+                case ACTIVE_MINUTES:
+                    return sample.getActiveMinutes();
+                default:
+                    return sample.getSleepHours();
+            }
+        }
+    }
+    
+    private final HealthMetricsRepository healthMetricsRepository;
+    private final TransactionTemplate readTransaction;
+    private final ConcurrentHashMap<Long, UserTrends> trends = new ConcurrentHashMap<>();
+    private final Set<Long> dirtyUsers = ConcurrentHashMap.newKeySet();
+    
+    @Autowired
+    public MetricsTrendService(HealthMetricsRepository healthMetricsRepository,
+                               PlatformTransactionManager transactionManager) {
+        this.healthMetricsRepository = healthMetricsRepository;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        readTransaction.setReadOnly(true);
+    }
+    
+    /**
+     * Rebuild the trends from the daily rows of the history
+     */
+    @PostConstruct
+    public void rebuild() {
+        long today = LocalDate.now().toEpochDay();
+        LocalDate firstDay = LocalDate.ofEpochDay(today - HISTORY_DAYS + 1);
+        long started = System.nanoTime();
+        AtomicLong rows = new AtomicLong();
+        readTransaction.executeWithoutResult(status -> {
+            try (Stream<DailyMetricsSample> samples = healthMetricsRepository.streamSamplesFrom(firstDay)) {
+                samples.forEach(sample -> {
+                    if (sample.getDate().toEpochDay() > today + 1) {
+                        return;
+                    }
+                    trends.compute(sample.getUserId(), (userId, state) -> {
+                        UserTrends updated = state != null ? state : new UserTrends(today);
+                        updated.add(sample);
+                        return updated;
+                    });
+                    rows.incrementAndGet();
+                });
+            }
+        });
+        trends.values().removeIf(UserTrends::isEmpty);
+        log.info("Rebuilt trends of {} users from {} daily rows since {} in {} ms",
+                 trends.size(), rows.get(), firstDay, (System.nanoTime() - started) / 1_000_000);
+    }
+    
+    /**
+     * Move every user's trends to today and drop those without a recorded day left
+     */
+    @Scheduled(fixedDelayString = "${healthmonitor.trends.purge-interval-ms:3600000}")
+    public void purgeIdleUsers() {
+        long today = LocalDate.now().toEpochDay();
+        for (Long userId : trends.keySet()) {
+            trends.computeIfPresent(userId, (id, state) -> {
+                state.advanceTo(today);
+                return state.isEmpty() ? null : state;
+            });
+        }
+    }
+    
+    /**
+     * Rebuild the dirty users' trends from their daily rows
+     * A user whose trends change while the rows are read stays dirty for the next run.
+     */
+    @Scheduled(fixedDelayString = "${healthmonitor.trends.repair-interval-ms:10000}")
+    public void rebuildDirtyUsers() {
+        for (Long userId : List.copyOf(dirtyUsers)) {
+            dirtyUsers.remove(userId);
+            long today = LocalDate.now().toEpochDay();
+            LocalDate firstDay = LocalDate.ofEpochDay(today - HISTORY_DAYS + 1);
+            
+            // Seen before the rows are read, so a change committed after the read started always shows up
+            UserTrends seen = trends.get(userId);
+            long seenChanges = seen != null ? seen.changes : 0;
+            UserTrends rebuilt = new UserTrends(today);
+            try {
+                readTransaction.executeWithoutResult(status -> {
+                    for (DailyMetricsSample sample : healthMetricsRepository.findSamplesByUserFrom(userId, firstDay)) {
+                        if (sample.getDate().toEpochDay() <= today + 1) {
+                            rebuilt.add(sample);
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.warn("Cannot rebuild trends of user {}: {}", userId, e.getMessage());
+                dirtyUsers.add(userId);
+                continue;
+            }
+            
+            trends.compute(userId, (id, current) -> {
+                if (current == seen && (current != null ? current.changes : 0) == seenChanges) {
+                    return rebuilt.isEmpty() ? null : rebuilt;
+                }
+                dirtyUsers.add(id);
+                return current;
+            });
+        }
+    }
+    
+    @Override
+    public void onDailyMetricsChanged(List<DailyMetricsChange> changes) {
+        long today = LocalDate.now().toEpochDay();
+        trends.compute(changes.get(0).getUserId(), (userId, state) -> {
+            UserTrends updated = state != null ? state : new UserTrends(today);
+            updated.advanceTo(today);
+            for (DailyMetricsChange change : changes) {
+                long day = change.getDate().toEpochDay();
+                if (day > today + 1) {
+                    continue;
+                }
+                for (Metric metric : METRICS) {
+                    double before = metric.valueOf(change.getBefore());
+                    double after = metric.valueOf(change.getAfter());
+                    if (before != after) {
+                        updated.add(metric, day, after - before, recorded(after) - recorded(before));
+                    }
+                }
+            }
+            updated.changes++;
+            return updated.isEmpty() ? null : updated;
+        });
+    }
+    
+    @Override
+    public void onDailyMetricsMissed(List<DailyMetricsChange> changes) {
+        dirtyUsers.add(changes.get(0).getUserId());
+    }
+    
+    /**
+     * Drop a user's trends once the current transaction commits, e.g. when the user is deleted
+     */
+    public void removeUser(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    trends.remove(userId);
+                    dirtyUsers.remove(userId);
+                }
+            });
+        } else {
+            trends.remove(userId);
+            dirtyUsers.remove(userId);
+        }
+    }
+    
+    /**
+     * Get the trends of a user's metrics for the windows ending on a day
+     * 
+     * @return The trends by metric key, in Metric order
+     */
+    public Map<String, MetricTrendDTO> getTrends(Long userId, LocalDate today) {
+        Map<String, MetricTrendDTO> result = new LinkedHashMap<>();
+        trends.computeIfPresent(userId, (id, state) -> {
+            state.advanceTo(today.toEpochDay());
+            for (Metric metric : METRICS) {
+                result.put(metric.getKey(), state.toTrend(metric));
+            }
+            return state;
+        });
+        if (result.isEmpty()) {
+            for (Metric metric : METRICS) {
+                result.put(metric.getKey(), new MetricTrendDTO(0.0, 0, null, 0.0, 0, null));
+            }
+        }
+        return result;
+    }
+    
+    private static int recorded(double value) {
+        return value > 0 ? 1 : 0;
+    }
+    
+    /**
+     * Trend state of one user; only used inside the map's compute functions, which serialize access
+     * Arrays hold one entry per metric, the rings one slot per metric and day (epoch day % RING_DAYS).
+     * Whether a day is recorded is kept as an exact count next to its value, so rounding left in
+     * a corrected value cannot change the number of recorded days when the day leaves a window.
+     */
+    private static final class UserTrends {
+        private long today;
+        // Changes applied so far, to detect changes that overlap a rebuild
+        private volatile long changes;
+        private final double[] ring = new double[METRICS.length * RING_DAYS];
+        private final int[] recordedRing = new int[METRICS.length * RING_DAYS];
+        private final double[] shortSums = new double[METRICS.length];
+        private final double[] longSums = new double[METRICS.length];
+        private final int[] shortDays = new int[METRICS.length];
+        private final int[] longDays = new int[METRICS.length];
+        private final double[] shortWeighted = new double[METRICS.length];
+        private final double[] shortWeights = new double[METRICS.length];
+        private final double[] longWeighted = new double[METRICS.length];
+        private final double[] longWeights = new double[METRICS.length];
+        
+        private UserTrends(long today) {
+            this.today = today;
+        }
+        
+        /**
+         * Add a change of a day's value: the difference and the change in whether it is recorded
+         * The day must be at most tomorrow and is ignored if it is older than the history.
+         */
+        private void add(Metric metric, long day, double difference, int recordedDifference) {
+            long age = today - day;
+            if (age >= HISTORY_DAYS) {
+                return;
+            }
+            int m = metric.ordinal();
+            if (age < LONG_WINDOW) {
+                ring[slot(m, day)] += difference;
+                recordedRing[slot(m, day)] += recordedDifference;
+            }
+            // Tomorrow's value joins the sums and averages when that day comes
+            if (age < 0) {
+                return;
+            }
+            if (age < LONG_WINDOW) {
+                longSums[m] += difference;
+                longDays[m] += recordedDifference;
+                if (age < SHORT_WINDOW) {
+                    shortSums[m] += difference;
+                    shortDays[m] += recordedDifference;
+                }
+            }
+            double shortWeight = Math.pow(SHORT_DECAY, age);
+            double longWeight = Math.pow(LONG_DECAY, age);
+            shortWeighted[m] += shortWeight * difference;
+            shortWeights[m] += shortWeight * recordedDifference;
+            longWeighted[m] += longWeight * difference;
+            longWeights[m] += longWeight * recordedDifference;
+        }
+        
+        /**
+         * Add a stored day, at most tomorrow
+         */
+        private void add(DailyMetricsSample sample) {
+            long day = sample.getDate().toEpochDay();
+            for (Metric metric : METRICS) {
+                double value = metric.valueOf(sample);
+                add(metric, day, value, recorded(value));
+            }
+        }
+        
+        /**
+         * Move the windows forward to end on a later day
+         * Touches each passing day once, so this is constant time per day.
+         */
+        private void advanceTo(long day) {
+            long days = day - today;
+            if (days <= 0) {
+                return;
+            }
+            
+            long tomorrow = today + 1;
+            double shortDecay = Math.pow(SHORT_DECAY, days);
+            double longDecay = Math.pow(LONG_DECAY, days);
+            double tomorrowShortWeight = Math.pow(SHORT_DECAY, day - tomorrow);
+            double tomorrowLongWeight = Math.pow(LONG_DECAY, day - tomorrow);
+            for (Metric metric : METRICS) {
+                int m = metric.ordinal();
+                double value = ring[slot(m, tomorrow)];
+                int recorded = recordedRing[slot(m, tomorrow)];
+                shortWeighted[m] = shortWeighted[m] * shortDecay + value * tomorrowShortWeight;
+                shortWeights[m] = shortWeights[m] * shortDecay + recorded * tomorrowShortWeight;
+                longWeighted[m] = longWeighted[m] * longDecay + value * tomorrowLongWeight;
+                longWeights[m] = longWeights[m] * longDecay + recorded * tomorrowLongWeight;
+            }
+            
+            if (days >= RING_DAYS) {
+                // Every day in the ring, tomorrow's included, left the long window
+                Arrays.fill(ring, 0.0);
+                Arrays.fill(recordedRing, 0);
+                Arrays.fill(shortSums, 0.0);
+                Arrays.fill(longSums, 0.0);
+                Arrays.fill(shortDays, 0);
+                Arrays.fill(longDays, 0);
+            } else {
+                for (long next = today + 1; next <= day; next++) {
+                    for (Metric metric : METRICS) {
+                        int m = metric.ordinal();
+                        int entering = slot(m, next);
+                        int leavingShort = slot(m, next - SHORT_WINDOW);
+                        int leavingLong = slot(m, next - LONG_WINDOW);
+                        shortSums[m] += ring[entering] - ring[leavingShort];
+                        shortDays[m] += recordedRing[entering] - recordedRing[leavingShort];
+                        longSums[m] += ring[entering] - ring[leavingLong];
+                        longDays[m] += recordedRing[entering] - recordedRing[leavingLong];
+                        // The slot of the day that left is the slot of the new tomorrow
+                        ring[leavingLong] = 0.0;
+                        recordedRing[leavingLong] = 0;
+                    }
+                }
+            }
+            today = day;
+        }
+        
+        /**
+         * Whether no metric has a recorded day in the history or tomorrow
+         * Tomorrow's values are only in the ring until that day comes, not in the weights.
+         */
+        private boolean isEmpty() {
+            for (double weight : longWeights) {
+                if (weight >= MIN_LONG_WEIGHT) {
+                    return false;
+                }
+            }
+            for (Metric metric : METRICS) {
+                if (recordedRing[slot(metric.ordinal(), today + 1)] > 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private MetricTrendDTO toTrend(Metric metric) {
+            int m = metric.ordinal();
+            boolean recorded = longWeights[m] >= MIN_LONG_WEIGHT;
+            return new MetricTrendDTO(
+                shortSums[m],
+                shortDays[m],
+                recorded && shortWeights[m] > 0 ? shortWeighted[m] / shortWeights[m] : null,
+                longSums[m],
+                longDays[m],
+                recorded ? longWeighted[m] / longWeights[m] : null
+            );
+        }
+        
+        private static int slot(int metric, long day) {
+            return metric * RING_DAYS + (int) Math.floorMod(day, (long) RING_DAYS);
+        }
+    }
+}
+
@@ -0,0 +1,138 @@
+package com.healthmonitor.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs HealthMetrics writes in their own transaction and retries them when they
+ * lose a race for the same row (lock timeout or deadlock)
+ * 
+ * Retries wait a jittered, exponentially growing delay so that writers colliding on
+ * a hot row spread out instead of colliding again. When the caller already has a
+ * transaction, the write runs once: a conflict rolls back the caller's whole unit of
+ * work, which only the caller can repeat.
+ * 
+ * Conflicts, retries and exhausted retries are counted per operation as
+ * healthmonitor.metrics.write.conflicts, .retries and .exhausted. Which rows conflict is
+ * logged at INFO for one conflict per CONFLICT_LOG_INTERVAL_MS, with the number of
+ * conflicts since the previous line, so hot users and days show up without flooding the log.
+ */
+@Component
+public class OptimisticRetryExecutor {
+    
+    private static final Logger log = LoggerFactory.getLogger(OptimisticRetryExecutor.class);
+    
+    private static final long CONFLICT_LOG_INTERVAL_MS = 10_000;
+    
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final AtomicLong nextConflictLog = new AtomicLong();
+    private final AtomicLong unloggedConflicts = new AtomicLong();
+    
+    @Autowired
+    public OptimisticRetryExecutor(PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${healthmonitor.metrics.retry.max-attempts:4}") int maxAttempts,
+                                   @Value("${healthmonitor.metrics.retry.initial-backoff-ms:10}") long initialBackoffMs,
+                                   @Value("${healthmonitor.metrics.retry.max-backoff-ms:200}") long maxBackoffMs) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+    
+    /**
+     * Run a write, retrying it on concurrency conflicts
+     * 
+     * @param operation Name used in metrics and logs
+     * @param userId User whose rows are written, for logs
+     * @param rows Dates or other description of the rows written, for logs
+     * @param action The write; must be safe to repeat after a rollback
+     * @return Result of the successful attempt
+     */
+    public <T> T execute(String operation, Long userId, Object rows, Supplier<T> action) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            try {
+                return action.get();
+            } catch (ConcurrencyFailureException e) {
+                recordConflict(operation, userId, rows, e);
+                throw e;
+            }
+        }
+        
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> action.get());
+            } catch (ConcurrencyFailureException e) {
+                recordConflict(operation, userId, rows, e);
+                if (attempt >= maxAttempts) {
+                    counter("exhausted", operation).increment();
+                    log.warn("Giving up on {} after {} conflicting attempts: {}",
+                             operation, attempt, e.getMessage());
+                    throw e;
+                }
+                counter("retries", operation).increment();
+                log.debug("Conflict in {} (attempt {}), retrying: {}", operation, attempt, e.getMessage());
+                backOff(attempt, e);
+            }
+        }
+    }
+    
+    /**
+     * Run a write without a result, retrying it on concurrency conflicts
+     */
+    public void run(String operation, Long userId, Object rows, Runnable action) {
+        execute(operation, userId, rows, () -> {
+            action.run();
+            return null;
+        });
+    }
+    
+    private void recordConflict(String operation, Long userId, Object rows, ConcurrencyFailureException e) {
+        counter("conflicts", operation).increment();
+        long now = System.currentTimeMillis();
+        long next = nextConflictLog.get();
+        if (now < next || !nextConflictLog.compareAndSet(next, now + CONFLICT_LOG_INTERVAL_MS)) {
+            unloggedConflicts.incrementAndGet();
+            return;
+        }
+        log.info("Write conflict in {} for user {} on {} ({} more conflicts since the last report): {}",
+                 operation, userId, rows, unloggedConflicts.getAndSet(0), e.getMessage());
+    }
+    
+    private void backOff(int attempt, ConcurrencyFailureException cause) {
+        // Equal jitter: half of the exponential delay is fixed, the other half random
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw cause;
+        }
+    }
+    
+    private Counter counter(String name, String operation) {
+        return Counter.builder("healthmonitor.metrics.write." + name)
+            .tag("operation", operation)
+            .register(meterRegistry);
+    }
+}
+
@@ -0,0 +1,61 @@
+package com.healthmonitor.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Rebuilds the week and month rollups at startup when the application is started with
+ * --rebuild-rollups (all users) or --rebuild-rollups=1,2,3 (selected users)
+ * 
+ * Used to backfill the rollups of existing data or to repair them. Each user is rebuilt
+ * in its own transaction that holds the locks of the user's rollup rows. Writes of that
+ * user wait for the rebuild before adding to them, so it can run while the application
+ * is serving requests.
+ */
+@Component
+public class RollupRebuildRunner implements ApplicationRunner {
+    
+    public static final String OPTION = "rebuild-rollups";
+    
+    private static final Logger log = LoggerFactory.getLogger(RollupRebuildRunner.class);
+    
+    private final HealthMetricsService healthMetricsService;
+    
+    @Autowired
+    public RollupRebuildRunner(HealthMetricsService healthMetricsService) {
+        this.healthMetricsService = healthMetricsService;
+    }
+    
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+        
+        List<Long> userIds = args.getOptionValues(OPTION).stream()
+            .flatMap(value -> Arrays.stream(value.split(",")))
+            .map(String::trim)
+            .filter(value -> !value.isEmpty())
+            .map(Long::valueOf)
+            .collect(Collectors.toList());
+        if (userIds.isEmpty()) {
+            userIds = healthMetricsService.findUserIdsWithMetrics();
+        }
+        
+        log.info("Rebuilding week and month rollups for {} users", userIds.size());
+        int days = 0;
+        for (Long userId : userIds) {
+            days += healthMetricsService.rebuildRollups(userId);
+        }
+        log.info("Rebuilt rollups for {} users from {} daily rows", userIds.size(), days);
+    }
+}
+
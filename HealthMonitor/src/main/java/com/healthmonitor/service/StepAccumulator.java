@@ -0,0 +1,195 @@
+package com.healthmonitor.service;
+
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory accumulator for step increments that have not been written yet
+ * Used by the write-behind mode of HealthMetricsService
+ * 
+ * Increments are spread over the bins of a ConcurrentHashMap keyed by (userId, date)
+ * and applied with a CAS on the per-key cell, so adding steps never takes a lock.
+ * A drained cell is sealed before it is removed, which forces late writers to
+ * retry on a fresh cell instead of losing their increment.
+ * 
+ * Drained steps stay in flight, and count as pending, until the flush reports them
+ * written or puts them back, so reads never miss steps that are being written.
+ */
+@Component
+public class StepAccumulator {
+    
+    private static final long SEALED = Long.MIN_VALUE;
+    
+    private final ConcurrentHashMap<DailyKey, Cell> cells = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<DailyKey, Long> inFlight = new ConcurrentHashMap<>();
+    
+    /**
+     * Add steps for a user on a date
+     */
+    public void add(Long userId, LocalDate date, long steps) {
+        DailyKey key = new DailyKey(userId, date);
+        while (true) {
+            Cell cell = cells.computeIfAbsent(key, k -> new Cell());
+            long current = cell.value.get();
+            if (current == SEALED) {
+                // Cell is being drained; help remove it and retry on a new one
+                cells.remove(key, cell);
+                continue;
+            }
+            if (cell.value.compareAndSet(current, current + steps)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Get steps added for a user on a date that have not been written yet, including drained ones
+     */
+    public long getPendingSteps(Long userId, LocalDate date) {
+        DailyKey key = new DailyKey(userId, date);
+        long drained = inFlight.getOrDefault(key, 0L);
+        Cell cell = cells.get(key);
+        if (cell == null) {
+            return drained;
+        }
+        long value = cell.value.get();
+        return value == SEALED ? drained : value + drained;
+    }
+    
+    /**
+     * Drop pending steps for a user on a date, e.g. when the total is overwritten
+     * 
+     * @return The dropped steps, for the caller to add back if its write fails
+     */
+    public long discard(Long userId, LocalDate date) {
+        DailyKey key = new DailyKey(userId, date);
+        Cell cell = cells.get(key);
+        return cell != null ? seal(key, cell) : 0;
+    }
+    
+    /**
+     * Remove and return all pending increments
+     * They stay in flight until passed to written or restore.
+     */
+    public List<PendingSteps> drain() {
+        List<PendingSteps> drained = new ArrayList<>();
+        for (Map.Entry<DailyKey, Cell> entry : cells.entrySet()) {
+            // Counted in flight before the cell is sealed, so a concurrent reader sees the
+            // steps twice for a moment rather than not at all
+            long seen = entry.getValue().value.get();
+            if (seen == SEALED) {
+                continue;
+            }
+            addInFlight(entry.getKey(), seen);
+            long steps = seal(entry.getKey(), entry.getValue());
+            addInFlight(entry.getKey(), steps - seen);
+            if (steps != 0) {
+                drained.add(new PendingSteps(entry.getKey().userId, entry.getKey().date, steps));
+            }
+        }
+        return drained;
+    }
+    
+    /**
+     * Report drained steps as committed to the daily row
+     */
+    public void written(Long userId, LocalDate date, long steps) {
+        addInFlight(new DailyKey(userId, date), -steps);
+    }
+    
+    /**
+     * Put drained steps back for the next flush
+     */
+    public void restore(Long userId, LocalDate date, long steps) {
+        add(userId, date, steps);
+        written(userId, date, steps);
+    }
+    
+    /**
+     * Check if there are no pending increments
+     */
+    public boolean isEmpty() {
+        return cells.isEmpty();
+    }
+    
+    private void addInFlight(DailyKey key, long steps) {
+        if (steps != 0) {
+            inFlight.compute(key, (k, drained) -> {
+                long total = (drained != null ? drained : 0) + steps;
+                return total != 0 ? total : null;
+            });
+        }
+    }
+    
+    private long seal(DailyKey key, Cell cell) {
+        long value = cell.value.getAndSet(SEALED);
+        cells.remove(key, cell);
+        return value == SEALED ? 0 : value;
+    }
+    
+    private static final class Cell {
+        private final AtomicLong value = new AtomicLong();
+    }
+    
+    private static final class DailyKey {
+        private final Long userId;
+        private final LocalDate date;
+        
+        private DailyKey(Long userId, LocalDate date) {
+            this.userId = userId;
+            this.date = date;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DailyKey)) {
+                return false;
+            }
+            DailyKey other = (DailyKey) o;
+            return userId.equals(other.userId) && date.equals(other.date);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, date);
+        }
+    }
+    
+    /**
+     * Steps drained from the accumulator for one user and date
+     */
+    public static final class PendingSteps {
+        private final Long userId;
+        private final LocalDate date;
+        private final long steps;
+        
+        public PendingSteps(Long userId, LocalDate date, long steps) {
+            this.userId = userId;
+            this.date = date;
+            this.steps = steps;
+        }
+        
+        public Long getUserId() {
+            return userId;
+        }
+        
+        public LocalDate getDate() {
+            return date;
+        }
+        
+        public long getSteps() {
+            return steps;
+        }
+    }
+}
+
@@ -0,0 +1,105 @@
+package com.healthmonitor.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Periodically writes the steps buffered in StepAccumulator to HealthMetrics
+ * Only active when write-behind mode is enabled
+ */
+@Component
+@ConditionalOnProperty(name = "healthmonitor.steps.write-behind.enabled", havingValue = "true")
+public class StepFlushScheduler {
+    
+    private static final Logger log = LoggerFactory.getLogger(StepFlushScheduler.class);
+    
+    private static final int SHUTDOWN_FLUSH_ATTEMPTS = 5;
+    
+    private final StepAccumulator stepAccumulator;
+    private final HealthMetricsService healthMetricsService;
+    
+    @Autowired
+    public StepFlushScheduler(StepAccumulator stepAccumulator,
+                              HealthMetricsService healthMetricsService) {
+        this.stepAccumulator = stepAccumulator;
+        this.healthMetricsService = healthMetricsService;
+    }
+    
+    /**
+     * Flush pending steps, one transaction per user
+     * applyPendingSteps commits before it returns, so the drained steps are reported written
+     * only once readers can see them in the daily rows.
+     * 
+     * @return true if every user's steps were written
+     */
+    @Scheduled(fixedDelayString = "${healthmonitor.steps.write-behind.flush-interval-ms:1000}")
+    public synchronized boolean flush() {
+        Map<Long, List<StepAccumulator.PendingSteps>> pendingByUser = stepAccumulator.drain()
+            .stream()
+            .collect(Collectors.groupingBy(StepAccumulator.PendingSteps::getUserId));
+        
+        boolean complete = true;
+        for (Map.Entry<Long, List<StepAccumulator.PendingSteps>> entry : pendingByUser.entrySet()) {
+            Map<LocalDate, Integer> stepsByDate = new TreeMap<>();
+            for (StepAccumulator.PendingSteps pending : entry.getValue()) {
+                stepsByDate.put(pending.getDate(), toIncrement(pending.getSteps()));
+            }
+            try {
+                healthMetricsService.applyPendingSteps(entry.getKey(), stepsByDate);
+            } catch (RuntimeException e) {
+                // Put the steps back so the next flush retries them
+                log.warn("Failed to flush steps for user {}: {}", entry.getKey(), e.getMessage());
+                entry.getValue().forEach(pending ->
+                    stepAccumulator.restore(pending.getUserId(), pending.getDate(), pending.getSteps()));
+                complete = false;
+                continue;
+            }
+            for (StepAccumulator.PendingSteps pending : entry.getValue()) {
+                long written = stepsByDate.get(pending.getDate());
+                stepAccumulator.written(pending.getUserId(), pending.getDate(), written);
+                if (written != pending.getSteps()) {
+                    stepAccumulator.restore(pending.getUserId(), pending.getDate(), pending.getSteps() - written);
+                }
+            }
+        }
+        return complete;
+    }
+    
+    /**
+     * Part of a day's pending steps that fits one increment of the int column
+     * The rest stays pending for the next flush instead of failing this one on every retry.
+     */
+    private static int toIncrement(long steps) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, steps));
+    }
+    
+    /**
+     * Drain the accumulator before the application context closes
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        int attempts = 0;
+        while (!stepAccumulator.isEmpty() && attempts < SHUTDOWN_FLUSH_ATTEMPTS) {
+            flush();
+            attempts++;
+        }
+        if (!stepAccumulator.isEmpty()) {
+            log.error("Pending steps could not be written before shutdown: {}", stepAccumulator.drain()
+                .stream()
+                .map(p -> p.getUserId() + "/" + p.getDate() + "=" + p.getSteps())
+                .collect(Collectors.joining(", ")));
+        }
+    }
+}
+
@@ -0,0 +1,124 @@
+package com.healthmonitor.service;
+
+import com.healthmonitor.model.DailyMetricsChange;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory change markers of users' metrics and activities, the validators of cached reads
+ * 
+ * A write marks its user changed once its transaction commits: daily metrics writes through
+ * DailyMetricsListener, activity writes and buffered steps through their services. Nothing
+ * is written to the database for it, so writes of one user never queue on a shared row.
+ * 
+ * A marker counts the user's changes and keeps the time of the latest one for Last-Modified.
+ * HTTP dates have whole seconds, so every change moves that time at least one second past the
+ * previous one, and a client that read a response within the same second still sees a newer date.
+ * Counters start over with the application, so entity tags also carry the time it started.
+ */
+@Component
+public class UserChangeTracker implements DailyMetricsListener {
+    
+    private static final long SECOND = 1000;
+    
+    private final long startedAt = System.currentTimeMillis() / SECOND * SECOND;
+    private final Version initial = new Version(startedAt, 0, startedAt);
+    private final ConcurrentHashMap<Long, Version> versions = new ConcurrentHashMap<>();
+    
+    /**
+     * Mark a user changed once the current transaction commits, or at once outside a transaction
+     */
+    public void markChanged(Long userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    advance(userId);
+                }
+            });
+        } else {
+            advance(userId);
+        }
+    }
+    
+    /**
+     * Get a user's current change marker
+     * Read it before the data it validates, so a write in between can only make the tag older.
+     */
+    public Version getVersion(Long userId) {
+        return versions.getOrDefault(userId, initial);
+    }
+    
+    /**
+     * Drop a deleted user's marker once the current transaction commits
+     */
+    public void forget(Long userId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                versions.remove(userId);
+            }
+        });
+    }
+    
+    @Override
+    public void onDailyMetricsChanged(List<DailyMetricsChange> changes) {
+        advance(changes.get(0).getUserId());
+    }
+    
+    @Override
+    public void onDailyMetricsMissed(List<DailyMetricsChange> changes) {
+        advance(changes.get(0).getUserId());
+    }
+    
+    private void advance(Long userId) {
+        versions.compute(userId, (id, previous) -> {
+            Version current = previous != null ? previous : initial;
+            long now = System.currentTimeMillis() / SECOND * SECOND;
+            return new Version(startedAt, current.count + 1, Math.max(now, current.lastModified + SECOND));
+        });
+    }
+    
+    /**
+     * Change marker of one user: the number of changes since start and the time of the latest one
+     */
+    public static final class Version {
+        
+        private final long startedAt;
+        private final long count;
+        private final long lastModified;
+        
+        private Version(long startedAt, long count, long lastModified) {
+            this.startedAt = startedAt;
+            this.count = count;
+            this.lastModified = lastModified;
+        }
+        
+        /**
+         * Entity tag built from the marker and any extra state the response depends on
+         */
+        public String toETag(Object... qualifiers) {
+            StringBuilder eTag = new StringBuilder("v").append(startedAt).append('-').append(count);
+            for (Object qualifier : qualifiers) {
+                eTag.append('-').append(qualifier);
+            }
+            return eTag.toString();
+        }
+        
+        /**
+         * Time of the latest change in epoch milliseconds, whole seconds
+         */
+        public long lastModifiedMillis() {
+            return lastModified;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+    }
+}
+
@@ -1,31 +1,93 @@
 package com.healthmonitor.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.healthmonitor.dto.UserDTO;
 import com.healthmonitor.model.User;
+import com.healthmonitor.repository.CalorieBackfillCheckpointRepository;
+import com.healthmonitor.repository.HealthMetricsRollupRepository;
+import com.healthmonitor.repository.HeartRateSampleStore;
+import com.healthmonitor.repository.UserBodyProfile;
 import com.healthmonitor.repository.UserRepository;
-import com.healthmonitor.service.calculator.BMRAnalyzer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
  * Service class for managing users
  * Demonstrates service layer pattern and business logic encapsulation
+ * 
+ * Lookups by id and email are served from a bounded Caffeine cache. The cache holds
+ * immutable snapshots, and every lookup returns its own detached copy, so no JPA
+ * entity or session state is shared between threads. Updates and deletes evict the
+ * affected entries before and again after their transaction commits.
  */
 @Service
 @Transactional
 public class UserService {
     
     private final UserRepository userRepository;
-    private final BMRAnalyzer bmrAnalyzer;
+    private final HealthMetricsRollupRepository rollupRepository;
+    private final HealthSummaryService healthSummaryService;
+    private final CalorieBackfillService calorieBackfillService;
+    private final CalorieBackfillCheckpointRepository checkpointRepository;
+    private final MetricsPercentileService metricsPercentileService;
+    private final MetricsTrendService metricsTrendService;
+    private final UserChangeTracker changeTracker;
+    private final HeartRateSampleStore heartRateSampleStore;
+    private final Cache<Long, UserSnapshot> usersById;
+    private final Cache<String, Long> userIdsByEmail;
     
     @Autowired
     public UserService(UserRepository userRepository,
-                      BMRAnalyzer bmrAnalyzer) {
+                      HealthMetricsRollupRepository rollupRepository,
+                      HealthSummaryService healthSummaryService,
+                      CalorieBackfillService calorieBackfillService,
+                      CalorieBackfillCheckpointRepository checkpointRepository,
+                      MetricsPercentileService metricsPercentileService,
+                      MetricsTrendService metricsTrendService,
+                      UserChangeTracker changeTracker,
+                      HeartRateSampleStore heartRateSampleStore,
+                      MeterRegistry meterRegistry,
+                      @Value("${healthmonitor.users.cache.max-size:10000}") long cacheSize,
+                      @Value("${healthmonitor.users.cache.ttl:PT10M}") Duration cacheTtl) {
         this.userRepository = userRepository;
-        this.bmrAnalyzer = bmrAnalyzer;
+        this.rollupRepository = rollupRepository;
+        this.healthSummaryService = healthSummaryService;
+        this.calorieBackfillService = calorieBackfillService;
+        this.checkpointRepository = checkpointRepository;
+        this.metricsPercentileService = metricsPercentileService;
+        this.metricsTrendService = metricsTrendService;
+        this.changeTracker = changeTracker;
+        this.heartRateSampleStore = heartRateSampleStore;
+        this.usersById = Caffeine.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfterWrite(cacheTtl)
+            .recordStats()
+            .build();
+        this.userIdsByEmail = Caffeine.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfterWrite(cacheTtl)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, usersById, "users");
+        CaffeineCacheMetrics.monitor(meterRegistry, userIdsByEmail, "userIdsByEmail");
     }
     
     /**
@@ -40,26 +102,78 @@ public class UserService {
     
     /**
      * Get user by ID
+     * Returns a detached copy that may be referenced by new entities but must not be saved itself
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Optional<User> getUserById(Long id) {
-        return userRepository.findById(id);
+        UserSnapshot snapshot = usersById.get(id, key -> userRepository.findById(key)
+            .map(UserSnapshot::new)
+            .orElse(null));
+        return Optional.ofNullable(snapshot).map(UserSnapshot::toUser);
     }
     
     /**
      * Get user by email
+     * Returns a detached copy that may be referenced by new entities but must not be saved itself
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Optional<User> getUserByEmail(String email) {
-        return userRepository.findByEmail(email);
+        Long id = userIdsByEmail.get(email, key -> userRepository.findByEmail(key)
+            .map(user -> {
+                usersById.put(user.getId(), new UserSnapshot(user));
+                return user.getId();
+            })
+            .orElse(null));
+        return id != null ? getUserById(id) : Optional.empty();
+    }
+    
+    /**
+     * Get the change marker of a user's metrics and activities, which validates cached responses
+     * Read it before the data it validates, so a write in between can only make the tag older.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public UserChangeTracker.Version getChangeVersion(Long id) {
+        return changeTracker.getVersion(id);
     }
     
     /**
-     * Get all users
+     * Get the first KeysetCursor.MAX_PAGE_SIZE users ordered by id
+     * Continue with getUsersPage from the cursor of the last one.
      */
     @Transactional(readOnly = true)
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
+    public Window<UserDTO> getAllUsers() {
+        return KeysetCursor.firstPage(userRepository.findAllDTOs(Limit.of(KeysetCursor.MAX_PAGE_SIZE + 1)),
+                                      user -> Map.of("id", user.getId()));
+    }
+    
+    /**
+     * Get a page of users ordered by id
+     * 
+     * @param cursor Cursor from the previous page, or null for the first page
+     * @param size Requested page size, capped at KeysetCursor.MAX_PAGE_SIZE
+     */
+    @Transactional(readOnly = true)
+    public Window<User> getUsersPage(String cursor, int size) {
+        ScrollPosition position = ScrollPosition.keyset();
+        if (cursor != null) {
+            String[] keys = KeysetCursor.decode(cursor, 1);
+            try {
+                position = ScrollPosition.forward(Map.of("id", Long.valueOf(keys[0])));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+        }
+        return userRepository.findByOrderByIdAsc(position, Limit.of(KeysetCursor.pageSize(size)));
+    }
+    
+    /**
+     * Cursor for the page after the given one, or null if it is the last page
+     */
+    public String nextCursor(Window<User> page) {
+        if (!page.hasNext() || page.isEmpty()) {
+            return null;
+        }
+        return KeysetCursor.encode(page.getContent().get(page.size() - 1).getId());
     }
     
     /**
@@ -75,6 +189,20 @@ public class UserService {
             throw new IllegalArgumentException("User with email " + updatedUser.getEmail() + " already exists");
         }
         
+        evictAroundCommit(id, existingUser.getEmail(), updatedUser.getEmail());
+        
+        // Stored activity calories were computed at the old weight
+        if (!existingUser.getWeightKg().equals(updatedUser.getWeightKg())) {
+            calorieBackfillService.recompute(id);
+        }
+        
+        // Percentile cohorts depend on the birth year and gender
+        UserBodyProfile previousProfile = UserBodyProfile.of(existingUser);
+        if (previousProfile.getBirthYear() != updatedUser.getDateOfBirth().getYear() ||
+            previousProfile.getGender() != updatedUser.getGender()) {
+            metricsPercentileService.moveUser(id, previousProfile, UserBodyProfile.of(updatedUser));
+        }
+        
         existingUser.setName(updatedUser.getName());
         existingUser.setEmail(updatedUser.getEmail());
         existingUser.setDateOfBirth(updatedUser.getDateOfBirth());
@@ -90,30 +218,100 @@ public class UserService {
      * Delete user
      */
     public void deleteUser(Long id) {
-        if (!userRepository.existsById(id)) {
-            throw new IllegalArgumentException("User not found with id: " + id);
-        }
-        userRepository.deleteById(id);
+        User user = userRepository.findById(id)
+            .orElseThrow(() -> new IllegalArgumentException("User not found with id: " + id));
+        evictAroundCommit(id, user.getEmail(), null);
+        healthSummaryService.evict(id);
+        rollupRepository.deleteByUserId(id);
+        checkpointRepository.deleteByUserId(id);
+        metricsPercentileService.moveUser(id, UserBodyProfile.of(user), null);
+        metricsTrendService.removeUser(id);
+        changeTracker.forget(id);
+        heartRateSampleStore.deleteUser(id);
+        userRepository.delete(user);
     }
     
     /**
      * Calculate BMR for a user
+     * Served from the user's memoized health summary
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public double calculateBMR(Long userId) {
         User user = getUserById(userId)
             .orElseThrow(() -> new IllegalArgumentException("User not found with id: " + userId));
-        return bmrAnalyzer.calculateBMR(user);
+        return healthSummaryService.getSummary(user).getBmr();
     }
     
     /**
      * Calculate TDEE for a user
+     * Served from the user's memoized health summary
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public double calculateTDEE(Long userId) {
         User user = getUserById(userId)
             .orElseThrow(() -> new IllegalArgumentException("User not found with id: " + userId));
-        return bmrAnalyzer.calculateTDEE(user);
+        return healthSummaryService.getSummary(user).getTdee();
+    }
+    
+    /**
+     * Evict a user's cache entries now and again after the transaction commits,
+     * so a lookup running concurrently cannot re-cache the old values
+     */
+    private void evictAroundCommit(Long id, String email, String newEmail) {
+        evict(id, email, newEmail);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(id, email, newEmail);
+                }
+            });
+        }
+    }
+    
+    private void evict(Long id, String email, String newEmail) {
+        usersById.invalidate(id);
+        userIdsByEmail.invalidate(email);
+        if (newEmail != null) {
+            userIdsByEmail.invalidate(newEmail);
+        }
+    }
+    
+    /**
+     * Immutable copy of a user's profile as stored in the cache
+     */
+    private static final class UserSnapshot {
+        private final Long id;
+        private final String name;
+        private final String email;
+        private final LocalDate dateOfBirth;
+        private final User.Gender gender;
+        private final Double heightCm;
+        private final Double weightKg;
+        private final User.ActivityLevel activityLevel;
+        private final LocalDateTime createdAt;
+        private final LocalDateTime updatedAt;
+        
+        private UserSnapshot(User user) {
+            this.id = user.getId();
+            this.name = user.getName();
+            this.email = user.getEmail();
+            this.dateOfBirth = user.getDateOfBirth();
+            this.gender = user.getGender();
+            this.heightCm = user.getHeightCm();
+            this.weightKg = user.getWeightKg();
+            this.activityLevel = user.getActivityLevel();
+            this.createdAt = user.getCreatedAt();
+            this.updatedAt = user.getUpdatedAt();
+        }
+        
+        private User toUser() {
+            User user = new User(name, email, dateOfBirth, gender, heightCm, weightKg, activityLevel);
+            user.setId(id);
+            user.setCreatedAt(createdAt);
+            user.setUpdatedAt(updatedAt);
+            return user;
+        }
     }
 }
 
@@ -8,6 +8,23 @@ import com.healthmonitor.model.User;
  */
 public interface BMRAnalyzer {
     
+    /**
+     * Short name of the formula, e.g. "mifflin-st-jeor"
+     */
+    String getFormula();
+    
+    /**
+     * Calculates Basal Metabolic Rate (BMR) from body figures
+     * Used directly for bulk calculations over projections, where no User is loaded
+     * 
+     * @param weightKg Weight in kilograms
+     * @param heightCm Height in centimeters
+     * @param age Age in years
+     * @param gender Gender; formulas without a separate equation use the female one for OTHER
+     * @return BMR in calories per day
+     */
+    double calculateBMR(double weightKg, double heightCm, int age, User.Gender gender);
+    
     /**
      * Calculates Basal Metabolic Rate (BMR)
      * BMR is the number of calories the body burns at rest
@@ -15,7 +32,14 @@ public interface BMRAnalyzer {
      * @param user The user for whom to calculate BMR
      * @return BMR in calories per day
      */
-    double calculateBMR(User user);
+    default double calculateBMR(User user) {
+        if (user == null || user.getWeightKg() == null || 
+            user.getHeightCm() == null || user.getDateOfBirth() == null) {
+            throw new IllegalArgumentException("User data incomplete for BMR calculation");
+        }
+        
+        return calculateBMR(user.getWeightKg(), user.getHeightCm(), user.calculateAge(), user.getGender());
+    }
     
     /**
      * Calculates Total Daily Energy Expenditure (TDEE)
@@ -24,6 +48,34 @@ public interface BMRAnalyzer {
      * @param user The user for whom to calculate TDEE
      * @return TDEE in calories per day
      */
-    double calculateTDEE(User user);
+    default double calculateTDEE(User user) {
+        return calculateTDEE(user, calculateBMR(user));
+    }
+    
+    /**
+     * Calculates TDEE from a BMR that was already calculated for the user
+     * 
+     * @param user The user whose activity level applies
+     * @param bmr The user's BMR in calories per day
+     * @return TDEE in calories per day
+     */
+    default double calculateTDEE(User user, double bmr) {
+        return calculateTDEE(user.getActivityLevel(), bmr);
+    }
+    
+    /**
+     * Calculates TDEE from a BMR and an activity level
+     * 
+     * @param activityLevel Activity level, or null for sedentary
+     * @param bmr BMR in calories per day
+     * @return TDEE in calories per day
+     */
+    default double calculateTDEE(User.ActivityLevel activityLevel, double bmr) {
+        if (activityLevel == null) {
+            return bmr * 1.2; // Default to sedentary
+        }
+        
+        return bmr * activityLevel.getMultiplier();
+    }
 }
 
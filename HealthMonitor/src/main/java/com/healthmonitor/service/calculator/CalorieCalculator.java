@@ -24,5 +24,26 @@ public interface CalorieCalculator {
      * @return MET value
      */
     double getMETValue(String activityType);
+    
+    /**
+     * Resolves an activity type once, for use with the batch calculation
+     * 
+     * @param activityType Type of activity
+     * @return MET id, only meaningful to this calculator
+     */
+    int resolveMETId(String activityType);
+    
+    /**
+     * Calculates calories burned for many activities at once
+     * Element i of each array describes one activity; the result for it is written to caloriesBurned[i].
+     * 
+     * @param metIds MET ids from resolveMETId
+     * @param durationMinutes Durations in minutes
+     * @param weightKg Weights in kilograms
+     * @param caloriesBurned Receives the calories burned
+     * @param length Number of activities to calculate, from index 0
+     */
+    void calculateCaloriesBurned(int[] metIds, double[] durationMinutes, double[] weightKg,
+                                 double[] caloriesBurned, int length);
 }
 
@@ -0,0 +1,163 @@
+package com.healthmonitor.service.calculator.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Resolves normalized activity type names to values, built once from a fixed table
+ * 
+ * Resolution order, independent of map iteration order:
+ * <ol>
+ * <li>The name is a known type: that type.</li>
+ * <li>The name contains known types: the longest one, leftmost on ties
+ *     ("RUNNING_FAST_INTERVALS" resolves to RUNNING_FAST, not RUNNING).</li>
+ * <li>The name is part of known types: the one it is a prefix of, then the shortest,
+ *     then the alphabetically first ("RUN" resolves to RUNNING).</li>
+ * <li>Otherwise null.</li>
+ * </ol>
+ * Rule 2 is an Aho-Corasick automaton scanned in one pass; rules 1 and 3 are a
+ * precomputed map of every part of every known type. Lookups do not allocate.
+ */
+final class ActivityTypeResolver<V> {
+    
+    // Types are upper-case ASCII letters, digits, '_' and ' '; anything else cannot be part of a match
+    private static final int ALPHABET = 128;
+    
+    private final Map<String, V> exactTypes;
+    private final Map<String, V> byPart;
+    private final int[][] transitions;
+    private final int[] longestMatch;
+    private final String[] types;
+    private final V[] values;
+    
+    @SuppressWarnings("unchecked")
+    ActivityTypeResolver(Map<String, V> table) {
+        this.types = table.keySet().stream().sorted().toArray(String[]::new);
+        this.values = (V[]) new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            values[i] = table.get(types[i]);
+        }
+        this.exactTypes = new HashMap<>(table);
+        this.byPart = buildPartMap(table);
+        
+        List<int[]> gotos = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        gotos.add(newNode());
+        terminal.add(-1);
+        for (int i = 0; i < types.length; i++) {
+            int state = 0;
+            for (char c : types[i].toCharArray()) {
+                if (c >= ALPHABET) {
+                    throw new IllegalArgumentException("Activity types must be ASCII: " + types[i]);
+                }
+                if (gotos.get(state)[c] < 0) {
+                    gotos.get(state)[c] = gotos.size();
+                    gotos.add(newNode());
+                    terminal.add(-1);
+                }
+                state = gotos.get(state)[c];
+            }
+            terminal.set(state, i);
+        }
+        
+        // Breadth-first: turn the trie into a full transition table and give every state
+        // the longest type that ends there, directly or through its failure link
+        int states = gotos.size();
+        this.transitions = gotos.toArray(new int[states][]);
+        this.longestMatch = new int[states];
+        int[] failure = new int[states];
+        longestMatch[0] = -1;
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int child = transitions[0][c];
+            if (child < 0) {
+                transitions[0][c] = 0;
+            } else {
+                failure[child] = 0;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int inherited = longestMatch[failure[state]];
+            int own = terminal.get(state);
+            longestMatch[state] = own >= 0 && (inherited < 0 || types[own].length() >= types[inherited].length())
+                ? own
+                : inherited;
+            for (int c = 0; c < ALPHABET; c++) {
+                int child = transitions[state][c];
+                if (child < 0) {
+                    transitions[state][c] = transitions[failure[state]][c];
+                } else {
+                    failure[child] = transitions[failure[state]][c];
+                    queue.add(child);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Resolve a trimmed, upper-case activity type
+     * 
+     * @return The resolved value, or null if the name matches no known type
+     */
+    V resolve(String name) {
+        V exact = exactTypes.get(name);
+        if (exact != null) {
+            return exact;
+        }
+        
+        int state = 0;
+        int best = -1;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            state = c < ALPHABET ? transitions[state][c] : 0;
+            int match = longestMatch[state];
+            if (match >= 0 && (best < 0 || types[match].length() > types[best].length())) {
+                best = match;
+            }
+        }
+        if (best >= 0) {
+            return values[best];
+        }
+        return byPart.get(name);
+    }
+    
+    private static <V> Map<String, V> buildPartMap(Map<String, V> table) {
+        Comparator<String> preference = Comparator.comparingInt(String::length)
+            .thenComparing(Comparator.naturalOrder());
+        Map<String, String> owners = new HashMap<>();
+        for (String type : table.keySet()) {
+            for (int start = 0; start < type.length(); start++) {
+                for (int end = start + 1; end <= type.length(); end++) {
+                    String part = type.substring(start, end);
+                    owners.merge(part, type, (current, candidate) -> {
+                        boolean currentPrefix = current.startsWith(part);
+                        boolean candidatePrefix = candidate.startsWith(part);
+                        if (currentPrefix != candidatePrefix) {
+                            return currentPrefix ? current : candidate;
+                        }
+                        return preference.compare(current, candidate) <= 0 ? current : candidate;
+                    });
+                }
+            }
+        }
+        
+        Map<String, V> byPart = new HashMap<>(owners.size() * 2);
+        owners.forEach((part, owner) -> byPart.put(part, table.get(owner)));
+        return byPart;
+    }
+    
+    private static int[] newNode() {
+        int[] node = new int[ALPHABET];
+        Arrays.fill(node, -1);
+        return node;
+    }
+}
+
@@ -0,0 +1,44 @@
+package com.healthmonitor.service.calculator.impl;
+
+import com.healthmonitor.model.User;
+import com.healthmonitor.service.calculator.BMRAnalyzer;
+import org.springframework.stereotype.Service;
+
+/**
+ * Implementation of BMRAnalyzer using the revised Harris-Benedict Equation (Roza and Shizgal, 1984)
+ */
+@Service
+public class HarrisBenedictBMRAnalyzer implements BMRAnalyzer {
+    
+    private static final double MALE_CONSTANT = 88.362;
+    private static final double MALE_WEIGHT_MULTIPLIER = 13.397;
+    private static final double MALE_HEIGHT_MULTIPLIER = 4.799;
+    private static final double MALE_AGE_MULTIPLIER = 5.677;
+    
+    private static final double FEMALE_CONSTANT = 447.593;
+    private static final double FEMALE_WEIGHT_MULTIPLIER = 9.247;
+    private static final double FEMALE_HEIGHT_MULTIPLIER = 3.098;
+    private static final double FEMALE_AGE_MULTIPLIER = 4.330;
+    
+    @Override
+    public String getFormula() {
+        return "harris-benedict";
+    }
+    
+    @Override
+    public double calculateBMR(double weightKg, double heightCm, int age, User.Gender gender) {
+        // Harris-Benedict Equation:
+        // BMR = constant + (a × weight) + (b × height) - (c × age), with separate coefficients per gender
+        if (gender == User.Gender.MALE) {
+            return MALE_CONSTANT + 
+                   (MALE_WEIGHT_MULTIPLIER * weightKg) + 
+                   (MALE_HEIGHT_MULTIPLIER * heightCm) - 
+                   (MALE_AGE_MULTIPLIER * age);
+        }
+        return FEMALE_CONSTANT + 
+               (FEMALE_WEIGHT_MULTIPLIER * weightKg) + 
+               (FEMALE_HEIGHT_MULTIPLIER * heightCm) - 
+               (FEMALE_AGE_MULTIPLIER * age);
+    }
+}
+
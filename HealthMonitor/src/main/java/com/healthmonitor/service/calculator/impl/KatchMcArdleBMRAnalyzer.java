@@ -0,0 +1,49 @@
+package com.healthmonitor.service.calculator.impl;
+
+import com.healthmonitor.model.User;
+import com.healthmonitor.service.calculator.BMRAnalyzer;
+import org.springframework.stereotype.Service;
+
+/**
+ * Implementation of BMRAnalyzer using the Katch-McArdle Equation
+ * The formula works on lean body mass; users have no measured body fat, so it is
+ * estimated from BMI, age and gender with the Deurenberg equation.
+ */
+@Service
+public class KatchMcArdleBMRAnalyzer implements BMRAnalyzer {
+    
+    private static final double CONSTANT = 370.0;
+    private static final double LEAN_MASS_MULTIPLIER = 21.6;
+    
+    // Deurenberg: body fat % = (1.20 × BMI) + (0.23 × age) - (10.8 × sex) - 5.4, sex = 1 for male
+    private static final double BMI_MULTIPLIER = 1.20;
+    private static final double AGE_MULTIPLIER = 0.23;
+    private static final double MALE_OFFSET = 10.8;
+    private static final double BODY_FAT_CONSTANT = 5.4;
+    
+    // Keeps the estimate plausible at the edges of the BMI range
+    private static final double MIN_BODY_FAT = 2.0;
+    private static final double MAX_BODY_FAT = 70.0;
+    
+    @Override
+    public String getFormula() {
+        return "katch-mcardle";
+    }
+    
+    @Override
+    public double calculateBMR(double weightKg, double heightCm, int age, User.Gender gender) {
+        double heightInMeters = heightCm / 100.0;
+        double bmi = weightKg / (heightInMeters * heightInMeters);
+        double bodyFat = (BMI_MULTIPLIER * bmi) + 
+                         (AGE_MULTIPLIER * age) - 
+                         (gender == User.Gender.MALE ? MALE_OFFSET : 0.0) - 
+                         BODY_FAT_CONSTANT;
+        bodyFat = Math.min(MAX_BODY_FAT, Math.max(MIN_BODY_FAT, bodyFat));
+        double leanMass = weightKg * (1.0 - bodyFat / 100.0);
+        
+        // Katch-McArdle Equation:
+        // BMR = 370 + (21.6 × lean body mass)
+        return CONSTANT + (LEAN_MASS_MULTIPLIER * leanMass);
+    }
+}
+
@@ -1,15 +1,29 @@
 package com.healthmonitor.service.calculator.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.healthmonitor.service.calculator.CalorieCalculator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 
 /**
  * Standard Calorie Calculator implementation
  * Uses MET (Metabolic Equivalent) values to calculate calories burned
  * Demonstrates polymorphism - implements CalorieCalculator interface
+ * 
+ * Activity types that are not an exact entry are resolved by ActivityTypeResolver,
+ * which gives the same answer regardless of map order. Resolved raw names are kept
+ * in a bounded memo, so a repeated name costs one cache lookup and no allocation.
+ * 
+ * Each entry also has a MET id (0 is the default), an index into a plain double[]
+ * table, so batch calculations work on primitive arrays without any lookups.
  */
 @Service
 public class StandardCalorieCalculator implements CalorieCalculator {
@@ -40,9 +54,37 @@ public class StandardCalorieCalculator implements CalorieCalculator {
         MET_VALUES.put("BASKETBALL", 8.0);
         MET_VALUES.put("TENNIS", 7.0);
         MET_VALUES.put("SOCCER", 7.0);
-        
-        // Default MET value for unknown activities
-        MET_VALUES.put("DEFAULT", 3.5);
+    }
+    
+    // Default MET value for unknown activities
+    private static final double DEFAULT_MET = 3.5;
+    private static final Integer DEFAULT_MET_ID = 0;
+    
+    // MET values by id: the default first, then the entries in name order
+    private static final double[] MET_BY_ID = new double[MET_VALUES.size() + 1];
+    private static final ActivityTypeResolver<Integer> RESOLVER;
+    
+    static {
+        MET_BY_ID[DEFAULT_MET_ID] = DEFAULT_MET;
+        Map<String, Integer> ids = new HashMap<>();
+        String[] types = MET_VALUES.keySet().stream().sorted().toArray(String[]::new);
+        for (int i = 0; i < types.length; i++) {
+            ids.put(types[i], i + 1);
+            MET_BY_ID[i + 1] = MET_VALUES.get(types[i]);
+        }
+        RESOLVER = new ActivityTypeResolver<>(ids);
+    }
+    
+    private final Cache<String, Integer> resolved;
+    
+    @Autowired
+    public StandardCalorieCalculator(MeterRegistry meterRegistry,
+                                     @Value("${healthmonitor.met.memo-size:1024}") long memoSize) {
+        this.resolved = Caffeine.newBuilder()
+            .maximumSize(memoSize)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, resolved, "metValues");
     }
     
     /**
@@ -67,29 +109,55 @@ public class StandardCalorieCalculator implements CalorieCalculator {
         return met * weightKg * durationHours;
     }
     
+    /**
+     * Same formula as the per-activity method, in one loop over primitive arrays
+     * Ids outside the table count as the default MET. Allocates nothing.
+     */
+    @Override
+    public void calculateCaloriesBurned(int[] metIds, double[] durationMinutes, double[] weightKg,
+                                        double[] caloriesBurned, int length) {
+        double[] metById = MET_BY_ID;
+        for (int i = 0; i < length; i++) {
+            double duration = durationMinutes[i];
+            double weight = weightKg[i];
+            int metId = metIds[i];
+            double met = metId >= 0 && metId < metById.length ? metById[metId] : DEFAULT_MET;
+            caloriesBurned[i] = duration <= 0 || weight <= 0 ? 0.0 : met * weight * (duration / 60.0);
+        }
+    }
+    
+    /**
+     * Gets the MET value for an activity type, ignoring case and surrounding whitespace
+     * A name that is not an entry resolves to the longest entry it contains, else to the
+     * entry it is part of (see ActivityTypeResolver), else to the default.
+     */
     @Override
     public double getMETValue(String activityType) {
-        if (activityType == null || activityType.trim().isEmpty()) {
-            return MET_VALUES.get("DEFAULT");
+        return MET_BY_ID[resolveMETId(activityType)];
+    }
+    
+    @Override
+    public int resolveMETId(String activityType) {
+        if (activityType == null) {
+            return DEFAULT_MET_ID;
         }
         
-        String normalizedActivity = activityType.toUpperCase().trim();
-        
-        // Try exact match first
-        if (MET_VALUES.containsKey(normalizedActivity)) {
-            return MET_VALUES.get(normalizedActivity);
+        Integer metId = resolved.getIfPresent(activityType);
+        if (metId == null) {
+            metId = resolve(activityType);
+            resolved.put(activityType, metId);
         }
-        
-        // Try partial match for common variations
-        for (Map.Entry<String, Double> entry : MET_VALUES.entrySet()) {
-            if (normalizedActivity.contains(entry.getKey()) || 
-                entry.getKey().contains(normalizedActivity)) {
-                return entry.getValue();
-            }
+        return metId;
+    }
+    
+    private static Integer resolve(String activityType) {
+        String normalizedActivity = activityType.trim().toUpperCase(Locale.ROOT);
+        if (normalizedActivity.isEmpty()) {
+            return DEFAULT_MET_ID;
         }
         
-        // Default MET value if activity not found
-        return MET_VALUES.get("DEFAULT");
+        Integer metId = RESOLVER.resolve(normalizedActivity);
+        return metId != null ? metId : DEFAULT_MET_ID;
     }
 }
 
@@ -0,0 +1,90 @@
+-- Schema as created by Hibernate (ddl-auto=update) before versioned migrations were introduced.
+-- Existing databases are baselined at this version and only run the later scripts.
+
+create sequence users_seq start with 1 increment by 50;
+create sequence activities_seq start with 1 increment by 50;
+create sequence health_metrics_seq start with 1 increment by 50;
+create sequence health_metrics_rollups_seq start with 1 increment by 50;
+create sequence idempotency_keys_seq start with 1 increment by 50;
+
+create table users (
+    id bigint not null,
+    name varchar(255) not null,
+    email varchar(255) not null,
+    date_of_birth date not null,
+    gender varchar(255) not null check (gender in ('MALE', 'FEMALE', 'OTHER')),
+    height_cm float(53) not null,
+    weight_kg float(53) not null,
+    activity_level varchar(255)
+        check (activity_level in ('SEDENTARY', 'LIGHTLY_ACTIVE', 'MODERATELY_ACTIVE', 'VERY_ACTIVE', 'EXTRA_ACTIVE')),
+    created_at timestamp(6) not null,
+    updated_at timestamp(6),
+    primary key (id),
+    constraint uk_users_email unique (email)
+);
+
+create table activities (
+    id bigint not null,
+    user_id bigint not null,
+    activity_type varchar(255) not null,
+    start_time timestamp(6) not null,
+    end_time timestamp(6) not null,
+    duration_minutes float(53) not null,
+    calories_burned float(53),
+    distance_km float(53),
+    notes varchar(1000),
+    created_at timestamp(6) not null,
+    updated_at timestamp(6),
+    primary key (id),
+    constraint fk_activities_user foreign key (user_id) references users
+);
+
+create table health_metrics (
+    id bigint not null,
+    user_id bigint not null,
+    date date not null,
+    steps integer,
+    calories_consumed float(53),
+    calories_burned float(53),
+    distance_km float(53),
+    active_minutes integer,
+    water_intake_liters float(53),
+    sleep_hours float(53),
+    heart_rate_avg integer,
+    version bigint,
+    created_at timestamp(6) not null,
+    updated_at timestamp(6),
+    primary key (id),
+    constraint uk_health_metrics_user_date unique (user_id, date),
+    constraint fk_health_metrics_user foreign key (user_id) references users
+);
+
+create table health_metrics_rollups (
+    id bigint not null,
+    user_id bigint not null,
+    period varchar(10) not null check (period in ('WEEK', 'MONTH')),
+    period_start date not null,
+    steps bigint not null,
+    calories_consumed float(53) not null,
+    calories_burned float(53) not null,
+    distance_km float(53) not null,
+    active_minutes bigint not null,
+    created_at timestamp(6) not null,
+    updated_at timestamp(6),
+    primary key (id),
+    constraint uk_health_metrics_rollups_user_period unique (user_id, period, period_start),
+    constraint fk_health_metrics_rollups_user foreign key (user_id) references users
+);
+
+create table idempotency_keys (
+    id bigint not null,
+    scope varchar(100) not null,
+    idempotency_key varchar(255) not null,
+    request_hash varchar(64) not null,
+    response_status integer not null,
+    response_body clob,
+    created_at timestamp(6) not null,
+    updated_at timestamp(6),
+    primary key (id),
+    constraint uk_idempotency_keys_scope_key unique (scope, idempotency_key)
+);
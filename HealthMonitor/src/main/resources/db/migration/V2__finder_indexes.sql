@@ -0,0 +1,16 @@
+-- Composite indexes for the repository finders that are not already served by a primary key
+-- or unique constraint. The unique constraints cover:
+--   health_metrics (user_id, date): findByUserAndDate, findByUserAndDateBetween, findByUserOrderByDateDesc
+--   health_metrics_rollups (user_id, period, period_start): findByUserAndPeriodAndPeriodStart, deleteByUserId
+--   idempotency_keys (scope, idempotency_key): findByScopeAndIdempotencyKey
+--   users (email): findByEmail, existsByEmail
+
+-- findByUserAndStartTimeBetween, findByUserOrderByStartTimeDesc and the keyset page seek
+-- (id breaks ties between equal start times). Databases created by ddl-auto=update may have it already.
+create index if not exists idx_activities_user_start_time on activities (user_id, start_time, id);
+
+-- findByUserAndActivityType
+create index if not exists idx_activities_user_type_start_time on activities (user_id, activity_type, start_time);
+
+-- deleteCreatedBefore (hourly purge of expired keys)
+create index if not exists idx_idempotency_keys_created_at on idempotency_keys (created_at);
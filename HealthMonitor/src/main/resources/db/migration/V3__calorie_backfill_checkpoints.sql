@@ -0,0 +1,17 @@
+-- Progress of calorie recompute jobs (CalorieBackfillService), one row per user with an unfinished job.
+-- Activities up to last_activity_id have been recomputed for weight_kg; the row is deleted when the job ends.
+
+create sequence calorie_backfill_checkpoints_seq start with 1 increment by 50;
+
+create table calorie_backfill_checkpoints (
+    id bigint not null,
+    user_id bigint not null,
+    weight_kg float(53) not null,
+    last_activity_id bigint not null,
+    processed_activities bigint not null,
+    created_at timestamp(6) not null,
+    updated_at timestamp(6),
+    primary key (id),
+    constraint uk_calorie_backfill_checkpoints_user unique (user_id),
+    constraint fk_calorie_backfill_checkpoints_user foreign key (user_id) references users
+);
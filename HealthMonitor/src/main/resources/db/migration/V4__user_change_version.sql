@@ -0,0 +1,4 @@
+-- Per-user counter of data changes, used as the cache validator of metrics and activity reads.
+-- Every write of a user's daily metrics or activities increments it in the same transaction.
+
+alter table users add column change_version bigint default 0 not null;
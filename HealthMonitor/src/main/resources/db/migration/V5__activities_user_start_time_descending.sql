@@ -0,0 +1,13 @@
+-- Rebuild idx_activities_user_start_time in descending order. H2 can only return rows in index
+-- order if the ORDER BY matches the index columns from the first one on. It also prefers the
+-- smaller foreign key index on user_id when no sort can be skipped. So the newest-first finders
+-- (activity history and keyset pages) sorted all of a user's activities for every page. They now
+-- order by user id, start time and id, all descending, and read the index in order. Range
+-- queries still use the index for the time range and sort only the rows in it. PostgreSQL can
+-- scan the index in both directions, so there the order makes no difference.
+--
+-- The health_metrics unique constraint stays ascending: findByUserOrderByDateDesc is not used
+-- by any endpoint, and range queries only use the constraint for the date range.
+
+drop index if exists idx_activities_user_start_time;
+create index idx_activities_user_start_time on activities (user_id desc, start_time desc, id desc);
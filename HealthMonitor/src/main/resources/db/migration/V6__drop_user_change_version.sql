@@ -0,0 +1,5 @@
+-- Drop users.change_version. Every metrics and activity write incremented it first, so all writes
+-- of a user, including rollup drains and backfill chunks, queued on the user row. Cached reads are
+-- now validated by an in-memory marker that writes advance after they commit (UserChangeTracker).
+
+alter table users drop column change_version;
@@ -0,0 +1,5 @@
+-- Drop health_metrics.version. It was mapped as the JPA optimistic lock, but daily rows are only
+-- written by the native upserts in HealthMetricsRepositoryImpl, so no write ever checked it.
+-- Concurrent writers are ordered by the row locks those statements take.
+
+alter table health_metrics drop column version;
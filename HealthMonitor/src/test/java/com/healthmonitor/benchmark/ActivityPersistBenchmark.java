@@ -0,0 +1,114 @@
+package com.healthmonitor.benchmark;
+
+import com.healthmonitor.model.Activity;
+import com.healthmonitor.model.User;
+import com.healthmonitor.repository.ActivityRepository;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to persist 100k activities through JPA, with Hibernate's JDBC batching off and on
+ * 
+ * Activities are saved in transactions of 1000, like an import chunk. A batch size of 1 sends
+ * one INSERT per row, as IDENTITY ids forced; 50 is the configured batch size.
+ * This measures JDBC batching only: both runs take their ids from the pooled activities_seq,
+ * so the per-row generated-key read-back an IDENTITY column adds is not part of either score.
+ * The embedded database has no round trip per statement, so the same runs are repeated
+ * against H2 over a loopback TCP connection, closer to a database server.
+ * Rows per second = 100,000 / (score in seconds).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ActivityPersistBenchmark {
+    
+    private static final int ROWS = 100_000;
+    private static final int ROWS_PER_TRANSACTION = 1000;
+    private static final String[] ACTIVITY_TYPES = {"running", "cycling", "swimming", "walking"};
+    
+    @Param({"1", "50"})
+    public int batchSize;
+    
+    @Param({"embedded", "tcp"})
+    public String connection;
+    
+    private Server server;
+    private ConfigurableApplicationContext context;
+    private ActivityRepository activityRepository;
+    private TransactionTemplate transaction;
+    private JdbcTemplate jdbcTemplate;
+    private User user;
+    
+    @Setup(Level.Trial)
+    public void startApplication() throws SQLException {
+        String batchSizeProperty = "spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize;
+        if ("tcp".equals(connection)) {
+            server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+            context = BenchmarkContexts.start(batchSizeProperty, "spring.datasource.url=jdbc:h2:tcp://localhost:"
+                + server.getPort() + "/mem:persist-benchmark;DB_CLOSE_DELAY=-1");
+        } else {
+            context = BenchmarkContexts.start(batchSizeProperty);
+        }
+        activityRepository = context.getBean(ActivityRepository.class);
+        transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        user = BenchmarkContexts.createUser(context, "persist-benchmark@example.com");
+    }
+    
+    @TearDown(Level.Iteration)
+    public void deleteActivities() {
+        jdbcTemplate.update("DELETE FROM activities");
+    }
+    
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+        if (server != null) {
+            server.stop();
+        }
+    }
+    
+    @Benchmark
+    public int persistActivities() {
+        LocalDateTime firstStart = LocalDateTime.of(2020, 1, 1, 7, 0);
+        int persisted = 0;
+        for (int offset = 0; offset < ROWS; offset += ROWS_PER_TRANSACTION) {
+            List<Activity> chunk = new ArrayList<>(ROWS_PER_TRANSACTION);
+            for (int i = offset; i < offset + ROWS_PER_TRANSACTION; i++) {
+                LocalDateTime start = firstStart.plusHours(i);
+                Activity activity = new Activity(user, ACTIVITY_TYPES[i % ACTIVITY_TYPES.length], start,
+                                                 start.plusMinutes(30 + i % 60));
+                activity.setCaloriesBurned(250.0);
+                chunk.add(activity);
+            }
+            persisted += transaction.execute(status -> activityRepository.saveAll(chunk).size());
+        }
+        return persisted;
+    }
+}
+
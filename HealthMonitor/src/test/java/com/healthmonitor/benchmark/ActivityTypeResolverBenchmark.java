@@ -0,0 +1,122 @@
+package com.healthmonitor.benchmark;
+
+import com.healthmonitor.service.calculator.impl.StandardCalorieCalculator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MET lookups of raw activity type names: the former HashMap scan against the precompiled resolver,
+ * with and without the memo of StandardCalorieCalculator
+ * 
+ * Each invocation looks up the same mix of exact names, case and whitespace variants, longer and
+ * shorter names and unknown names. ActivityTypeResolver is package-private, so the resolver is
+ * measured through getMETValue of a calculator whose memo holds nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ActivityTypeResolverBenchmark {
+    
+    private static final String[] NAMES = {
+        "running", "Running", " RUNNING_FAST ", "walking_fast", "morning running", "run",
+        "swimming_vigorous_laps", "pilates", "cycling_moderate", "jumping_rope", "tennis doubles",
+        "soccer", "yoga", "basketball", "walk", "hiking"
+    };
+    
+    private static final Map<String, Double> MET_VALUES = new HashMap<>();
+    
+    static {
+        MET_VALUES.put("WALKING_SLOW", 2.5);
+        MET_VALUES.put("WALKING", 3.5);
+        MET_VALUES.put("CYCLING_LIGHT", 4.0);
+        MET_VALUES.put("WALKING_FAST", 5.0);
+        MET_VALUES.put("JOGGING", 7.0);
+        MET_VALUES.put("RUNNING", 9.8);
+        MET_VALUES.put("CYCLING_MODERATE", 6.8);
+        MET_VALUES.put("SWIMMING", 6.0);
+        MET_VALUES.put("YOGA", 3.0);
+        MET_VALUES.put("RUNNING_FAST", 11.5);
+        MET_VALUES.put("CYCLING_FAST", 10.0);
+        MET_VALUES.put("SWIMMING_VIGOROUS", 10.0);
+        MET_VALUES.put("JUMPING_ROPE", 12.0);
+        MET_VALUES.put("BASKETBALL", 8.0);
+        MET_VALUES.put("TENNIS", 7.0);
+        MET_VALUES.put("SOCCER", 7.0);
+    }
+    
+    private static final double DEFAULT_MET = 3.5;
+    
+    private StandardCalorieCalculator calculatorWithoutMemo;
+    private StandardCalorieCalculator calculator;
+    
+    @Setup
+    public void buildCalculators() {
+        calculatorWithoutMemo = new StandardCalorieCalculator(new SimpleMeterRegistry(), 0);
+        calculator = new StandardCalorieCalculator(new SimpleMeterRegistry(), 1024);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void hashMapScan(Blackhole blackhole) {
+        for (String name : NAMES) {
+            blackhole.consume(scanMETValue(name));
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void resolverWithoutMemo(Blackhole blackhole) {
+        for (String name : NAMES) {
+            blackhole.consume(calculatorWithoutMemo.getMETValue(name));
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(16)
+    public void calculatorWithMemo(Blackhole blackhole) {
+        for (String name : NAMES) {
+            blackhole.consume(calculator.getMETValue(name));
+        }
+    }
+    
+    /**
+     * The lookup StandardCalorieCalculator.getMETValue used to do
+     */
+    private static double scanMETValue(String activityType) {
+        if (activityType == null || activityType.trim().isEmpty()) {
+            return DEFAULT_MET;
+        }
+        
+        String normalizedActivity = activityType.toUpperCase().trim();
+        if (MET_VALUES.containsKey(normalizedActivity)) {
+            return MET_VALUES.get(normalizedActivity);
+        }
+        
+        for (Map.Entry<String, Double> entry : MET_VALUES.entrySet()) {
+            if (normalizedActivity.contains(entry.getKey())
+                || entry.getKey().contains(normalizedActivity)) {
+                return entry.getValue();
+            }
+        }
+        return DEFAULT_MET;
+    }
+}
+
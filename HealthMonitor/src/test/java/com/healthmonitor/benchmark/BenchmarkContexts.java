@@ -0,0 +1,46 @@
+package com.healthmonitor.benchmark;
+
+import com.healthmonitor.HealthMonitorApplication;
+import com.healthmonitor.model.User;
+import com.healthmonitor.service.UserService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+
+/**
+ * Starts the application for benchmarks that go through the services and the database
+ * Uses the test profile without the web server; every benchmark fork gets its own in-memory database.
+ */
+final class BenchmarkContexts {
+    
+    private BenchmarkContexts() {
+    }
+    
+    /**
+     * Start the application context
+     * 
+     * @param properties Extra properties as name=value, e.g. a Hibernate setting under comparison
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(HealthMonitorApplication.class)
+            .profiles("test")
+            .web(WebApplicationType.NONE)
+            .logStartupInfo(false)
+            .properties("spring.main.banner-mode=off", "logging.level.root=WARN",
+                        "logging.level.com.healthmonitor=WARN")
+            .properties(properties)
+            .run();
+    }
+    
+    /**
+     * Create a user to own the benchmark data
+     */
+    static User createUser(ConfigurableApplicationContext context, String email) {
+        return context.getBean(UserService.class)
+            .createUser(new User("Benchmark", email, LocalDate.of(1985, 6, 15), User.Gender.OTHER,
+                                 175.0, 70.0, User.ActivityLevel.MODERATELY_ACTIVE));
+    }
+}
+
@@ -0,0 +1,87 @@
+package com.healthmonitor.benchmark;
+
+import com.healthmonitor.service.calculator.CalorieCalculator;
+import com.healthmonitor.service.calculator.impl.StandardCalorieCalculator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calories for 10M activities: one calculateCaloriesBurned(type, duration, weight) call per row
+ * against the primitive-array batch method
+ * 
+ * The batch is measured on its own and together with resolving every row's MET id, which is
+ * what a bulk import pays per chunk. All variants write into the same result array.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class CalorieBatchBenchmark {
+    
+    private static final int ROWS = 10_000_000;
+    private static final String[] ACTIVITY_TYPES = {
+        "running", "Walking", "cycling_moderate", "swimming", "yoga", "morning run", "tennis", "hiking"
+    };
+    
+    private CalorieCalculator calculator;
+    private String[] activityTypes;
+    private int[] metIds;
+    private double[] durationMinutes;
+    private double[] weightKg;
+    private double[] caloriesBurned;
+    
+    @Setup
+    public void generateRows() {
+        calculator = new StandardCalorieCalculator(new SimpleMeterRegistry(), 1024);
+        Random random = new Random(42);
+        activityTypes = new String[ROWS];
+        metIds = new int[ROWS];
+        durationMinutes = new double[ROWS];
+        weightKg = new double[ROWS];
+        caloriesBurned = new double[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            activityTypes[i] = ACTIVITY_TYPES[random.nextInt(ACTIVITY_TYPES.length)];
+            metIds[i] = calculator.resolveMETId(activityTypes[i]);
+            durationMinutes[i] = 5 + random.nextInt(180);
+            weightKg[i] = 45 + random.nextDouble() * 80;
+        }
+    }
+    
+    @Benchmark
+    public double[] perCall() {
+        for (int i = 0; i < ROWS; i++) {
+            caloriesBurned[i] = calculator.calculateCaloriesBurned(activityTypes[i], durationMinutes[i], weightKg[i]);
+        }
+        return caloriesBurned;
+    }
+    
+    @Benchmark
+    public double[] batch() {
+        calculator.calculateCaloriesBurned(metIds, durationMinutes, weightKg, caloriesBurned, ROWS);
+        return caloriesBurned;
+    }
+    
+    @Benchmark
+    public double[] resolveThenBatch() {
+        for (int i = 0; i < ROWS; i++) {
+            metIds[i] = calculator.resolveMETId(activityTypes[i]);
+        }
+        calculator.calculateCaloriesBurned(metIds, durationMinutes, weightKg, caloriesBurned, ROWS);
+        return caloriesBurned;
+    }
+}
+
@@ -0,0 +1,155 @@
+package com.healthmonitor.benchmark;
+
+import com.healthmonitor.dto.ActivityDTO;
+import com.healthmonitor.dto.HealthMetricsDTO;
+import com.healthmonitor.dto.UserDTO;
+import com.healthmonitor.model.Activity;
+import com.healthmonitor.model.DailyMetricsDelta;
+import com.healthmonitor.model.User;
+import com.healthmonitor.repository.ActivityRepository;
+import com.healthmonitor.repository.HealthMetricsRepository;
+import com.healthmonitor.repository.UserRepository;
+import com.healthmonitor.service.ActivityService;
+import com.healthmonitor.service.HealthMetricsService;
+import com.healthmonitor.service.KeysetCursor;
+import com.healthmonitor.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Heap churn and latency per request of the list and range endpoints: managed entities mapped
+ * to DTOs against the constructor projections that read straight into DTOs
+ * 
+ * The entity variants load in a read-write transaction and map inside it, as the service and
+ * controller did with the persistence context held open for the request. Both list variants
+ * read one first page of KeysetCursor.MAX_PAGE_SIZE + 1 rows, the size the list endpoints serve.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class DtoReadBenchmark {
+    
+    private static final int USERS = 500;
+    private static final int ACTIVITIES = 1000;
+    private static final int DAYS = 365;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+    private static final LocalDate LAST_DAY = FIRST_DAY.plusDays(DAYS - 1);
+    private static final String[] ACTIVITY_TYPES = {"running", "cycling", "swimming", "walking"};
+    
+    private ConfigurableApplicationContext context;
+    private ActivityService activityService;
+    private HealthMetricsService healthMetricsService;
+    private UserService userService;
+    private ActivityRepository activityRepository;
+    private HealthMetricsRepository healthMetricsRepository;
+    private UserRepository userRepository;
+    private TransactionTemplate transaction;
+    private User user;
+    
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkContexts.start();
+        activityService = context.getBean(ActivityService.class);
+        healthMetricsService = context.getBean(HealthMetricsService.class);
+        userService = context.getBean(UserService.class);
+        activityRepository = context.getBean(ActivityRepository.class);
+        healthMetricsRepository = context.getBean(HealthMetricsRepository.class);
+        userRepository = context.getBean(UserRepository.class);
+        transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        
+        for (int u = 0; u < USERS; u++) {
+            user = BenchmarkContexts.createUser(context, "dto-benchmark-" + u + "@example.com");
+        }
+        
+        List<Activity> activities = new ArrayList<>(ACTIVITIES);
+        for (int i = 0; i < ACTIVITIES; i++) {
+            LocalDateTime start = FIRST_DAY.atTime(7, 0).plusHours(8L * i);
+            Activity activity = new Activity(user, ACTIVITY_TYPES[i % ACTIVITY_TYPES.length], start,
+                                             start.plusMinutes(30 + i % 60));
+            activity.setCaloriesBurned(250.0);
+            activity.setDistanceKm(5.0);
+            activities.add(activity);
+        }
+        transaction.executeWithoutResult(status -> activityRepository.batchInsert(activities));
+        
+        Map<LocalDate, DailyMetricsDelta> totals = new TreeMap<>();
+        for (int day = 0; day < DAYS; day++) {
+            totals.put(FIRST_DAY.plusDays(day), new DailyMetricsDelta(6000 + day, 300.0, 45, 5.0));
+        }
+        healthMetricsService.addDailyTotals(user.getId(), totals);
+    }
+    
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+    
+    @Benchmark
+    public List<ActivityDTO> activityListFromEntities() {
+        return transaction.execute(status -> activityRepository.findByUserOrderByUserIdDescStartTimeDescIdDesc(
+                user, ScrollPosition.keyset(), Limit.of(KeysetCursor.MAX_PAGE_SIZE + 1))
+            .stream()
+            .map(ActivityDTO::new)
+            .collect(Collectors.toList()));
+    }
+    
+    @Benchmark
+    public List<ActivityDTO> activityListFromProjection() {
+        return activityService.getActivitiesByUser(user).getContent();
+    }
+    
+    @Benchmark
+    public List<HealthMetricsDTO> metricsRangeFromEntities() {
+        return transaction.execute(status -> healthMetricsRepository.findByUserAndDateBetween(user, FIRST_DAY, LAST_DAY)
+            .stream()
+            .map(HealthMetricsDTO::new)
+            .collect(Collectors.toList()));
+    }
+    
+    @Benchmark
+    public List<HealthMetricsDTO> metricsRangeFromProjection() {
+        return healthMetricsService.getMetricsByUserAndDateRange(user, FIRST_DAY, LAST_DAY);
+    }
+    
+    @Benchmark
+    public List<UserDTO> userListFromEntities() {
+        return transaction.execute(status -> userRepository.findByOrderByIdAsc(
+                ScrollPosition.keyset(), Limit.of(KeysetCursor.MAX_PAGE_SIZE + 1))
+            .stream()
+            .map(UserDTO::new)
+            .collect(Collectors.toList()));
+    }
+    
+    @Benchmark
+    public List<UserDTO> userListFromProjection() {
+        return userService.getAllUsers().getContent();
+    }
+}
+
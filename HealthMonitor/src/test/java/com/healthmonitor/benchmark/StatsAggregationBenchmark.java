@@ -0,0 +1,129 @@
+package com.healthmonitor.benchmark;
+
+import com.healthmonitor.model.DailyMetricsDelta;
+import com.healthmonitor.model.HealthMetrics;
+import com.healthmonitor.model.StatsGranularity;
+import com.healthmonitor.model.User;
+import com.healthmonitor.repository.HealthMetricsRepository;
+import com.healthmonitor.repository.MetricsAggregate;
+import com.healthmonitor.service.HealthMetricsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and allocation of a user's stats over 365 days: full HealthMetrics entities summed in
+ * Java (what getWeeklyStats used to do) against the SUM/COUNT aggregate queries
+ * 
+ * Totals are compared for the whole range and per month, as /dashboard/stats returns them.
+ * The entity variants run in a read-write transaction like the service methods they replace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class StatsAggregationBenchmark {
+    
+    private static final int USERS = 10;
+    private static final int DAYS = 365;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+    private static final LocalDate LAST_DAY = FIRST_DAY.plusDays(DAYS - 1);
+    
+    private ConfigurableApplicationContext context;
+    private HealthMetricsService healthMetricsService;
+    private HealthMetricsRepository healthMetricsRepository;
+    private TransactionTemplate transaction;
+    private User user;
+    
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkContexts.start();
+        healthMetricsService = context.getBean(HealthMetricsService.class);
+        healthMetricsRepository = context.getBean(HealthMetricsRepository.class);
+        transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        
+        for (int u = 0; u < USERS; u++) {
+            user = BenchmarkContexts.createUser(context, "stats-benchmark-" + u + "@example.com");
+            Map<LocalDate, DailyMetricsDelta> totals = new TreeMap<>();
+            for (int day = 0; day < DAYS; day++) {
+                totals.put(FIRST_DAY.plusDays(day),
+                           new DailyMetricsDelta(6000 + day * 7 % 5000, 300.0 + day % 200, 30 + day % 60,
+                                                 4.0 + day % 10));
+            }
+            healthMetricsService.addDailyTotals(user.getId(), totals);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+    
+    @Benchmark
+    public double[] totalFromEntities() {
+        return transaction.execute(status -> {
+            List<HealthMetrics> metrics = healthMetricsRepository.findByUserAndDateBetween(user, FIRST_DAY, LAST_DAY);
+            return sum(metrics);
+        });
+    }
+    
+    @Benchmark
+    public MetricsAggregate totalFromAggregateQuery() {
+        return healthMetricsService.getAggregate(user, FIRST_DAY, LAST_DAY);
+    }
+    
+    @Benchmark
+    public Map<YearMonth, double[]> monthlyFromEntities() {
+        return transaction.execute(status -> {
+            Map<YearMonth, List<HealthMetrics>> byMonth = new TreeMap<>();
+            for (HealthMetrics metrics : healthMetricsRepository.findByUserAndDateBetween(user, FIRST_DAY, LAST_DAY)) {
+                byMonth.computeIfAbsent(YearMonth.from(metrics.getDate()), month -> new ArrayList<>())
+                    .add(metrics);
+            }
+            Map<YearMonth, double[]> totals = new TreeMap<>();
+            byMonth.forEach((month, metrics) -> totals.put(month, sum(metrics)));
+            return totals;
+        });
+    }
+    
+    @Benchmark
+    public List<MetricsAggregate> monthlyFromAggregateQuery() {
+        return healthMetricsService.getAggregates(user, FIRST_DAY, LAST_DAY, StatsGranularity.MONTH);
+    }
+    
+    /**
+     * Sum the five stats columns the way getWeeklyStats did
+     */
+    private static double[] sum(List<HealthMetrics> metrics) {
+        return new double[] {
+            metrics.stream().mapToInt(m -> m.getSteps() != null ? m.getSteps() : 0).sum(),
+            metrics.stream().mapToDouble(m -> m.getCaloriesBurned() != null ? m.getCaloriesBurned() : 0.0).sum(),
+            metrics.stream().mapToDouble(m -> m.getCaloriesConsumed() != null ? m.getCaloriesConsumed() : 0.0).sum(),
+            metrics.stream().mapToDouble(m -> m.getDistanceKm() != null ? m.getDistanceKm() : 0.0).sum(),
+            metrics.stream().mapToInt(m -> m.getActiveMinutes() != null ? m.getActiveMinutes() : 0).sum()
+        };
+    }
+}
+
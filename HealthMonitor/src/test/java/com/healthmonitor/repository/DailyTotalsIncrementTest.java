@@ -0,0 +1,60 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.DailyMetricsDelta;
+import com.healthmonitor.model.HealthMetrics;
+import com.healthmonitor.model.User;
+import com.healthmonitor.service.UserService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A delta that adds to some totals and takes from others creates a missing day's row,
+ * while one that only takes something back leaves the day without a row
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class DailyTotalsIncrementTest {
+    
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 6);
+    
+    @Autowired
+    private HealthMetricsRepository healthMetricsRepository;
+    
+    @Autowired
+    private UserService userService;
+    
+    @Test
+    void mixedDeltaCreatesMissingRow() {
+        User user = createUser("mixed-delta@example.com");
+        
+        healthMetricsRepository.incrementDailyTotals(user.getId(), DAY, new DailyMetricsDelta(0, 120.0, -10, 0.0));
+        
+        HealthMetrics metrics = healthMetricsRepository.findByUserAndDate(user, DAY).orElseThrow();
+        assertEquals(120.0, metrics.getCaloriesBurned(), 1e-9);
+        assertEquals(-10, metrics.getActiveMinutes());
+    }
+    
+    @Test
+    void decreaseOnlyDeltaSkipsMissingRow() {
+        User user = createUser("decrease-delta@example.com");
+        
+        assertTrue(healthMetricsRepository.incrementDailyTotals(user.getId(), DAY,
+                                                                new DailyMetricsDelta(0, -120.0, -10, 0.0)).isEmpty());
+        assertTrue(healthMetricsRepository.findByUserAndDate(user, DAY).isEmpty());
+    }
+    
+    private User createUser(String email) {
+        return userService.createUser(new User("Daily Totals", email, LocalDate.of(1990, 1, 1), User.Gender.OTHER,
+                                               175.0, 70.0, User.ActivityLevel.MODERATELY_ACTIVE));
+    }
+}
+
@@ -0,0 +1,209 @@
+package com.healthmonitor.repository;
+
+import com.healthmonitor.model.Activity;
+import com.healthmonitor.model.User;
+import com.healthmonitor.service.HealthMetricsService;
+import com.healthmonitor.service.KeysetCursor;
+import com.healthmonitor.service.UserService;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Window;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The finders that V2__finder_indexes.sql and the unique constraints are meant for must be
+ * planned on those indexes, not on a table scan or the bare foreign key index
+ * 
+ * Runs each finder on a seeded database, records the SQL Hibernate sends and asks H2 to EXPLAIN it.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+    + "com.healthmonitor.repository.RepositoryQueryPlanTest$SqlRecorder")
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class RepositoryQueryPlanTest {
+    
+    private static final String USER_START_TIME = "IDX_ACTIVITIES_USER_START_TIME";
+    private static final String USER_TYPE_START_TIME = "IDX_ACTIVITIES_USER_TYPE_START_TIME";
+    private static final String IDEMPOTENCY_CREATED_AT = "IDX_IDEMPOTENCY_KEYS_CREATED_AT";
+    private static final String USER_DATE = "UK_HEALTH_METRICS_USER_DATE";
+    
+    private static final String[] ACTIVITY_TYPES = {"running", "cycling", "swimming", "walking"};
+    private static final int USERS = 3;
+    private static final int ACTIVITIES_PER_USER = 2000;
+    private static final int DAYS = 365;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 1, 1);
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private HealthMetricsService healthMetricsService;
+    
+    @Autowired
+    private ActivityRepository activityRepository;
+    
+    @Autowired
+    private HealthMetricsRepository healthMetricsRepository;
+    
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    private User user;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    
+    @BeforeAll
+    void seed() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        for (int u = 0; u < USERS; u++) {
+            User seeded = userService.createUser(new User("Query Plan " + u, "query-plan-" + u + "@example.com",
+                                                          LocalDate.of(1980 + u, 1, 1), User.Gender.OTHER,
+                                                          175.0, 70.0, User.ActivityLevel.MODERATELY_ACTIVE));
+            List<Activity> activities = new ArrayList<>(ACTIVITIES_PER_USER);
+            for (int i = 0; i < ACTIVITIES_PER_USER; i++) {
+                LocalDateTime start = FIRST_DAY.atTime(7, 0).plusHours(4L * i);
+                activities.add(new Activity(seeded, ACTIVITY_TYPES[i % ACTIVITY_TYPES.length], start,
+                                            start.plusMinutes(45)));
+            }
+            transaction.executeWithoutResult(status -> activityRepository.batchInsert(activities));
+            
+            Map<LocalDate, Integer> stepsByDate = new TreeMap<>();
+            for (int day = 0; day < DAYS; day++) {
+                stepsByDate.put(FIRST_DAY.plusDays(day), 5000 + day);
+            }
+            healthMetricsService.addSteps(seeded, stepsByDate);
+            user = seeded;
+        }
+        jdbcTemplate.execute("ANALYZE");
+        
+        from = FIRST_DAY.plusDays(30).atStartOfDay();
+        to = FIRST_DAY.plusDays(60).atStartOfDay();
+    }
+    
+    @Test
+    void activityTimeRangeFindersUseUserStartTimeIndex() {
+        assertUsesIndex(USER_START_TIME, () -> activityRepository.findByUserAndStartTimeBetween(user, from, to));
+        assertUsesIndex(USER_START_TIME, () -> activityRepository.findDTOsByUserAndStartTimeBetween(user, from, to));
+        assertUsesIndex(USER_START_TIME, () -> {
+            try (Stream<?> activities = activityRepository.streamDTOsByUserAndStartTimeBetween(user, from, to)) {
+                activities.forEach(activity -> { });
+            }
+        });
+    }
+    
+    @Test
+    void activityHistoryFindersUseUserStartTimeIndex() {
+        assertUsesIndex(USER_START_TIME, () -> activityRepository.findByUserOrderByStartTimeDesc(user));
+        assertUsesIndex(USER_START_TIME, () -> activityRepository.findDTOsByUser(user, Limit.of(KeysetCursor.MAX_PAGE_SIZE + 1)));
+    }
+    
+    @Test
+    void activityKeysetPagesUseUserStartTimeIndex() {
+        Window<Activity> firstPage = inTransaction(() -> activityRepository.findByUserOrderByUserIdDescStartTimeDescIdDesc(
+            user, ScrollPosition.keyset(), Limit.of(20)));
+        assertUsesIndex(USER_START_TIME, () -> activityRepository.findByUserOrderByUserIdDescStartTimeDescIdDesc(
+            user, firstPage.positionAt(firstPage.size() - 1), Limit.of(20)));
+    }
+    
+    @Test
+    void activityTypeFinderUsesUserTypeIndex() {
+        assertUsesIndex(USER_TYPE_START_TIME, () -> activityRepository.findByUserAndActivityType(user, "cycling"));
+    }
+    
+    @Test
+    void idempotencyPurgeUsesCreatedAtIndex() {
+        assertUsesIndex(IDEMPOTENCY_CREATED_AT,
+                        () -> idempotencyRecordRepository.deleteCreatedBefore(LocalDateTime.now().minusDays(1)));
+    }
+    
+    @Test
+    void metricsRangeFindersUseUserDateConstraint() {
+        LocalDate start = from.toLocalDate();
+        LocalDate end = to.toLocalDate();
+        assertUsesIndex(USER_DATE, () -> healthMetricsRepository.findByUserAndDateBetween(user, start, end));
+        assertUsesIndex(USER_DATE, () -> healthMetricsRepository.findDTOsByUserAndDateBetween(user, start, end));
+        assertUsesIndex(USER_DATE, () -> {
+            try (Stream<?> metrics = healthMetricsRepository.streamDTOsByUserAndDateBetween(user, start, end)) {
+                metrics.forEach(row -> { });
+            }
+        });
+        assertUsesIndex(USER_DATE, () -> healthMetricsRepository.aggregateByUserAndDateBetween(user, start, end));
+        assertUsesIndex(USER_DATE, () -> healthMetricsRepository.aggregateDailyByUserAndDateBetween(user, start, end));
+        assertUsesIndex(USER_DATE, () -> healthMetricsRepository.aggregateMonthlyByUserAndDateBetween(user, start, end));
+    }
+    
+    /**
+     * Run a finder and check the plan of the last query it sent
+     */
+    private void assertUsesIndex(String index, Runnable finder) {
+        SqlRecorder.STATEMENTS.clear();
+        inTransaction(() -> {
+            finder.run();
+            return null;
+        });
+        String sql = lastQuery();
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+        String normalized = plan.toUpperCase(Locale.ROOT);
+        assertTrue(normalized.contains("PUBLIC." + index), () -> "Expected " + index + " in plan of\n" + sql + "\n" + plan);
+        assertFalse(normalized.contains("TABLESCAN"), () -> "Unexpected table scan in plan:\n" + plan);
+    }
+    
+    private String lastQuery() {
+        for (int i = SqlRecorder.STATEMENTS.size() - 1; i >= 0; i--) {
+            String sql = SqlRecorder.STATEMENTS.get(i);
+            String verb = sql.stripLeading().toLowerCase(Locale.ROOT);
+            if (verb.startsWith("select") || verb.startsWith("delete")) {
+                return sql;
+            }
+        }
+        throw new AssertionError("No query was sent");
+    }
+    
+    private <T> T inTransaction(Supplier<T> action) {
+        return new TransactionTemplate(transactionManager).execute(status -> action.get());
+    }
+    
+    /**
+     * Records the SQL of every statement Hibernate prepares
+     */
+    public static class SqlRecorder implements StatementInspector {
+        
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+        
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
+
@@ -0,0 +1,150 @@
+package com.healthmonitor.service;
+
+import com.healthmonitor.model.DailyMetricsDelta;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Deltas submitted concurrently add up to the same daily totals once the pipeline is quiescent,
+ * also when writes fail and are retried, and deltas waiting for a retry are written on shutdown
+ */
+class ActivityRollupPipelineTest {
+    
+    private static final LocalDate FIRST_DAY = LocalDate.of(2024, 3, 1);
+    private static final int DAYS = 3;
+    private static final int USERS = 5;
+    
+    private final HealthMetricsService healthMetricsService = mock(HealthMetricsService.class);
+    private final Map<String, DailyMetricsDelta> written = new ConcurrentHashMap<>();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private ActivityRollupPipeline pipeline;
+    
+    @AfterEach
+    void stopPipeline() throws InterruptedException {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+    
+    @Test
+    void coalescedTotalsMatchSubmittedDeltas() throws Exception {
+        pipeline = startPipeline(1, 1000);
+        
+        Map<String, DailyMetricsDelta> submitted = submitConcurrently(4, 250);
+        
+        assertTrue(pipeline.awaitQuiescence(Duration.ofSeconds(10)));
+        assertTotals(submitted);
+    }
+    
+    @Test
+    void failedWritesAreRetriedUntilTotalsMatch() throws Exception {
+        pipeline = startPipeline(1, 5);
+        failuresLeft.set(3);
+        
+        Map<String, DailyMetricsDelta> submitted = submitConcurrently(2, 100);
+        
+        assertTrue(pipeline.awaitQuiescence(Duration.ofSeconds(10)));
+        assertEquals(0, failuresLeft.get());
+        assertTotals(submitted);
+    }
+    
+    @Test
+    void shutdownWritesDeltasWaitingForRetry() throws InterruptedException {
+        pipeline = startPipeline(60_000, 60_000);
+        failuresLeft.set(1);
+        
+        pipeline.submit(1L, Map.of(FIRST_DAY, DailyMetricsDelta.ofActivity(300.0, 30, 5.0)));
+        verify(healthMetricsService, timeout(5000)).addDailyTotals(anyLong(), any());
+        
+        long started = System.nanoTime();
+        pipeline.shutdown();
+        pipeline = null;
+        
+        assertTrue(Duration.ofNanos(System.nanoTime() - started).compareTo(Duration.ofSeconds(10)) < 0);
+        assertTotals(Map.of(key(1L, FIRST_DAY), DailyMetricsDelta.ofActivity(300.0, 30, 5.0)));
+    }
+    
+    private ActivityRollupPipeline startPipeline(long initialBackoffMs, long maxBackoffMs) {
+        doAnswer(invocation -> {
+            if (failuresLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                throw new IllegalStateException("database down");
+            }
+            Long userId = invocation.getArgument(0);
+            Map<LocalDate, DailyMetricsDelta> deltasByDate = invocation.getArgument(1);
+            deltasByDate.forEach((date, delta) -> written.merge(key(userId, date), delta, DailyMetricsDelta::plus));
+            return null;
+        }).when(healthMetricsService).addDailyTotals(anyLong(), any());
+        return new ActivityRollupPipeline(healthMetricsService, 2, initialBackoffMs, maxBackoffMs);
+    }
+    
+    /**
+     * Submit activities of whole minutes and calories from several threads at once
+     * 
+     * @return The expected totals, keyed by user and date
+     */
+    private Map<String, DailyMetricsDelta> submitConcurrently(int threads, int activitiesPerThread) throws Exception {
+        Map<String, DailyMetricsDelta> expected = new ConcurrentHashMap<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService submitters = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(submitters.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < activitiesPerThread; i++) {
+                        long userId = 1 + (thread + i) % USERS;
+                        LocalDate date = FIRST_DAY.plusDays(i % DAYS);
+                        DailyMetricsDelta delta = DailyMetricsDelta.ofActivity(10 + i % 7, 1 + i % 5, 0.0);
+                        pipeline.submit(userId, Map.of(date, delta));
+                        expected.merge(key(userId, date), delta, DailyMetricsDelta::plus);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            submitters.shutdown();
+        }
+        return expected;
+    }
+    
+    private void assertTotals(Map<String, DailyMetricsDelta> expected) {
+        assertEquals(expected.keySet(), written.keySet());
+        expected.forEach((key, delta) -> {
+            DailyMetricsDelta actual = written.get(key);
+            assertEquals(delta.getCaloriesBurned(), actual.getCaloriesBurned(), 1e-9, key);
+            assertEquals(delta.getActiveMinutes(), actual.getActiveMinutes(), key);
+            assertEquals(delta.getDistanceKm(), actual.getDistanceKm(), 1e-9, key);
+        });
+    }
+    
+    private static String key(Long userId, LocalDate date) {
+        return userId + "/" + date;
+    }
+}
+
@@ -0,0 +1,140 @@
+package com.healthmonitor.service;
+
+import com.healthmonitor.model.HealthMetrics;
+import com.healthmonitor.model.HealthMetricsRollup;
+import com.healthmonitor.model.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Parallel step increments on the same user and adjacent days must all be counted,
+ * both in the daily rows and in the week and month rollups, also while the rollups
+ * are being rebuilt
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class AddStepsConcurrencyTest {
+    
+    private static final int THREADS = 8;
+    private static final int CALLS_PER_THREAD = 150;
+    private static final int DAYS = 30;
+    
+    @Autowired
+    private HealthMetricsService healthMetricsService;
+    
+    @Autowired
+    private UserService userService;
+    
+    @Test
+    void parallelAddStepsKeepExactTotals() throws Exception {
+        addStepsInParallel("concurrent-steps@example.com", false);
+    }
+    
+    @Test
+    void rollupRebuildDuringAddStepsKeepsExactTotals() throws Exception {
+        addStepsInParallel("rebuild-steps@example.com", true);
+    }
+    
+    private void addStepsInParallel(String email, boolean rebuildRollups) throws Exception {
+        User user = userService.createUser(new User("Concurrent Steps", email,
+                                                    LocalDate.of(1990, 1, 1), User.Gender.OTHER,
+                                                    175.0, 70.0, User.ActivityLevel.MODERATELY_ACTIVE));
+        // A Sunday: the days span five weeks and two months
+        LocalDate firstDay = LocalDate.of(2024, 3, 3);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<long[]>> results = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    long[] expected = new long[DAYS];
+                    start.await();
+                    for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                        // Each thread moves on to later days as it goes, so new rows keep being created
+                        int day = (thread + i * DAYS / CALLS_PER_THREAD) % DAYS;
+                        int steps = 1 + (thread * 31 + i) % 97;
+                        if (i % 3 == 0) {
+                            // Two adjacent days in one call, in the other order on odd threads
+                            int next = (day + 1) % DAYS;
+                            Map<LocalDate, Integer> stepsByDate = new HashMap<>();
+                            stepsByDate.put(firstDay.plusDays(thread % 2 == 0 ? day : next), steps);
+                            stepsByDate.put(firstDay.plusDays(thread % 2 == 0 ? next : day), steps + 1);
+                            healthMetricsService.addSteps(user, stepsByDate);
+                            expected[thread % 2 == 0 ? day : next] += steps;
+                            expected[thread % 2 == 0 ? next : day] += steps + 1;
+                        } else {
+                            healthMetricsService.addSteps(user, firstDay.plusDays(day), steps);
+                            expected[day] += steps;
+                        }
+                    }
+                    return expected;
+                }));
+            }
+            Future<Integer> rebuilds = executor.submit(() -> {
+                start.await();
+                int count = 0;
+                while (rebuildRollups && writing.get()) {
+                    healthMetricsService.rebuildRollups(user.getId());
+                    count++;
+                }
+                return count;
+            });
+            start.countDown();
+            
+            long[] expected = new long[DAYS];
+            try {
+                for (Future<long[]> result : results) {
+                    long[] perThread = result.get(2, TimeUnit.MINUTES);
+                    for (int day = 0; day < DAYS; day++) {
+                        expected[day] += perThread[day];
+                    }
+                }
+            } finally {
+                writing.set(false);
+            }
+            int rebuildCount = rebuilds.get(1, TimeUnit.MINUTES);
+            if (rebuildRollups) {
+                assertTrue(rebuildCount > 0, "rollups were not rebuilt during the writes");
+            }
+            
+            Map<HealthMetricsRollup.Period, Map<LocalDate, Long>> expectedRollups = new HashMap<>();
+            for (int day = 0; day < DAYS; day++) {
+                LocalDate date = firstDay.plusDays(day);
+                HealthMetrics metrics = healthMetricsService.getMetricsByUserAndDate(user, date).orElseThrow();
+                assertEquals(expected[day], metrics.getSteps().longValue(), "steps on " + date);
+                for (HealthMetricsRollup.Period period : HealthMetricsRollup.Period.values()) {
+                    expectedRollups.computeIfAbsent(period, key -> new HashMap<>())
+                        .merge(period.startOf(date), expected[day], Long::sum);
+                }
+            }
+            
+            expectedRollups.forEach((period, totals) -> totals.forEach((periodStart, steps) ->
+                assertEquals(steps.longValue(),
+                             healthMetricsService.getRollupTotals(user, period, periodStart).getSteps(),
+                             period + " from " + periodStart)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
+
@@ -0,0 +1,119 @@
+package com.healthmonitor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.healthmonitor.exception.IdempotencyException;
+import com.healthmonitor.model.IdempotencyRecord;
+import com.healthmonitor.repository.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Requests with an Idempotency-Key run once and are replayed after that, a key reused for
+ * a different request is rejected, and failed responses are not stored
+ */
+class IdempotencyServiceTest {
+    
+    private static final String SCOPE = "activities:1";
+    private static final String KEY = "sync-42";
+    
+    private final IdempotencyRecordRepository repository = mock(IdempotencyRecordRepository.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final IdempotencyService service = new IdempotencyService(
+        repository, objectMapper, mock(PlatformTransactionManager.class), new SimpleMeterRegistry(),
+        Duration.ofHours(24), 100);
+    private final AtomicInteger runs = new AtomicInteger();
+    
+    @Test
+    void retryIsReplayedWithoutRunningAgain() {
+        when(repository.findByScopeAndIdempotencyKey(SCOPE, KEY)).thenReturn(Optional.empty());
+        
+        ResponseEntity<String> first = execute(KEY, Map.of("steps", 500), HttpStatus.CREATED);
+        ResponseEntity<String> retry = execute(KEY, Map.of("steps", 500), HttpStatus.CREATED);
+        
+        assertEquals(1, runs.get());
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals(first.getBody(), retry.getBody());
+        assertNull(first.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        verify(repository, times(1)).saveAndFlush(any(IdempotencyRecord.class));
+    }
+    
+    @Test
+    void keyReusedForDifferentRequestIsRejected() {
+        when(repository.findByScopeAndIdempotencyKey(SCOPE, KEY)).thenReturn(Optional.empty());
+        execute(KEY, Map.of("steps", 500), HttpStatus.CREATED);
+        
+        IdempotencyException e = assertThrows(IdempotencyException.class,
+                                              () -> execute(KEY, Map.of("steps", 700), HttpStatus.CREATED));
+        
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, e.getStatus());
+        assertEquals(1, runs.get());
+    }
+    
+    @Test
+    void storedResponseIsReplayedAfterRestart() throws Exception {
+        Map<String, Integer> request = Map.of("steps", 500);
+        String requestHash = HexFormat.of().formatHex(
+            MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request)));
+        IdempotencyRecord stored = new IdempotencyRecord(SCOPE, KEY, requestHash, 201,
+                                                         objectMapper.writeValueAsString("run 7"));
+        stored.setCreatedAt(LocalDateTime.now().minusHours(1));
+        when(repository.findByScopeAndIdempotencyKey(SCOPE, KEY)).thenReturn(Optional.of(stored));
+        
+        ResponseEntity<String> replayed = execute(KEY, request, HttpStatus.CREATED);
+        
+        assertEquals(0, runs.get());
+        assertEquals(HttpStatus.CREATED, replayed.getStatusCode());
+        assertEquals("run 7", replayed.getBody());
+        assertEquals("true", replayed.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+    }
+    
+    @Test
+    void failedResponseIsNotStored() {
+        when(repository.findByScopeAndIdempotencyKey(SCOPE, KEY)).thenReturn(Optional.empty());
+        
+        execute(KEY, Map.of("steps", -1), HttpStatus.BAD_REQUEST);
+        ResponseEntity<String> retry = execute(KEY, Map.of("steps", -1), HttpStatus.BAD_REQUEST);
+        
+        assertEquals(2, runs.get());
+        assertNull(retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        verify(repository, never()).saveAndFlush(any(IdempotencyRecord.class));
+    }
+    
+    @Test
+    void requestWithoutKeyAlwaysRuns() {
+        execute(null, Map.of("steps", 500), HttpStatus.CREATED);
+        execute(" ", Map.of("steps", 500), HttpStatus.CREATED);
+        
+        assertEquals(2, runs.get());
+        verify(repository, never()).findByScopeAndIdempotencyKey(anyString(), anyString());
+    }
+    
+    private ResponseEntity<String> execute(String key, Object request, HttpStatus status) {
+        return service.execute(SCOPE, key, request, String.class,
+                               () -> ResponseEntity.status(status).body("run " + runs.incrementAndGet()));
+    }
+}
+
@@ -0,0 +1,117 @@
+package com.healthmonitor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bucket bounds, removal, and ranks of LogBucketHistogram, also across several histograms
+ * ranked as if they were merged
+ */
+class LogBucketHistogramTest {
+    
+    private static final double MIN = 100.0;
+    private static final double MAX = 100_000.0;
+    
+    @Test
+    void valuesOutsideTheRangeGoToTheEdgeBuckets() {
+        LogBucketHistogram histogram = new LogBucketHistogram(MIN, MAX);
+        
+        assertEquals(LogBucketHistogram.bucketCount(MIN, MAX), histogram.size());
+        assertEquals(0, histogram.bucketOf(0.0));
+        assertEquals(0, histogram.bucketOf(MIN));
+        assertEquals(1, histogram.bucketOf(MIN * 1.01));
+        assertEquals(histogram.size() - 1, histogram.bucketOf(MAX * 10));
+    }
+    
+    @Test
+    void bucketsHaveBoundedRelativeWidth() {
+        LogBucketHistogram histogram = new LogBucketHistogram(MIN, MAX);
+        
+        for (double value = MIN * 1.001; value < MAX; value *= 1.007) {
+            int bucket = histogram.bucketOf(value);
+            double lower = MIN * Math.pow(1.02, bucket - 1);
+            double upper = MIN * Math.pow(1.02, bucket);
+            assertTrue(value > lower * (1 - 1e-12) && value <= upper * (1 + 1e-12), "value " + value);
+        }
+    }
+    
+    @Test
+    void removalTakesBackAnAdd() {
+        LogBucketHistogram histogram = new LogBucketHistogram(MIN, MAX);
+        histogram.add(5000.0, 1);
+        histogram.add(8000.0, 2);
+        histogram.add(5000.0, -1);
+        
+        assertEquals(0, histogram.getCount(histogram.bucketOf(5000.0)));
+        assertEquals(2, histogram.getCount(histogram.bucketOf(8000.0)));
+        assertEquals(2, histogram.getTotal());
+    }
+    
+    @Test
+    void rankCountsBelowInAndTotal() {
+        LogBucketHistogram histogram = new LogBucketHistogram(MIN, MAX);
+        histogram.add(1000.0, 3);
+        histogram.add(5000.0, 2);
+        histogram.add(20_000.0, 5);
+        
+        long[] rank = new long[3];
+        histogram.rank(5000.0, rank);
+        
+        assertArrayEquals(new long[] {3, 2, 10}, rank);
+        assertEquals(40.0, LogBucketHistogram.percentile(rank), 1e-9);
+    }
+    
+    @Test
+    void rankOverSeveralHistogramsEqualsRankInTheirMerge() {
+        Random random = new Random(7);
+        LogBucketHistogram first = new LogBucketHistogram(MIN, MAX);
+        LogBucketHistogram second = new LogBucketHistogram(MIN, MAX);
+        LogBucketHistogram merged = new LogBucketHistogram(MIN, MAX);
+        for (int i = 0; i < 2000; i++) {
+            double value = MIN / 2 + random.nextDouble() * MAX * 1.5;
+            (i % 3 == 0 ? first : second).add(value, 1);
+        }
+        for (int bucket = 0; bucket < merged.size(); bucket++) {
+            merged.addCount(bucket, first.getCount(bucket) + second.getCount(bucket));
+        }
+        
+        for (double value : new double[] {10.0, MIN, 3000.0, 42_000.0, MAX, MAX * 3}) {
+            long[] split = new long[3];
+            first.rank(value, split);
+            second.rank(value, split);
+            long[] whole = new long[3];
+            merged.rank(value, whole);
+            assertArrayEquals(whole, split, "value " + value);
+        }
+    }
+    
+    @Test
+    void percentileOfUniformValuesIsCloseToTheirShare() {
+        LogBucketHistogram histogram = new LogBucketHistogram(MIN, MAX);
+        for (int value = 1000; value < 11_000; value++) {
+            histogram.add(value, 1);
+        }
+        
+        for (int value = 2000; value <= 10_000; value += 2000) {
+            long[] rank = new long[3];
+            histogram.rank(value, rank);
+            double share = 100.0 * (value - 1000) / 10_000;
+            // Half a bucket (1% of the value) either way, plus one value for whole numbers
+            assertEquals(share, LogBucketHistogram.percentile(rank), 100.0 * (value * 0.01 + 1) / 10_000);
+        }
+    }
+    
+    @Test
+    void percentileIsNullWithoutValuesAndClamped() {
+        assertNull(LogBucketHistogram.percentile(new long[3]));
+        assertEquals(100.0, LogBucketHistogram.percentile(new long[] {5, 2, 4}), 1e-9);
+        assertEquals(0.0, LogBucketHistogram.percentile(new long[] {-3, 0, 4}), 1e-9);
+    }
+}
+
@@ -0,0 +1,125 @@
+package com.healthmonitor.service;
+
+import com.healthmonitor.dto.MetricTrendDTO;
+import com.healthmonitor.model.DailyMetricsChange;
+import com.healthmonitor.model.DailyMetricsValues;
+import com.healthmonitor.model.MetricsTotals;
+import com.healthmonitor.repository.HealthMetricsRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The ring and window arithmetic of MetricsTrendService against sums and averages computed
+ * directly from the days' steps, after corrections and as the windows move forward
+ */
+class MetricsTrendServiceTest {
+    
+    private static final Long USER_ID = 1L;
+    private static final double SHORT_DECAY = 0.75;
+    private static final double LONG_DECAY = 1.0 - 2.0 / 29;
+    
+    private final MetricsTrendService service = new MetricsTrendService(mock(HealthMetricsRepository.class),
+                                                                         mock(PlatformTransactionManager.class));
+    private final LocalDate today = LocalDate.now();
+    private final Map<LocalDate, Long> steps = new TreeMap<>();
+    
+    @Test
+    void trendsMatchTheDaysAsTheWindowsMove() {
+        // 40 days up to tomorrow, every fifth one not recorded
+        for (int age = -1; age < 40; age++) {
+            setSteps(today.minusDays(age), age % 5 == 0 ? 0 : 4000 + 137L * age);
+        }
+        assertStepTrends(today);
+        
+        // Corrections: a day in both windows, a day only in the long one, and one no longer recorded
+        setSteps(today.minusDays(3), 12_345);
+        setSteps(today.minusDays(20), 800);
+        setSteps(today.minusDays(6), 0);
+        assertStepTrends(today);
+        
+        for (int days : new int[] {1, 2, 7, 20}) {
+            assertStepTrends(today.plusDays(days));
+        }
+    }
+    
+    @Test
+    void jumpPastTheRingKeepsOnlyTheAverages() {
+        for (int age = -1; age < 10; age++) {
+            setSteps(today.minusDays(age), 5000 + 10L * age);
+        }
+        
+        assertStepTrends(today.plusDays(40));
+    }
+    
+    @Test
+    void userWithoutRecordedDaysHasNoAverages() {
+        setSteps(today, 3000);
+        setSteps(today, 0);
+        
+        MetricTrendDTO trend = service.getTrends(USER_ID, today).get("steps");
+        assertEquals(0.0, trend.getSum28());
+        assertEquals(0, trend.getDays28());
+        assertNull(trend.getEwma7());
+        assertNull(trend.getEwma28());
+    }
+    
+    private void setSteps(LocalDate date, long value) {
+        long before = steps.getOrDefault(date, 0L);
+        steps.put(date, value);
+        service.onDailyMetricsChanged(List.of(new DailyMetricsChange(USER_ID, date, values(before), values(value))));
+    }
+    
+    private static DailyMetricsValues values(long steps) {
+        return new DailyMetricsValues(new MetricsTotals(steps, 0.0, 0.0, 0.0, 0), 0.0, 0);
+    }
+    
+    private void assertStepTrends(LocalDate day) {
+        MetricTrendDTO trend = service.getTrends(USER_ID, day).get("steps");
+        double sum7 = 0;
+        double sum28 = 0;
+        int days7 = 0;
+        int days28 = 0;
+        double weighted7 = 0;
+        double weights7 = 0;
+        double weighted28 = 0;
+        double weights28 = 0;
+        for (Map.Entry<LocalDate, Long> entry : steps.entrySet()) {
+            long age = day.toEpochDay() - entry.getKey().toEpochDay();
+            long value = entry.getValue();
+            int recorded = value > 0 ? 1 : 0;
+            if (age < 0) {
+                continue;
+            }
+            if (age < 7) {
+                sum7 += value;
+                days7 += recorded;
+            }
+            if (age < 28) {
+                sum28 += value;
+                days28 += recorded;
+            }
+            weighted7 += Math.pow(SHORT_DECAY, age) * value;
+            weights7 += Math.pow(SHORT_DECAY, age) * recorded;
+            weighted28 += Math.pow(LONG_DECAY, age) * value;
+            weights28 += Math.pow(LONG_DECAY, age) * recorded;
+        }
+        
+        String at = "on " + day;
+        assertEquals(sum7, trend.getSum7(), 1e-6, at);
+        assertEquals(days7, trend.getDays7(), at);
+        assertEquals(sum28, trend.getSum28(), 1e-6, at);
+        assertEquals(days28, trend.getDays28(), at);
+        assertEquals(weighted7 / weights7, trend.getEwma7(), 1e-6, at);
+        assertEquals(weighted28 / weights28, trend.getEwma28(), 1e-6, at);
+    }
+}
+
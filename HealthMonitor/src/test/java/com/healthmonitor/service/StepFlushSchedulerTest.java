@@ -0,0 +1,73 @@
+package com.healthmonitor.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Drained steps stay visible until their write commits, and a day's total that does not
+ * fit one increment is written in parts instead of failing every flush
+ */
+class StepFlushSchedulerTest {
+    
+    private static final Long USER_ID = 1L;
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 3);
+    
+    private final StepAccumulator accumulator = new StepAccumulator();
+    private final HealthMetricsService healthMetricsService = mock(HealthMetricsService.class);
+    private final StepFlushScheduler scheduler = new StepFlushScheduler(accumulator, healthMetricsService);
+    
+    @Test
+    void drainedStepsStayPendingUntilWritten() {
+        accumulator.add(USER_ID, DAY, 500);
+        doAnswer(invocation -> {
+            // Inside the write: the steps are drained but not committed yet
+            assertEquals(500, accumulator.getPendingSteps(USER_ID, DAY));
+            return null;
+        }).when(healthMetricsService).applyPendingSteps(eq(USER_ID), any());
+        
+        assertTrue(scheduler.flush());
+        
+        verify(healthMetricsService).applyPendingSteps(USER_ID, Map.of(DAY, 500));
+        assertEquals(0, accumulator.getPendingSteps(USER_ID, DAY));
+        assertTrue(accumulator.isEmpty());
+    }
+    
+    @Test
+    void failedWriteKeepsStepsPending() {
+        accumulator.add(USER_ID, DAY, 500);
+        doThrow(new IllegalStateException("database down"))
+            .when(healthMetricsService).applyPendingSteps(eq(USER_ID), any());
+        
+        assertFalse(scheduler.flush());
+        
+        assertEquals(500, accumulator.getPendingSteps(USER_ID, DAY));
+        assertFalse(accumulator.isEmpty());
+    }
+    
+    @Test
+    void stepsBeyondOneIncrementAreWrittenInParts() {
+        accumulator.add(USER_ID, DAY, Integer.MAX_VALUE);
+        accumulator.add(USER_ID, DAY, 5);
+        
+        assertTrue(scheduler.flush());
+        verify(healthMetricsService).applyPendingSteps(USER_ID, Map.of(DAY, Integer.MAX_VALUE));
+        assertEquals(5, accumulator.getPendingSteps(USER_ID, DAY));
+        
+        assertTrue(scheduler.flush());
+        verify(healthMetricsService).applyPendingSteps(USER_ID, Map.of(DAY, 5));
+        assertEquals(0, accumulator.getPendingSteps(USER_ID, DAY));
+    }
+}
+
@@ -0,0 +1,111 @@
+package com.healthmonitor.service.calculator.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Each resolution rule of ActivityTypeResolver, its tie-breaks, and that the answer does not
+ * depend on the order of the table
+ */
+class ActivityTypeResolverTest {
+    
+    private static final List<String> MET_TYPES = List.of(
+        "WALKING_SLOW", "WALKING", "CYCLING_LIGHT", "WALKING_FAST", "JOGGING", "RUNNING", "CYCLING_MODERATE",
+        "SWIMMING", "YOGA", "RUNNING_FAST", "CYCLING_FAST", "SWIMMING_VIGOROUS", "JUMPING_ROPE", "BASKETBALL",
+        "TENNIS", "SOCCER");
+    
+    private final ActivityTypeResolver<String> resolver = resolverOf(MET_TYPES);
+    
+    @Test
+    void knownTypeResolvesToItself() {
+        assertEquals("RUNNING", resolver.resolve("RUNNING"));
+        assertEquals("RUNNING_FAST", resolver.resolve("RUNNING_FAST"));
+        assertEquals("YOGA", resolver.resolve("YOGA"));
+    }
+    
+    @Test
+    void containedTypesResolveToLongest() {
+        assertEquals("RUNNING_FAST", resolver.resolve("RUNNING_FAST_INTERVALS"));
+        assertEquals("RUNNING", resolver.resolve("MORNING RUNNING"));
+        assertEquals("SWIMMING_VIGOROUS", resolver.resolve("SWIMMING_VIGOROUS_LAPS"));
+        assertEquals("TENNIS", resolver.resolve("TENNIS DOUBLES"));
+    }
+    
+    @Test
+    void containedTypesOfEqualLengthResolveToLeftmost() {
+        assertEquals("JOGGING", resolver.resolve("JOGGING THEN RUNNING"));
+        assertEquals("RUNNING", resolver.resolve("RUNNING THEN JOGGING"));
+    }
+    
+    @Test
+    void partOfTypesPrefersPrefixThenShortest() {
+        assertEquals("RUNNING", resolver.resolve("RUN"));
+        assertEquals("WALKING", resolver.resolve("WALK"));
+        assertEquals("CYCLING_FAST", resolver.resolve("CYCLING"));
+        assertEquals("SWIMMING", resolver.resolve("SWIM"));
+    }
+    
+    @Test
+    void partOfTypesPrefersPrefixOverShorterType() {
+        ActivityTypeResolver<String> gaming = resolverOf(List.of("YOGA", "GAMING"));
+        
+        assertEquals("GAMING", gaming.resolve("GA"));
+        assertEquals("YOGA", gaming.resolve("OG"));
+    }
+    
+    @Test
+    void partOfTypesOfEqualLengthResolvesAlphabetically() {
+        ActivityTypeResolver<String> prefixTies = resolverOf(List.of("YBOX", "XBOX", "BOXY", "BOXX"));
+        ActivityTypeResolver<String> partTies = resolverOf(List.of("YBOX", "XBOX"));
+        
+        assertEquals("BOXX", prefixTies.resolve("BOX"));
+        assertEquals("XBOX", partTies.resolve("BO"));
+    }
+    
+    @Test
+    void unknownNameResolvesToNull() {
+        assertNull(resolver.resolve("PILATES"));
+        assertNull(resolver.resolve("CROQUET"));
+        assertNull(resolver.resolve("LAUFEN ÜBUNG"));
+    }
+    
+    @Test
+    void nonAsciiCharactersDoNotBreakMatches() {
+        assertEquals("RUNNING", resolver.resolve("ÜRUNNINGÜ"));
+    }
+    
+    @Test
+    void resultDoesNotDependOnTableOrder() {
+        List<String> reversedTypes = new ArrayList<>(MET_TYPES);
+        Collections.reverse(reversedTypes);
+        ActivityTypeResolver<String> reversed = resolverOf(reversedTypes);
+        
+        for (String name : List.of("RUN", "WALK", "CYCLING", "JOGGING THEN RUNNING", "RUNNING_FAST_INTERVALS",
+                                   "ING", "_FAST", "G", "PILATES")) {
+            assertEquals(resolver.resolve(name), reversed.resolve(name), name);
+        }
+    }
+    
+    @Test
+    void nonAsciiTypeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> resolverOf(List.of("LAUFEN", "ÜBUNG")));
+    }
+    
+    private static ActivityTypeResolver<String> resolverOf(List<String> types) {
+        Map<String, String> table = types.stream()
+            .collect(Collectors.toMap(Function.identity(), Function.identity(), (a, b) -> a, LinkedHashMap::new));
+        return new ActivityTypeResolver<>(table);
+    }
+}
+